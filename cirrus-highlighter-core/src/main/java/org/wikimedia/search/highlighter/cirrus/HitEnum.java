@@ -40,6 +40,29 @@ public interface HitEnum extends Segment {
      */
     int source();
 
+    /**
+     * Advance past all hits that start before target. Like calling
+     * {@link #next()} until {@link #startOffset()} is at least target but
+     * implementations can skip hits without visiting them. Enums that find
+     * hits by scanning the source may restart the scan at target and so
+     * return a hit that overlaps a skipped one. Positions still increase but
+     * may not count skipped hits.
+     *
+     * @return is there such a hit (true) or was the last one the final hit
+     *         (false)
+     */
+    boolean advanceToOffset(int target);
+
+    /**
+     * Advance past all hits with a position before target. Like calling
+     * {@link #next()} until {@link #position()} is at least target but
+     * implementations can skip hits without visiting them.
+     *
+     * @return is there such a hit (true) or was the last one the final hit
+     *         (false)
+     */
+    boolean advanceToPosition(int target);
+
     /**
      * Inspects HitEnum structure and adds Graphviz nodes
      * to the GraphvizHitEnumGenerator.
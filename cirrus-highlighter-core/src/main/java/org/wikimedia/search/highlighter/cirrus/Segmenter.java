@@ -17,6 +17,15 @@ public interface Segmenter {
      */
     Memo memo(int maxStartOffset, int minEndOffset);
 
+    /**
+     * Where to look for the next segment after a hit from maxStartOffset to
+     * minEndOffset wasn't {@link #acceptable(int, int) acceptable}. Hits that
+     * start before the returned offset can't be in an acceptable segment
+     * either so snippet choosers skip them. Returns maxStartOffset if it
+     * can't rule any hits out.
+     */
+    int nextAcceptableStartOffset(int maxStartOffset, int minEndOffset);
+
     /**
      * Any information available when determining if a segment is acceptable
      * that is also useful to pick the bounds of the segment.
@@ -24,4 +24,20 @@ public abstract class AbstractFilteredHitEnumWrapper extends AbstractHitEnumWrap
             }
         }
     }
+
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (!wrapped().advanceToOffset(target)) {
+            return false;
+        }
+        return keep() || next();
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        if (!wrapped().advanceToPosition(target)) {
+            return false;
+        }
+        return keep() || next();
+    }
 }
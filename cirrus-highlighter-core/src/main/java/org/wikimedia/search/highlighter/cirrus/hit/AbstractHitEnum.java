@@ -4,6 +4,25 @@ import org.wikimedia.search.highlighter.cirrus.HitEnum;
 import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
 
 public abstract class AbstractHitEnum implements HitEnum {
+    @Override
+    public boolean advanceToOffset(int target) {
+        while (next()) {
+            if (startOffset() >= target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        while (next()) {
+            if (position() >= target) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     @Override
     public void toGraph(GraphvizHitEnumGenerator generator) {
@@ -40,15 +40,44 @@ public class ConcatHitEnum extends AbstractHitEnum {
             if (!delegates.hasNext()) {
                 return false;
             }
-            relativePosition += lastPosition + positionGap;
-            relativeOffset += current.length() + offsetGap;
-            lastPosition = 0;
-            current = delegates.next();
+            nextDelegate();
         }
         lastPosition = current.delegate().position();
         return true;
     }
 
+    /**
+     * Skips whole values that end before target without enumerating their
+     * hits. Because their hits are never seen the positions of hits in later
+     * values don't count them. There isn't an efficient advanceToPosition
+     * because the position of each value depends on the last position in
+     * the one before it.
+     */
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (current == null) {
+            return false;
+        }
+        while (relativeOffset + current.length() < target) {
+            if (!delegates.hasNext()) {
+                return false;
+            }
+            nextDelegate();
+        }
+        if (current.delegate().advanceToOffset(target - relativeOffset)) {
+            lastPosition = current.delegate().position();
+            return true;
+        }
+        return next();
+    }
+
+    private void nextDelegate() {
+        relativePosition += lastPosition + positionGap;
+        relativeOffset += current.length() + offsetGap;
+        lastPosition = 0;
+        current = delegates.next();
+    }
+
     @Override
     public int position() {
         return current.delegate().position() + relativePosition;
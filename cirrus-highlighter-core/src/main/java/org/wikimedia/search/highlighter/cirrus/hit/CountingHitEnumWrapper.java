@@ -0,0 +1,56 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.Locale;
+
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+
+/**
+ * Counts the hits that pass through it. Hits skipped by advancing aren't
+ * counted.
+ */
+public class CountingHitEnumWrapper extends AbstractHitEnumWrapper {
+    private int count;
+
+    public CountingHitEnumWrapper(HitEnum wrapped) {
+        super(wrapped);
+    }
+
+    @Override
+    public boolean next() {
+        if (!super.next()) {
+            return false;
+        }
+        count++;
+        return true;
+    }
+
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (!wrapped().advanceToOffset(target)) {
+            return false;
+        }
+        count++;
+        return true;
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        if (!wrapped().advanceToPosition(target)) {
+            return false;
+        }
+        count++;
+        return true;
+    }
+
+    /**
+     * Number of hits returned so far.
+     */
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "#%s⇒%s", count, wrapped());
+    }
+}
@@ -0,0 +1,90 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time after which highlighting should stop and return whatever
+ * it has found so far. Checking is cheap: the clock is only read once every
+ * {@link #CHECK_INTERVAL} calls to {@link #expired()}, and once the deadline
+ * has passed it stays expired without reading the clock again. Not thread
+ * safe, build one per highlighted field.
+ */
+public final class Deadline {
+    /**
+     * Number of calls to {@link #expired()} between reads of the clock.
+     */
+    public static final int CHECK_INTERVAL = 64;
+
+    /**
+     * A deadline that never expires.
+     */
+    public static Deadline none() {
+        return new Deadline(Long.MAX_VALUE, false);
+    }
+
+    /**
+     * A deadline that expires timeout after now.
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    private final long deadlineNanos;
+    private final boolean enabled;
+    private int untilCheck;
+    private boolean expired;
+
+    private Deadline(long deadlineNanos, boolean enabled) {
+        this.deadlineNanos = deadlineNanos;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Has the deadline passed? Only reads the clock every
+     * {@link #CHECK_INTERVAL} calls so it can be called once per hit or once
+     * per character scanned.
+     */
+    public boolean expired() {
+        if (expired || !enabled) {
+            return expired;
+        }
+        if (untilCheck-- > 0) {
+            return false;
+        }
+        untilCheck = CHECK_INTERVAL;
+        expired = System.nanoTime() - deadlineNanos >= 0;
+        return expired;
+    }
+
+    /**
+     * A deadline at the same point in time for checking on another thread.
+     */
+    public Deadline copy() {
+        return new Deadline(deadlineNanos, enabled);
+    }
+
+    /**
+     * Mark the deadline as passed. Use it when a {@link #copy() copy} has
+     * expired on another thread.
+     */
+    public void expire() {
+        expired = true;
+    }
+
+    /**
+     * Did any call to {@link #expired()} return true? Use this after
+     * highlighting to decide if the results are partial.
+     */
+    public boolean hasExpired() {
+        return expired;
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled) {
+            return "no deadline";
+        }
+        return String.format(Locale.ENGLISH, "deadline(%s)", expired ? "expired" : "pending");
+    }
+}
@@ -0,0 +1,55 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
+
+/**
+ * Stops returning hits once the deadline has expired. Snippet choosers treat
+ * that like the end of the hits and return the best snippets found so far.
+ */
+public class DeadlineHitEnumWrapper extends AbstractHitEnumWrapper {
+    private final Deadline deadline;
+
+    public DeadlineHitEnumWrapper(HitEnum wrapped, Deadline deadline) {
+        super(wrapped);
+        this.deadline = deadline;
+    }
+
+    @Override
+    public boolean next() {
+        if (deadline.expired()) {
+            return false;
+        }
+        return super.next();
+    }
+
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (deadline.expired()) {
+            return false;
+        }
+        return wrapped().advanceToOffset(target);
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        if (deadline.expired()) {
+            return false;
+        }
+        return wrapped().advanceToPosition(target);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%s⇒%s", deadline, wrapped());
+    }
+
+    @Override
+    public void toGraph(GraphvizHitEnumGenerator generator) {
+        generator.addNode(this, Collections.singletonMap("deadline", deadline.toString()));
+        generator.addChild(this, wrapped());
+    }
+}
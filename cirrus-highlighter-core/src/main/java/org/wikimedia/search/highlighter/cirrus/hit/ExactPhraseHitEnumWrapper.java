@@ -0,0 +1,277 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.Arrays;
+
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
+
+/**
+ * Applies a weight to hits that are part of exact (slop 0) phrases. Finds the
+ * phrases with a shift-and state word where bit i is set if the hits up to the
+ * current position match the first i + 1 terms of the phrase. Hits are buffered
+ * in primitive arrays only as long as they might still be part of a phrase so
+ * this doesn't allocate per hit or per candidate. Behaves like
+ * {@link PhraseHitEnumWrapper} with a slop of 0 but also matches phrases that
+ * go through any of the hits on a position, not just the first one.
+ */
+public class ExactPhraseHitEnumWrapper extends AbstractHitEnum {
+    private final HitEnum wrapped;
+    private final int[][] phrase;
+    private final float phraseWeight;
+    private final PhraseMasks masks;
+    private final long matchBit;
+
+    /**
+     * Buffered hits from head to head + size.
+     */
+    private int[] positions = new int[16];
+    private int[] startOffsets = new int[16];
+    private int[] endOffsets = new int[16];
+    private float[] queryWeights = new float[16];
+    private float[] corpusWeights = new float[16];
+    private int[] sources = new int[16];
+    private long[] hitMasks = new long[16];
+    private boolean[] inPhrase = new boolean[16];
+    private int head;
+    private int size;
+
+    /**
+     * Shift-and state after the last finished position.
+     */
+    private long state;
+    private int lastPosition = Integer.MIN_VALUE;
+    /**
+     * Position of the hits being collected from wrapped and the union of
+     * their masks.
+     */
+    private int groupPosition = Integer.MIN_VALUE;
+    private long groupMask;
+    /**
+     * Buffered hits before this position can't be part of any more phrases.
+     */
+    private int releaseBefore = Integer.MIN_VALUE;
+    private boolean wrappedDone;
+
+    private int current = -1;
+    private float queryWeight;
+
+    /**
+     * @param phrase array of arrays of terms. Each inner array should be
+     *            sorted.
+     */
+    public ExactPhraseHitEnumWrapper(HitEnum wrapped, int[][] phrase, float phraseWeight) {
+        if (phrase.length < 2) {
+            throw new IllegalArgumentException("It doesn't make sense to match phrases of length 0 or 1.");
+        }
+        this.wrapped = wrapped;
+        this.phrase = phrase;
+        this.phraseWeight = phraseWeight;
+        matchBit = 1L << (phrase.length - 1);
+        masks = new PhraseMasks(phrase);
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            if (size > 0 && positions[head] < releaseBefore) {
+                release();
+                return true;
+            }
+            if (wrappedDone) {
+                return false;
+            }
+            if (!wrapped.next()) {
+                wrappedDone = true;
+                finishGroup();
+                releaseBefore = Integer.MAX_VALUE;
+                continue;
+            }
+            int position = wrapped.position();
+            if (position != groupPosition) {
+                finishGroup();
+                groupPosition = position;
+                groupMask = 0;
+            }
+            long mask = masks.mask(wrapped.source());
+            groupMask |= mask;
+            buffer(mask);
+        }
+    }
+
+    /**
+     * Skips wrapped straight to the first position that could start a phrase
+     * reaching target, throwing away anything buffered, if wrapped hasn't got
+     * there yet. Phrases that start before that position end before target so
+     * they can't change the weight of anything we return.
+     */
+    @Override
+    public boolean advanceToPosition(int target) {
+        int from = target - (phrase.length - 1);
+        if (wrappedDone || groupPosition >= from) {
+            return super.advanceToPosition(target);
+        }
+        head = 0;
+        size = 0;
+        current = -1;
+        state = 0;
+        lastPosition = Integer.MIN_VALUE;
+        releaseBefore = Integer.MIN_VALUE;
+        if (!wrapped.advanceToPosition(from)) {
+            wrappedDone = true;
+            return false;
+        }
+        groupPosition = wrapped.position();
+        groupMask = masks.mask(wrapped.source());
+        buffer(groupMask);
+        return super.advanceToPosition(target);
+    }
+
+    /**
+     * Advance the state over the position whose hits have just been collected,
+     * flag the hits of any phrase that ends there, and work out which hits
+     * can't be part of any more phrases.
+     */
+    private void finishGroup() {
+        if (groupPosition == Integer.MIN_VALUE) {
+            return;
+        }
+        if (groupPosition == lastPosition + 1) {
+            state = ((state << 1) | 1) & groupMask;
+        } else {
+            state = 1 & groupMask;
+        }
+        lastPosition = groupPosition;
+        if ((state & matchBit) != 0) {
+            flagPhrase(groupPosition - phrase.length + 1);
+        }
+        long open = state & ~matchBit;
+        if (open == 0) {
+            releaseBefore = groupPosition + 1;
+        } else {
+            // The oldest open prefix started this many positions ago
+            releaseBefore = groupPosition - (Long.SIZE - 1 - Long.numberOfLeadingZeros(open));
+        }
+    }
+
+    /**
+     * Flag the buffered hits that make up the phrase starting at start.
+     */
+    private void flagPhrase(int start) {
+        for (int i = head + size - 1; i >= head && positions[i] >= start; i--) {
+            if ((hitMasks[i] & (1L << (positions[i] - start))) != 0) {
+                inPhrase[i] = true;
+            }
+        }
+    }
+
+    private void buffer(long mask) {
+        if (head + size == positions.length) {
+            if (head > 0) {
+                compact();
+            } else {
+                grow();
+            }
+        }
+        int i = head + size;
+        positions[i] = wrapped.position();
+        startOffsets[i] = wrapped.startOffset();
+        endOffsets[i] = wrapped.endOffset();
+        queryWeights[i] = wrapped.queryWeight();
+        corpusWeights[i] = wrapped.corpusWeight();
+        sources[i] = wrapped.source();
+        hitMasks[i] = mask;
+        inPhrase[i] = false;
+        size++;
+    }
+
+    private void release() {
+        current = head;
+        queryWeight = inPhrase[current] ? Math.max(queryWeights[current], phraseWeight) : queryWeights[current];
+        head++;
+        size--;
+    }
+
+    /**
+     * Move the buffered hits to the front of the arrays. Leaves the hit that
+     * was just released alone because it is still current.
+     */
+    private void compact() {
+        int from = current == head - 1 ? current : head;
+        int length = head + size - from;
+        System.arraycopy(positions, from, positions, 0, length);
+        System.arraycopy(startOffsets, from, startOffsets, 0, length);
+        System.arraycopy(endOffsets, from, endOffsets, 0, length);
+        System.arraycopy(queryWeights, from, queryWeights, 0, length);
+        System.arraycopy(corpusWeights, from, corpusWeights, 0, length);
+        System.arraycopy(sources, from, sources, 0, length);
+        System.arraycopy(hitMasks, from, hitMasks, 0, length);
+        System.arraycopy(inPhrase, from, inPhrase, 0, length);
+        if (current == from) {
+            current = 0;
+        }
+        head -= from;
+        if (length == positions.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        int newLength = positions.length * 2;
+        positions = Arrays.copyOf(positions, newLength);
+        startOffsets = Arrays.copyOf(startOffsets, newLength);
+        endOffsets = Arrays.copyOf(endOffsets, newLength);
+        queryWeights = Arrays.copyOf(queryWeights, newLength);
+        corpusWeights = Arrays.copyOf(corpusWeights, newLength);
+        sources = Arrays.copyOf(sources, newLength);
+        hitMasks = Arrays.copyOf(hitMasks, newLength);
+        inPhrase = Arrays.copyOf(inPhrase, newLength);
+    }
+
+    @Override
+    public int position() {
+        return positions[current];
+    }
+
+    @Override
+    public int startOffset() {
+        return startOffsets[current];
+    }
+
+    @Override
+    public int endOffset() {
+        return endOffsets[current];
+    }
+
+    @Override
+    public float queryWeight() {
+        return queryWeight;
+    }
+
+    @Override
+    public float corpusWeight() {
+        return corpusWeights[current];
+    }
+
+    @Override
+    public int source() {
+        return sources[current];
+    }
+
+    @Override
+    public void toGraph(GraphvizHitEnumGenerator generator) {
+        super.toGraph(generator);
+        generator.addChild(this, wrapped);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(100).append('[');
+        for (int p = 0; p < phrase.length; p++) {
+            if (p != 0) {
+                b.append(':');
+            }
+            b.append(Arrays.toString(phrase[p]));
+        }
+        return b.append("]\u21D2").append(phraseWeight).append('(').append(wrapped).append(')').toString();
+    }
+}
@@ -0,0 +1,77 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.Arrays;
+
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Applies a weight to hits that are part of exact (slop 0) phrases that were
+ * already found somewhere else, usually by intersecting the positions of the
+ * phrase's terms in the postings. Because the phrases are known up front this
+ * doesn't buffer anything and the hits don't have to come in position order.
+ * Gives the same weights as {@link ExactPhraseHitEnumWrapper} for the same
+ * phrase.
+ */
+@SuppressFBWarnings("EI_EXPOSE_REP2")
+public class MatchedPhraseHitEnumWrapper extends AbstractHitEnumWrapper {
+    private final int[][] phrase;
+    private final float phraseWeight;
+    /**
+     * Sorted positions where the phrase starts.
+     */
+    private final int[] starts;
+    private final int startCount;
+    private final PhraseMasks masks;
+
+    /**
+     * @param phrase array of arrays of terms. Each inner array should be
+     *            sorted.
+     * @param starts sorted positions where the phrase starts. Only the first
+     *            startCount are used.
+     */
+    public MatchedPhraseHitEnumWrapper(HitEnum wrapped, int[][] phrase, float phraseWeight, int[] starts,
+            int startCount) {
+        super(wrapped);
+        if (phrase.length < 2) {
+            throw new IllegalArgumentException("It doesn't make sense to match phrases of length 0 or 1.");
+        }
+        this.phrase = phrase;
+        this.phraseWeight = phraseWeight;
+        this.starts = starts;
+        this.startCount = startCount;
+        masks = new PhraseMasks(phrase);
+    }
+
+    @Override
+    public float queryWeight() {
+        float weight = wrapped().queryWeight();
+        if (weight >= phraseWeight) {
+            return weight;
+        }
+        long mask = masks.mask(wrapped().source());
+        int position = wrapped().position();
+        while (mask != 0) {
+            int i = Long.numberOfTrailingZeros(mask);
+            if (Arrays.binarySearch(starts, 0, startCount, position - i) >= 0) {
+                return phraseWeight;
+            }
+            mask &= mask - 1;
+        }
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(100).append('[');
+        for (int p = 0; p < phrase.length; p++) {
+            if (p != 0) {
+                b.append(':');
+            }
+            b.append(Arrays.toString(phrase[p]));
+        }
+        return b.append("]@").append(startCount).append("\u21D2").append(phraseWeight)
+                .append('(').append(wrapped()).append(')').toString();
+    }
+}
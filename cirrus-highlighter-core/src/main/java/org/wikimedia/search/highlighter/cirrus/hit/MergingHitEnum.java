@@ -7,24 +7,39 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.HitEnum.LessThans;
 import org.wikimedia.search.highlighter.cirrus.LessThan;
 import org.wikimedia.search.highlighter.cirrus.extern.PriorityQueue;
 import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
 
 /**
  * Merges multiple HitEnums.  They must all be sorted by the provided comparator or the results will be wrong.
+ * Nothing is pulled from the enums until the first call to next or advance.
  */
 public class MergingHitEnum extends AbstractHitEnum {
     private final HitEnumPriorityQueue queue;
+    /**
+     * Enums that haven't been added to the queue yet. Null once they have.
+     */
+    private Collection<? extends HitEnum> unstarted;
     private HitEnum top;
 
     public MergingHitEnum(Collection<? extends HitEnum> enums, LessThan<HitEnum> comparator) {
-        queue = new HitEnumPriorityQueue(enums, comparator);
+        queue = new HitEnumPriorityQueue(enums.size(), comparator);
+        unstarted = enums;
     }
 
     @Override
     public boolean next() {
-        if (top == null) {
+        if (unstarted != null) {
+            for (HitEnum e : unstarted) {
+                if (e.next()) {
+                    queue.add(e);
+                }
+            }
+            unstarted = null;
+            top = queue.top();
+        } else if (top == null) {
             top = queue.top();
         } else {
             if (top.next()) {
@@ -38,6 +53,56 @@ public class MergingHitEnum extends AbstractHitEnum {
         return top != null;
     }
 
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (queue.lessThan != LessThans.OFFSETS) {
+            return super.advanceToOffset(target);
+        }
+        return advance(target, true);
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        if (queue.lessThan != LessThans.POSITION) {
+            return super.advanceToPosition(target);
+        }
+        return advance(target, false);
+    }
+
+    /**
+     * Advance lazily: only the enum on top of the queue is ever moved and it
+     * skips straight to target. Enums already at or past target aren't
+     * touched at all.
+     */
+    private boolean advance(int target, boolean offset) {
+        if (unstarted != null) {
+            // Start every enum right at target
+            for (HitEnum e : unstarted) {
+                if (offset ? e.advanceToOffset(target) : e.advanceToPosition(target)) {
+                    queue.add(e);
+                }
+            }
+            unstarted = null;
+            top = queue.top();
+            return top != null;
+        }
+        if (!next()) {
+            return false;
+        }
+        while ((offset ? top.startOffset() : top.position()) < target) {
+            if (offset ? top.advanceToOffset(target) : top.advanceToPosition(target)) {
+                top = queue.updateTop();
+            } else {
+                queue.pop();
+                top = queue.top();
+                if (top == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     @Override
     public int position() {
         return top.position();
@@ -90,16 +155,9 @@ public class MergingHitEnum extends AbstractHitEnum {
     private static final class HitEnumPriorityQueue extends PriorityQueue<HitEnum> implements Iterable<HitEnum> {
         private final LessThan<HitEnum> lessThan;
 
-        private HitEnumPriorityQueue(Collection<? extends HitEnum> hitEnums, LessThan<HitEnum> lessThan) {
-            super(hitEnums.size());
+        private HitEnumPriorityQueue(int size, LessThan<HitEnum> lessThan) {
+            super(size);
             this.lessThan = lessThan;
-
-            // Now that we've set that comparator we can add everything to the queue.
-            for (HitEnum e: hitEnums) {
-                if (e.next()) {
-                    this.add(e);
-                }
-            }
         }
 
         @Override
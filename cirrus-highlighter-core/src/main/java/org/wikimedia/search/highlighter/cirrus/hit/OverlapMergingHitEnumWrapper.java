@@ -8,7 +8,8 @@ import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
 /**
  * HitEnum that merges hits that are "on top" of one another according to start
  * and end offset. Always takes the maximum weight and end offset. Delegate must
- * be in order of offsets (startOffset first, endOffset second).
+ * be in order of offsets (startOffset first, endOffset second). Nothing is
+ * pulled from the delegate until the first call to next or advanceToOffset.
  */
 public class OverlapMergingHitEnumWrapper extends AbstractHitEnum {
     /**
@@ -16,6 +17,7 @@ public class OverlapMergingHitEnumWrapper extends AbstractHitEnum {
      * no more hits.
      */
     private HitEnum delegate;
+    private boolean started;
     private int position;
     private int startOffset;
     private int endOffset;
@@ -24,13 +26,17 @@ public class OverlapMergingHitEnumWrapper extends AbstractHitEnum {
     private int source;
 
     public OverlapMergingHitEnumWrapper(HitEnum delegate) {
-        if (delegate.next()) {
-            this.delegate = delegate;
-        }
+        this.delegate = delegate;
     }
 
     @Override
     public boolean next() {
+        if (!started) {
+            started = true;
+            if (!delegate.next()) {
+                delegate = null;
+            }
+        }
         if (delegate == null) {
             return false;
         }
@@ -73,6 +79,23 @@ public class OverlapMergingHitEnumWrapper extends AbstractHitEnum {
         return true;
     }
 
+    /**
+     * Skips the delegate straight to target. Hits that start before target
+     * aren't merged into the ones after it, they are just skipped.
+     */
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (!started) {
+            started = true;
+            if (!delegate.advanceToOffset(target)) {
+                delegate = null;
+            }
+        } else if (delegate != null && delegate.startOffset() < target && !delegate.advanceToOffset(target)) {
+            delegate = null;
+        }
+        return next();
+    }
+
     @Override
     public int position() {
         return position;
@@ -37,6 +37,15 @@ public class PhraseHitEnumWrapper extends AbstractHitEnum {
     private final float phraseWeight;
     private final int phraseSlop;
     private int releaseUpTo = Integer.MIN_VALUE;
+    /**
+     * Position of the last hit pulled from wrapped or MAX_VALUE once it is
+     * exhausted.
+     */
+    private int wrappedPosition = Integer.MIN_VALUE;
+    /**
+     * Has wrapped been advanced to a hit that hasn't been looked at yet?
+     */
+    private boolean wrappedPositioned;
     private HitEnum pullFrom;
     private boolean replayingAlreadyPositionedForNextNext;
     private float weight;
@@ -93,12 +102,16 @@ public class PhraseHitEnumWrapper extends AbstractHitEnum {
         }
 
         while (true) {
-            if (!wrapped.next()) {
+            if (wrappedPositioned) {
+                wrappedPositioned = false;
+            } else if (!wrapped.next()) {
+                wrappedPosition = Integer.MAX_VALUE;
                 releaseUpTo = Integer.MAX_VALUE;
                 pullFrom = replaying;
                 replayingAlreadyPositionedForNextNext = false;
                 return replayingHasHit;
             }
+            wrappedPosition = wrapped.position();
 
             Iterator<PhraseCandidate> candidateItr = candidates.iterator();
             releaseUpTo = Integer.MAX_VALUE;
@@ -141,6 +154,33 @@ public class PhraseHitEnumWrapper extends AbstractHitEnum {
         }
     }
 
+    /**
+     * Skips wrapped straight to the first position that could start a phrase
+     * reaching target, throwing away anything buffered, if wrapped hasn't got
+     * there yet. Candidates that start before that position end before target
+     * so they can't change the weight of anything we return.
+     */
+    @Override
+    public boolean advanceToPosition(int target) {
+        int from = target - (phrase.length - 1 + phraseSlop);
+        if (wrappedPosition >= from) {
+            return super.advanceToPosition(target);
+        }
+        replaying.clear();
+        candidates.clear();
+        currentMatches.clear();
+        replayingAlreadyPositionedForNextNext = false;
+        if (!wrapped.advanceToPosition(from)) {
+            wrappedPosition = Integer.MAX_VALUE;
+            releaseUpTo = Integer.MAX_VALUE;
+            pullFrom = replaying;
+            return false;
+        }
+        wrappedPositioned = true;
+        releaseUpTo = Integer.MIN_VALUE;
+        return super.advanceToPosition(target);
+    }
+
     @Override
     public int position() {
         return pullFrom.position();
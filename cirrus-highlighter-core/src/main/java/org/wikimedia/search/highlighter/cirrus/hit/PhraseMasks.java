@@ -0,0 +1,70 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.Arrays;
+
+/**
+ * The indexes in an exact (slop 0) phrase where each of its term sources can
+ * appear as a bit mask: bit i is set if the source is in phrase[i]. Shared by
+ * everything that matches exact phrases with bit masks so they all agree on
+ * which phrases they can match.
+ */
+public final class PhraseMasks {
+    /**
+     * Longest phrase that fits in a mask.
+     */
+    public static final int MAX_PHRASE_LENGTH = Long.SIZE;
+
+    /**
+     * Sorted sources that appear anywhere in the phrase.
+     */
+    private final int[] sources;
+    /**
+     * Mask of the source at the same index in sources.
+     */
+    private final long[] masks;
+
+    /**
+     * @param phrase array of arrays of terms. Each inner array should be
+     *            sorted.
+     * @throws IllegalArgumentException if the phrase is longer than
+     *             {@link #MAX_PHRASE_LENGTH}
+     */
+    public PhraseMasks(int[][] phrase) {
+        if (phrase.length > MAX_PHRASE_LENGTH) {
+            throw new IllegalArgumentException("Exact phrases can't be longer than " + MAX_PHRASE_LENGTH
+                    + " terms but this one is " + phrase.length);
+        }
+        int total = 0;
+        for (int[] ph : phrase) {
+            total += ph.length;
+        }
+        int[] all = new int[total];
+        int filled = 0;
+        for (int[] ph : phrase) {
+            System.arraycopy(ph, 0, all, filled, ph.length);
+            filled += ph.length;
+        }
+        Arrays.sort(all);
+        int unique = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[i - 1]) {
+                all[unique++] = all[i];
+            }
+        }
+        sources = Arrays.copyOf(all, unique);
+        masks = new long[unique];
+        for (int i = 0; i < phrase.length; i++) {
+            for (int source : phrase[i]) {
+                masks[Arrays.binarySearch(sources, source)] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * The mask of a source or 0 if it isn't in the phrase.
+     */
+    public long mask(int source) {
+        int index = Arrays.binarySearch(sources, source);
+        return index < 0 ? 0 : masks[index];
+    }
+}
@@ -8,7 +8,8 @@ import org.wikimedia.search.highlighter.cirrus.HitEnum;
 
 /**
  * HitEnum that wraps a position ordered HitEnum and boosts early positions
- * weights.
+ * weights. Hits boosted by 0 would have no weight so they are skipped with
+ * {@link HitEnum#advanceToPosition(int)} rather than returned.
  */
 public class PositionBoostingHitEnumWrapper extends AbstractHitEnumWrapper {
     private final List<PositionBoost> boosts = new ArrayList<>();
@@ -28,13 +29,37 @@ public class PositionBoostingHitEnumWrapper extends AbstractHitEnumWrapper {
 
     @Override
     public boolean next() {
-        if (!super.next()) {
-            return false;
-        }
-        while (current < boosts.size() && this.position() >= boosts.get(current).before) {
-            current++;
+        return updateBoost(super.next());
+    }
+
+    @Override
+    public boolean advanceToOffset(int target) {
+        return updateBoost(wrapped().advanceToOffset(target));
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        return updateBoost(wrapped().advanceToPosition(target));
+    }
+
+    /**
+     * Find the boost for the current hit, skipping past any range of
+     * positions boosted by 0.
+     *
+     * @param found did the wrapped enum move to a hit
+     * @return is there a hit
+     */
+    private boolean updateBoost(boolean found) {
+        while (found) {
+            while (current < boosts.size() && this.position() >= boosts.get(current).before) {
+                current++;
+            }
+            if (current >= boosts.size() || boosts.get(current).boost != 0) {
+                return true;
+            }
+            found = wrapped().advanceToPosition(boosts.get(current).before);
         }
-        return true;
+        return false;
     }
 
     @Override
@@ -0,0 +1,139 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
+
+/**
+ * Measures the time spent in calls to next and counts the hits that come out
+ * of the wrapped HitEnum. Time spent inside other ProfilingHitEnumWrappers
+ * built by the same {@link Profile} is subtracted so each wrapper reports only
+ * the time spent between it and the profiled stages it wraps.
+ */
+public class ProfilingHitEnumWrapper extends AbstractHitEnumWrapper {
+    private final Profile profile;
+    private final String name;
+    private long nanos;
+    private int hits;
+    private long start;
+
+    ProfilingHitEnumWrapper(HitEnum wrapped, Profile profile, String name) {
+        super(wrapped);
+        this.profile = profile;
+        this.name = name;
+    }
+
+    @Override
+    public boolean next() {
+        long outerChildNanos = start();
+        return stop(outerChildNanos, super.next());
+    }
+
+    @Override
+    public boolean advanceToOffset(int target) {
+        long outerChildNanos = start();
+        return stop(outerChildNanos, wrapped().advanceToOffset(target));
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        long outerChildNanos = start();
+        return stop(outerChildNanos, wrapped().advanceToPosition(target));
+    }
+
+    /**
+     * Start timing a call.
+     * @return the child time of the enclosing stage to hand to stop
+     */
+    private long start() {
+        long outerChildNanos = profile.childNanos;
+        profile.childNanos = 0;
+        start = System.nanoTime();
+        return outerChildNanos;
+    }
+
+    /**
+     * Stop timing a call.
+     */
+    private boolean stop(long outerChildNanos, boolean result) {
+        long elapsed = System.nanoTime() - start;
+        nanos += elapsed - profile.childNanos;
+        profile.childNanos = outerChildNanos + elapsed;
+        if (result) {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Name of the stage being profiled.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Nanoseconds spent in this stage, not counting profiled stages it wraps.
+     */
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * Hits that came out of this stage.
+     */
+    public int hits() {
+        return hits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%s(%sns, %s hits)⇒%s", name, nanos, hits, wrapped());
+    }
+
+    @Override
+    public void toGraph(GraphvizHitEnumGenerator generator) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("stage", name);
+        params.put("nanos", nanos);
+        params.put("hits", hits);
+        generator.addNode(this, params);
+        generator.addChild(this, wrapped());
+    }
+
+    /**
+     * Builds ProfilingHitEnumWrappers that share timing information and
+     * remembers them in the order they were built. Not thread safe.
+     */
+    public static class Profile {
+        private final List<ProfilingHitEnumWrapper> stages = new ArrayList<>();
+        /**
+         * Time spent in profiled stages below the call to next currently
+         * running.
+         */
+        private long childNanos;
+
+        /**
+         * Wrap e in a profiling stage named name.
+         */
+        public ProfilingHitEnumWrapper wrap(String name, HitEnum e) {
+            ProfilingHitEnumWrapper wrapper = new ProfilingHitEnumWrapper(e, this, name);
+            stages.add(wrapper);
+            return wrapper;
+        }
+
+        /**
+         * All the stages in the order they were built, so wrapped stages come
+         * before the ones that wrap them.
+         */
+        public List<ProfilingHitEnumWrapper> stages() {
+            return Collections.unmodifiableList(stages);
+        }
+    }
+}
@@ -11,6 +11,7 @@ public class RegexHitEnum extends AbstractHitEnum {
     private final Matcher matcher;
     private final HitWeigher queryWeigher;
     private final HitWeigher corpusWeigher;
+    private final Deadline deadline;
     private float queryWeight;
     private float corpusWeight;
     private int position = -1;
@@ -23,14 +24,24 @@ public class RegexHitEnum extends AbstractHitEnum {
     }
 
     public RegexHitEnum(Matcher matcher, HitWeigher queryWeigher, HitWeigher corpusWeigher) {
+        this(matcher, queryWeigher, corpusWeigher, Deadline.none());
+    }
+
+    /**
+     * Build the HitEnum so it stops finding hits once the deadline has
+     * expired. The deadline is checked before each search so a single
+     * search isn't interrupted.
+     */
+    public RegexHitEnum(Matcher matcher, HitWeigher queryWeigher, HitWeigher corpusWeigher, Deadline deadline) {
         this.matcher = matcher;
         this.queryWeigher = queryWeigher;
         this.corpusWeigher = corpusWeigher;
+        this.deadline = deadline;
     }
 
     @Override
     public boolean next() {
-        if (!matcher.find()) {
+        if (deadline.expired() || !matcher.find()) {
             return false;
         }
         position++;
@@ -0,0 +1,153 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
+
+/**
+ * Keeps at most maxHits hits from the wrapped HitEnum: the first half of them
+ * in the order they come and the rest chosen by highest weight (query weight *
+ * corpus weight) from everything after that. The kept hits are returned in
+ * the order the wrapped HitEnum returned them. The wrapped HitEnum is
+ * exhausted on the first call to next but only maxHits hits are ever held in
+ * memory.
+ */
+public class SamplingHitEnumWrapper extends AbstractHitEnum {
+    /**
+     * Lowest weight first, and for equal weights the latest hit first, so
+     * the earliest of equally weighted hits survive.
+     */
+    private static final Comparator<Hit> WORST_FIRST = (lhs, rhs) -> {
+        int cmp = Float.compare(lhs.weight(), rhs.weight());
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Integer.compare(rhs.order, lhs.order);
+    };
+
+    private final HitEnum wrapped;
+    private final int maxHits;
+    private List<Hit> hits;
+    private int seen;
+    private int current = -1;
+    private Hit hit;
+
+    public SamplingHitEnumWrapper(HitEnum wrapped, int maxHits) {
+        this.wrapped = wrapped;
+        this.maxHits = maxHits;
+    }
+
+    @Override
+    public boolean next() {
+        if (hits == null) {
+            hits = sample();
+        }
+        current++;
+        if (current >= hits.size()) {
+            current = hits.size();
+            return false;
+        }
+        hit = hits.get(current);
+        return true;
+    }
+
+    private List<Hit> sample() {
+        int early = (maxHits + 1) / 2;
+        List<Hit> result = new ArrayList<>(maxHits);
+        while (seen < early && wrapped.next()) {
+            result.add(new Hit(wrapped, seen++));
+        }
+        int heaviest = maxHits - early;
+        if (heaviest <= 0) {
+            while (wrapped.next()) {
+                // Exhaust wrapped like we do when sampling
+            }
+            return result;
+        }
+        PriorityQueue<Hit> queue = new PriorityQueue<>(heaviest, WORST_FIRST);
+        while (wrapped.next()) {
+            Hit candidate = new Hit(wrapped, seen++);
+            if (queue.size() < heaviest) {
+                queue.add(candidate);
+            } else if (WORST_FIRST.compare(candidate, queue.peek()) > 0) {
+                queue.poll();
+                queue.add(candidate);
+            }
+        }
+        List<Hit> late = new ArrayList<>(queue);
+        late.sort(Comparator.comparingInt(h -> h.order));
+        result.addAll(late);
+        return result;
+    }
+
+    @Override
+    public int position() {
+        return hit.position;
+    }
+
+    @Override
+    public int startOffset() {
+        return hit.startOffset;
+    }
+
+    @Override
+    public int endOffset() {
+        return hit.endOffset;
+    }
+
+    @Override
+    public float queryWeight() {
+        return hit.queryWeight;
+    }
+
+    @Override
+    public float corpusWeight() {
+        return hit.corpusWeight;
+    }
+
+    @Override
+    public int source() {
+        return hit.source;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "sample≤%s⇒%s", maxHits, wrapped);
+    }
+
+    @Override
+    public void toGraph(GraphvizHitEnumGenerator generator) {
+        generator.addNode(this, Collections.singletonMap("maxHits", maxHits));
+        generator.addChild(this, wrapped);
+    }
+
+    private static final class Hit {
+        private final int order;
+        private final int position;
+        private final int startOffset;
+        private final int endOffset;
+        private final float queryWeight;
+        private final float corpusWeight;
+        private final int source;
+
+        private Hit(HitEnum e, int order) {
+            this.order = order;
+            position = e.position();
+            startOffset = e.startOffset();
+            endOffset = e.endOffset();
+            queryWeight = e.queryWeight();
+            corpusWeight = e.corpusWeight();
+            source = e.source();
+        }
+
+        private float weight() {
+            return queryWeight * corpusWeight;
+        }
+    }
+}
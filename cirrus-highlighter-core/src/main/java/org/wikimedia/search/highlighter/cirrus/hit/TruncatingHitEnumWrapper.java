@@ -0,0 +1,69 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
+
+/**
+ * Stops returning hits after the first maxHits hits of the wrapped HitEnum.
+ * The wrapped HitEnum isn't advanced past the last hit returned. Hits skipped
+ * by advancing don't count towards maxHits.
+ */
+public class TruncatingHitEnumWrapper extends AbstractHitEnumWrapper {
+    private final int maxHits;
+    private int returned;
+
+    public TruncatingHitEnumWrapper(HitEnum wrapped, int maxHits) {
+        super(wrapped);
+        this.maxHits = maxHits;
+    }
+
+    @Override
+    public boolean next() {
+        if (returned >= maxHits) {
+            return false;
+        }
+        if (!super.next()) {
+            return false;
+        }
+        returned++;
+        return true;
+    }
+
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (returned >= maxHits) {
+            return false;
+        }
+        if (!wrapped().advanceToOffset(target)) {
+            return false;
+        }
+        returned++;
+        return true;
+    }
+
+    @Override
+    public boolean advanceToPosition(int target) {
+        if (returned >= maxHits) {
+            return false;
+        }
+        if (!wrapped().advanceToPosition(target)) {
+            return false;
+        }
+        returned++;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "≤%s⇒%s", maxHits, wrapped());
+    }
+
+    @Override
+    public void toGraph(GraphvizHitEnumGenerator generator) {
+        generator.addNode(this, Collections.singletonMap("maxHits", maxHits));
+        generator.addChild(this, wrapped());
+    }
+}
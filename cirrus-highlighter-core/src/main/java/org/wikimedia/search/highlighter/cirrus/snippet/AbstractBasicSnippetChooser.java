@@ -12,6 +12,7 @@ import org.wikimedia.search.highlighter.cirrus.SnippetChooser;
 
 public abstract class AbstractBasicSnippetChooser<S> implements SnippetChooser {
     private final Snippet.HitBuilder hitBuilder;
+    private int snippetsChecked;
 
     protected abstract S init(Segmenter segmenter, int max);
     protected abstract void snippet(S state,  int startOffset, int endOffset, List<Hit> hits);
@@ -26,8 +27,16 @@ public abstract class AbstractBasicSnippetChooser<S> implements SnippetChooser {
         this.hitBuilder = hitBuilder;
     }
 
+    /**
+     * Number of candidate snippets built by the last call to choose.
+     */
+    public int snippetsChecked() {
+        return snippetsChecked;
+    }
+
     @Override
     public List<Snippet> choose(Segmenter segmenter, HitEnum e, int max) {
+        snippetsChecked = 0;
         if (!e.next()) {
             return Collections.emptyList();
         }
@@ -36,8 +45,10 @@ public abstract class AbstractBasicSnippetChooser<S> implements SnippetChooser {
             int startOffset = e.startOffset();
             int lastEndOffset = e.endOffset();
             if (!segmenter.acceptable(startOffset, lastEndOffset)) {
-                // The first hit isn't acceptable so throw it out.
-                if (!e.next()) {
+                // The first hit isn't acceptable so throw it out along with
+                // any others the segmenter says can't be acceptable either.
+                int skipTo = segmenter.nextAcceptableStartOffset(startOffset, lastEndOffset);
+                if (!(skipTo > startOffset ? e.advanceToOffset(skipTo) : e.next())) {
                     return results(state);
                 }
                 continue;
@@ -47,11 +58,13 @@ public abstract class AbstractBasicSnippetChooser<S> implements SnippetChooser {
             while (true) {
                 boolean done = !e.next();
                 if (done) {
+                    snippetsChecked++;
                     snippet(state, startOffset, lastEndOffset, hits);
                     return results(state);
                 }
                 int thisEndOffset = e.endOffset();
                 if (!segmenter.acceptable(startOffset, thisEndOffset)) {
+                    snippetsChecked++;
                     snippet(state, startOffset, lastEndOffset, hits);
                     // e is now positioned on the hit that should start the next snippet
                     break;
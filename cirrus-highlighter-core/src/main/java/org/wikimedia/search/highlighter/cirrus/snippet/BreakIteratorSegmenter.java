@@ -46,6 +46,12 @@ public class BreakIteratorSegmenter implements Segmenter {
         return minEndOffset <= currentEnd;
     }
 
+    @Override
+    public int nextAcceptableStartOffset(int maxStartOffset, int minEndOffset) {
+        // The next hit might be inside a single sentence
+        return maxStartOffset;
+    }
+
     @Override
     public Memo memo(int maxStartOffset, int minEndOffset) {
         // Make sure we're acceptable _and_ position currentStart and currentEnd
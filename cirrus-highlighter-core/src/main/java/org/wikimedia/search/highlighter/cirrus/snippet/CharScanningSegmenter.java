@@ -45,6 +45,12 @@ public class CharScanningSegmenter implements Segmenter {
         return minEndOffset - maxStartOffset < maxSnippetSize;
     }
 
+    @Override
+    public int nextAcceptableStartOffset(int maxStartOffset, int minEndOffset) {
+        // Any shorter hit might fit
+        return maxStartOffset;
+    }
+
     @Override
     public Memo memo(int maxStartOffset, int minEndOffset) {
         return new CharScanningSegmenterMemo(maxStartOffset, minEndOffset);
@@ -145,6 +145,28 @@ public final class MultiSegmenter implements Segmenter {
                 maxStartOffset, minEndOffset));
     }
 
+    /**
+     * Skips to the start of the next segmenter if the hit is between
+     * segmenters or the one it is in can't accept anything after it. If the
+     * hit is past the end of the last segmenter then nothing after it can be
+     * accepted.
+     */
+    @Override
+    public int nextAcceptableStartOffset(int maxStartOffset, int minEndOffset) {
+        if (!updateSegmenter(maxStartOffset)) {
+            return Integer.MAX_VALUE;
+        }
+        if (inSegmenterStartOffset < 0) {
+            return lastStartOffset;
+        }
+        int next = segmenter.segmenter.nextAcceptableStartOffset(inSegmenterStartOffset,
+                minEndOffset - lastStartOffset);
+        if (next >= segmenter.length) {
+            return lastStartOffset + segmenter.length + offsetGap;
+        }
+        return next + lastStartOffset;
+    }
+
     /**
      * Updates all mutable member variables to point at the segmenter that can
      * segment starting at startOffset.
@@ -194,6 +216,8 @@ public final class MultiSegmenter implements Segmenter {
             inSegmenterStartOffset -= candidate.length + offsetGap;
             lastStartOffset += candidate.length + offsetGap;
         }
+        // Forget the old segmenter so we don't think we're still on it
+        segmenter = null;
         return false;
     }
 
@@ -0,0 +1,106 @@
+package org.wikimedia.search.highlighter.cirrus.snippet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+
+import org.wikimedia.search.highlighter.cirrus.Snippet;
+import org.wikimedia.search.highlighter.cirrus.Snippet.Hit;
+import org.wikimedia.search.highlighter.cirrus.SnippetFormatter;
+import org.wikimedia.search.highlighter.cirrus.SourceExtracter;
+
+/**
+ * Formats snippets just like {@link SnippetFormatter.Default} but writes them
+ * straight into a reusable UTF-8 buffer instead of building a String. The
+ * bytes it returns are what OpenSearch writes to the response anyway. Paired
+ * with an extracter that returns views, like
+ * {@link org.wikimedia.search.highlighter.cirrus.source.CharSequenceSourceExtracter},
+ * formatting a snippet allocates only its final bytes.
+ */
+public class Utf8SnippetFormatter implements SnippetFormatter {
+    private final SourceExtracter<? extends CharSequence> extracter;
+    private final byte[] start;
+    private final byte[] end;
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    public Utf8SnippetFormatter(SourceExtracter<? extends CharSequence> extracter, String start, String end) {
+        this.extracter = extracter;
+        this.start = start.getBytes(UTF_8);
+        this.end = end.getBytes(UTF_8);
+    }
+
+    @Override
+    public String format(Snippet snippet) {
+        write(snippet);
+        return new String(buffer, 0, length, UTF_8);
+    }
+
+    /**
+     * Format the snippet as UTF-8 bytes.
+     */
+    public byte[] formatBytes(Snippet snippet) {
+        write(snippet);
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void write(Snippet snippet) {
+        length = 0;
+        int lastWritten = snippet.startOffset();
+        for (Hit hit : snippet.hits()) {
+            if (lastWritten != hit.startOffset()) {
+                write(extracter.extract(lastWritten, hit.startOffset()));
+            }
+            write(start);
+            write(extracter.extract(hit.startOffset(), hit.endOffset()));
+            write(end);
+            lastWritten = hit.endOffset();
+        }
+        write(extracter.extract(lastWritten, snippet.endOffset()));
+    }
+
+    private void write(byte[] bytes) {
+        grow(length + bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /**
+     * Encode chars as UTF-8. Unpaired surrogates become '?' just like they do
+     * in {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    @SuppressWarnings("checkstyle:CyclomaticComplexity")
+    private void write(CharSequence chars) {
+        int size = chars.length();
+        // No char takes more than three bytes on its own and surrogate pairs
+        // take four bytes for two chars.
+        grow(length + size * 3);
+        for (int i = 0; i < size; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buffer[length++] = '?';
+            }
+        }
+    }
+
+    private void grow(int minSize) {
+        if (buffer.length < minSize) {
+            buffer = Arrays.copyOf(buffer, Math.max(minSize, buffer.length * 2));
+        }
+    }
+}
@@ -20,6 +20,12 @@ public class WholeSourceSegmenter implements Segmenter {
         return minEndOffset <= segment.endOffset();
     }
 
+    @Override
+    public int nextAcceptableStartOffset(int maxStartOffset, int minEndOffset) {
+        // Nothing that starts after the end of the source can fit
+        return maxStartOffset < segment.endOffset() ? maxStartOffset : Integer.MAX_VALUE;
+    }
+
     @Override
     public Memo memo(int maxStartOffset, int minEndOffset) {
         return new ImmediateSegmenterMemo(segment);
@@ -0,0 +1,42 @@
+package org.wikimedia.search.highlighter.cirrus.source;
+
+import java.nio.CharBuffer;
+
+import org.wikimedia.search.highlighter.cirrus.SourceExtracter;
+
+/**
+ * Extracts views of a CharSequence source. Unlike
+ * {@link StringSourceExtracter} it never copies the source so extracting is
+ * cheap but the extracts are only valid as long as the source isn't modified.
+ * Handles broken surrogate pairs the same way
+ * {@link StringSourceExtracter#safeSubstring(int, int, String)} does.
+ */
+public final class CharSequenceSourceExtracter implements SourceExtracter<CharSequence> {
+    private final CharSequence source;
+
+    public CharSequenceSourceExtracter(CharSequence source) {
+        this.source = source;
+    }
+
+    @Override
+    public CharSequence extract(int startOffset, int endOffset) {
+        int length = source.length();
+        startOffset = Math.max(0, startOffset);
+        endOffset = Math.min(endOffset, length);
+        // May happen on copy_to fields where the data is not
+        // part of the source
+        if (startOffset >= endOffset) {
+            return "";
+        }
+        if (Character.isLowSurrogate(source.charAt(startOffset))) {
+            startOffset++;
+        }
+        if (length > endOffset && Character.isLowSurrogate(source.charAt(endOffset))) {
+            endOffset--;
+        }
+        if (startOffset >= endOffset) {
+            return "";
+        }
+        return CharBuffer.wrap(source, startOffset, endOffset);
+    }
+}
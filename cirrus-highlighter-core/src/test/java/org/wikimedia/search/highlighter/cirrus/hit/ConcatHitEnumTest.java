@@ -2,6 +2,8 @@ package org.wikimedia.search.highlighter.cirrus.hit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atCorpusWeight;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atEndOffset;
@@ -58,4 +60,24 @@ public class ConcatHitEnumTest extends RandomizedTest {
         }
         assertThat(concat, isEmpty());
     }
+
+    @Test
+    public void advanceToOffsetSkipsValues() {
+        List<HitEnumAndLength> enums = new ArrayList<HitEnumAndLength>();
+        for (int i = 0; i < 3; i++) {
+            ReplayingHitEnum e = new ReplayingHitEnum();
+            e.recordHit(0, 0, 2, 1, 1, 0);
+            e.recordHit(1, 4, 6, 1, 1, 0);
+            enums.add(new HitEnumAndLength(e, 10));
+        }
+        HitEnum concat = new ConcatHitEnum(enums.iterator(), 1, 1);
+        assertTrue(concat.advanceToOffset(3));
+        assertThat(concat, allOf(atStartOffset(4), atEndOffset(6)));
+        // The second value is skipped entirely
+        assertTrue(concat.advanceToOffset(25));
+        assertThat(concat, allOf(atStartOffset(26), atEndOffset(28)));
+        // Always moves past the current hit
+        assertFalse(concat.advanceToOffset(26));
+        assertThat(concat, isEmpty());
+    }
 }
@@ -0,0 +1,64 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.isEmpty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+
+public class DeadlineHitEnumWrapperTest {
+    @Test
+    public void noDeadline() {
+        Deadline deadline = Deadline.none();
+        DeadlineHitEnumWrapper e = new DeadlineHitEnumWrapper(replaying(), deadline);
+        for (int i = 0; i < 200; i++) {
+            assertThat(e, advances());
+            assertThat(e, atPosition(i));
+        }
+        assertThat(e, isEmpty());
+        assertFalse(deadline.hasExpired());
+    }
+
+    @Test
+    public void farOffDeadline() {
+        Deadline deadline = Deadline.after(1, TimeUnit.DAYS);
+        DeadlineHitEnumWrapper e = new DeadlineHitEnumWrapper(replaying(), deadline);
+        for (int i = 0; i < 200; i++) {
+            assertThat(e, advances());
+        }
+        assertThat(e, isEmpty());
+        assertFalse(deadline.hasExpired());
+    }
+
+    @Test
+    public void expiredDeadline() {
+        Deadline deadline = Deadline.after(0, TimeUnit.MILLISECONDS);
+        DeadlineHitEnumWrapper e = new DeadlineHitEnumWrapper(replaying(), deadline);
+        assertThat(e, isEmpty());
+        assertTrue(deadline.hasExpired());
+    }
+
+    @Test
+    public void samplingStopsAtTheDeadline() {
+        Deadline deadline = Deadline.after(0, TimeUnit.MILLISECONDS);
+        CountingHitEnumWrapper counted = new CountingHitEnumWrapper(replaying());
+        HitEnum e = new SamplingHitEnumWrapper(new DeadlineHitEnumWrapper(counted, deadline), 10);
+        assertThat(e, isEmpty());
+        assertThat(counted.count(), equalTo(0));
+    }
+
+    private ReplayingHitEnum replaying() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        for (int i = 0; i < 200; i++) {
+            replaying.recordHit(i, i * 2, i * 2 + 1, 1, 0);
+        }
+        return replaying;
+    }
+}
@@ -0,0 +1,232 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atCorpusWeight;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atQueryWeight;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atSource;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.isEmpty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+@RunWith(RandomizedRunner.class)
+public class ExactPhraseHitEnumWrapperTest extends RandomizedTest {
+    private float weight;
+    private int[][] phrase;
+    private ReplayingHitEnum input;
+
+    @Test
+    public void miss() {
+        phrase(0, 0, 2);
+        inputs(1, 1);
+        result(1, 1);
+
+        inputs(1, 1, 1, 1, 1);
+        result(1, 1, 1, 1, 1);
+    }
+
+    @Test
+    public void basic() {
+        phrase(0, 0, 2);
+        inputs(0, 0, 1);
+        result(2, 2, 1);
+    }
+
+    @Test
+    public void startOver() {
+        phrase(1, 1, 2, 3, 4, 2);
+        inputs(1, 1, 1, 2, 3, 4);
+        result(1, 2, 2, 2, 2, 2);
+    }
+
+    @Test
+    public void twoInARow() {
+        phrase(0, 0, 2);
+        inputs(0, 0, 0, 0, 1);
+        result(2, 2, 2, 2, 1);
+    }
+
+    @Test
+    public void multi() {
+        phrase(0, new int[] {0, 1}, 2);
+        inputs(0, 0, 2);
+        result(2, 2, 1);
+
+        inputs(0, 1, 1);
+        result(2, 2, 1);
+
+        inputs(1, 1, 1);
+        result(1, 1, 1);
+    }
+
+    @Test
+    public void gap() {
+        phrase(0, 1, 2);
+        input.recordHit(0, 0, 0, 1, 0, 0);
+        input.recordHit(2, 0, 0, 1, 1, 1);
+        input.recordHit(3, 0, 0, 1, 2, 0);
+        input.recordHit(4, 0, 0, 1, 3, 1);
+        HitEnum e = new ExactPhraseHitEnumWrapper(input, phrase, weight);
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(0), atQueryWeight(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(2), atQueryWeight(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(3), atQueryWeight(2)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(4), atQueryWeight(2)));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void manyHitsOnAPosition() {
+        phrase(0, 1, 2);
+        input.recordHit(0, 0, 0, 1, 0, 0);
+        input.recordHit(1, 0, 0, 1, 1, 2);
+        input.recordHit(1, 0, 0, 1, 2, 1);
+        input.recordHit(1, 0, 0, 1, 3, 3);
+        HitEnum e = new ExactPhraseHitEnumWrapper(input, phrase, weight);
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(0), atQueryWeight(2), atSource(0)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(1), atQueryWeight(1), atSource(2)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(1), atQueryWeight(2), atSource(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(1), atQueryWeight(1), atSource(3)));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void sameAsPhraseHitEnumWrapper() {
+        int length = between(2, 5);
+        phrase = new int[length][];
+        for (int i = 0; i < length; i++) {
+            phrase[i] = new int[] {between(0, 3)};
+        }
+        weight = 2;
+        ReplayingHitEnum forGeneric = new ReplayingHitEnum();
+        int size = between(0, 1000);
+        for (int p = 0; p < size; p++) {
+            int source = between(0, 3);
+            input.recordHit(p, 0, 0, 1, p, source);
+            forGeneric.recordHit(p, 0, 0, 1, p, source);
+        }
+        HitEnum exact = new ExactPhraseHitEnumWrapper(input, phrase, weight);
+        HitEnum generic = new PhraseHitEnumWrapper(forGeneric, phrase, weight, 0);
+        while (generic.next()) {
+            assertThat(exact, advances());
+            assertThat(exact, allOf(atPosition(generic.position()), atQueryWeight(generic.queryWeight()),
+                    atCorpusWeight(generic.corpusWeight()), atSource(generic.source())));
+        }
+        assertThat(exact, isEmpty());
+    }
+
+    @Test
+    public void advanceToPosition() {
+        int length = between(2, 5);
+        phrase = new int[length][];
+        for (int i = 0; i < length; i++) {
+            phrase[i] = new int[] {between(0, 3)};
+        }
+        weight = 2;
+        ReplayingHitEnum forNext = new ReplayingHitEnum();
+        int size = between(0, 1000);
+        for (int p = 0; p < size; p++) {
+            int source = between(0, 3);
+            input.recordHit(p, 0, 0, 1, p, source);
+            forNext.recordHit(p, 0, 0, 1, p, source);
+        }
+        HitEnum advanced = new ExactPhraseHitEnumWrapper(input, phrase, weight);
+        HitEnum stepped = new ExactPhraseHitEnumWrapper(forNext, phrase, weight);
+        int target = 0;
+        while (true) {
+            target += between(0, 20);
+            boolean found;
+            do {
+                found = stepped.next();
+            } while (found && stepped.position() < target);
+            if (!found) {
+                assertFalse(advanced.advanceToPosition(target));
+                break;
+            }
+            assertTrue(advanced.advanceToPosition(target));
+            assertThat(advanced, allOf(atPosition(stepped.position()), atQueryWeight(stepped.queryWeight()),
+                    atSource(stepped.source())));
+        }
+    }
+
+    @Test
+    public void advanceToPositionSkipsHitsThatCantBeInPhrases() {
+        phrase(0, 1, 2);
+        for (int p = 0; p < 1000; p++) {
+            input.recordHit(p, 0, 0, 1, p, p % 2);
+        }
+        CountingHitEnumWrapper counted = new CountingHitEnumWrapper(input);
+        HitEnum e = new ExactPhraseHitEnumWrapper(counted, phrase, weight);
+        assertTrue(e.advanceToPosition(900));
+        assertThat(e, allOf(atPosition(900), atQueryWeight(2)));
+        assertThat(counted.count(), lessThan(10));
+    }
+
+    @Test
+    public void largeAndBasicSpeedTest() {
+        int size = 1000000;
+        phrase(0, 0, 0, 0, 2);
+        int[] inputs = new int[size];
+        inputs(inputs);
+        HitEnum e = new ExactPhraseHitEnumWrapper(input, phrase, weight);
+        long start = System.currentTimeMillis();
+        for (int p = 0; p < size; p++) {
+            assertThat(e, advances());
+            assertThat(e, allOf(atPosition(p), atQueryWeight(2), atCorpusWeight(p)));
+        }
+        assertThat(e, isEmpty());
+        assertThat(System.currentTimeMillis() - start, lessThan(TimeUnit.SECONDS.toMillis(10)));
+    }
+
+    @Before
+    public void setup() {
+        input = new ReplayingHitEnum();
+    }
+
+    private void phrase(Object... phraseAndWeight) {
+        phrase = new int[phraseAndWeight.length - 1][];
+        for (int i = 0; i < phraseAndWeight.length - 1; i++) {
+            if (phraseAndWeight[i] instanceof int[]) {
+                phrase[i] = (int[])phraseAndWeight[i];
+            } else {
+                phrase[i] = new int[] {(int)phraseAndWeight[i]};
+            }
+        }
+        weight = ((Number)phraseAndWeight[phraseAndWeight.length - 1]).floatValue();
+    }
+
+    private void inputs(int... sources) {
+        for (int p = 0; p < sources.length; p++) {
+            input.recordHit(p, 0, 0, 1, p, sources[p]);
+        }
+    }
+
+    private void result(int... weights) {
+        HitEnum e = new ExactPhraseHitEnumWrapper(input, phrase, weight);
+        for (int p = 0; p < weights.length; p++) {
+            assertThat(e, advances());
+            assertThat(e, allOf(atPosition(p), atQueryWeight(weights[p]), atCorpusWeight(p)));
+        }
+        assertThat(e, isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.junit.Assert.assertThat;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atCorpusWeight;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atQueryWeight;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atSource;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.isEmpty;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+
+@RunWith(RandomizedRunner.class)
+public class MatchedPhraseHitEnumWrapperTest extends RandomizedTest {
+    @Test
+    public void basic() {
+        ReplayingHitEnum input = new ReplayingHitEnum();
+        int[] sources = new int[] {0, 0, 1, 0, 1, 1};
+        for (int p = 0; p < sources.length; p++) {
+            input.recordHit(p, 0, 0, 1, p, sources[p]);
+        }
+        HitEnum e = new MatchedPhraseHitEnumWrapper(input, new int[][] {{0}, {1}}, 2, new int[] {1, 3}, 2);
+        int[] weights = new int[] {1, 2, 2, 2, 2, 1};
+        for (int p = 0; p < weights.length; p++) {
+            assertThat(e, advances());
+            assertThat(e, allOf(atPosition(p), atQueryWeight(weights[p]), atSource(sources[p])));
+        }
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void onlyStartsBeforeStartCount() {
+        ReplayingHitEnum input = new ReplayingHitEnum();
+        input.recordHit(0, 0, 0, 1, 0, 0);
+        input.recordHit(1, 0, 0, 1, 1, 1);
+        HitEnum e = new MatchedPhraseHitEnumWrapper(input, new int[][] {{0}, {1}}, 2, new int[] {0}, 0);
+        assertThat(e, advances());
+        assertThat(e, atQueryWeight(1));
+        assertThat(e, advances());
+        assertThat(e, atQueryWeight(1));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void sameAsExactPhraseHitEnumWrapper() {
+        int length = between(2, 5);
+        int[][] phrase = new int[length][];
+        for (int i = 0; i < length; i++) {
+            phrase[i] = new int[] {between(0, 3)};
+        }
+        int size = between(0, 1000);
+        int[] sources = new int[size];
+        ReplayingHitEnum forExact = new ReplayingHitEnum();
+        ReplayingHitEnum forMatched = new ReplayingHitEnum();
+        for (int p = 0; p < size; p++) {
+            sources[p] = between(0, 3);
+            forExact.recordHit(p, 0, 0, 1, p, sources[p]);
+            forMatched.recordHit(p, 0, 0, 1, p, sources[p]);
+        }
+        int[] starts = new int[size];
+        int startCount = 0;
+        for (int start = 0; start + length <= size; start++) {
+            boolean matches = true;
+            for (int i = 0; i < length && matches; i++) {
+                matches = Arrays.binarySearch(phrase[i], sources[start + i]) >= 0;
+            }
+            if (matches) {
+                starts[startCount++] = start;
+            }
+        }
+        HitEnum exact = new ExactPhraseHitEnumWrapper(forExact, phrase, 2);
+        HitEnum matched = new MatchedPhraseHitEnumWrapper(forMatched, phrase, 2, starts, startCount);
+        while (exact.next()) {
+            assertThat(matched, advances());
+            assertThat(matched, allOf(atPosition(exact.position()), atQueryWeight(exact.queryWeight()),
+                    atCorpusWeight(exact.corpusWeight()), atSource(exact.source())));
+        }
+        assertThat(matched, isEmpty());
+    }
+}
@@ -2,7 +2,9 @@ package org.wikimedia.search.highlighter.cirrus.hit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atEndOffset;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
@@ -91,4 +93,62 @@ public class MergingHitEnumTest extends RandomizedTest {
         }
         assertThat(merged, isEmpty());
     }
+
+    @Test
+    public void advanceToPosition() {
+        List<Integer> allExpectedPositions = new ArrayList<Integer>();
+        List<HitEnum> enums = new ArrayList<HitEnum>();
+        int maxEnumCount = between(1, 50);
+        for (int enumCount = 0; enumCount < maxEnumCount; enumCount++) {
+            List<Integer> expectedPositions = new ArrayList<Integer>();
+            int enumMax = between(0, 100);
+            for (int i = 0; i < enumMax; i++) {
+                expectedPositions.add(between(0, 10000));
+            }
+            allExpectedPositions.addAll(expectedPositions);
+            Collections.sort(expectedPositions);
+            ReplayingHitEnum e = new ReplayingHitEnum();
+            enums.add(e);
+            for (Integer position : expectedPositions) {
+                e.recordHit(position, 0, 0, 0, 0);
+            }
+        }
+
+        Collections.sort(allExpectedPositions);
+        MergingHitEnum merged = new MergingHitEnum(enums, HitEnum.LessThans.POSITION);
+        int current = -1;
+        while (true) {
+            int target = (current < 0 ? 0 : allExpectedPositions.get(current)) + between(0, 500);
+            current++;
+            while (current < allExpectedPositions.size() && allExpectedPositions.get(current) < target) {
+                current++;
+            }
+            if (current >= allExpectedPositions.size()) {
+                assertFalse(merged.advanceToPosition(target));
+                break;
+            }
+            assertTrue(merged.advanceToPosition(target));
+            assertThat(merged, atPosition(allExpectedPositions.get(current)));
+        }
+    }
+
+    @Test
+    public void advanceBeforeNextStartsEveryEnumAtTarget() {
+        List<CountingHitEnumWrapper> counted = new ArrayList<CountingHitEnumWrapper>();
+        for (int enumCount = 0; enumCount < 3; enumCount++) {
+            ReplayingHitEnum e = new ReplayingHitEnum();
+            for (int position = enumCount; position < 1000; position += 3) {
+                e.recordHit(position, 0, 0, 0, 0);
+            }
+            counted.add(new CountingHitEnumWrapper(e));
+        }
+        MergingHitEnum merged = new MergingHitEnum(counted, HitEnum.LessThans.POSITION);
+        assertTrue(merged.advanceToPosition(500));
+        assertThat(merged, atPosition(500));
+        for (CountingHitEnumWrapper e : counted) {
+            assertThat(e.count(), equalTo(1));
+        }
+        assertThat(merged, advances());
+        assertThat(merged, atPosition(501));
+    }
 }
@@ -2,6 +2,8 @@ package org.wikimedia.search.highlighter.cirrus.hit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atEndOffset;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
@@ -91,4 +93,20 @@ public class OverlapMergingHitEnumWrapperTest extends RandomizedTest {
                 atWeight(9), atPosition(0), atStartOffset(0), atEndOffset(5), atSource(33)));
         assertThat(e, isEmpty());
     }
+
+    @Test
+    public void advanceToOffset() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        replaying.recordHit(0, 0, 2, 1, 1);
+        replaying.recordHit(1, 1, 3, 1, 2);
+        replaying.recordHit(2, 10, 13, 2, 3);
+        replaying.recordHit(3, 12, 14, 3, 4);
+        replaying.recordHit(4, 20, 22, 4, 5);
+        HitEnum e = new OverlapMergingHitEnumWrapper(replaying);
+        assertTrue(e.advanceToOffset(5));
+        assertThat(e, allOf(atPosition(2), atStartOffset(10), atEndOffset(14), atWeight(3), atSource(31 * 3 + 4)));
+        assertTrue(e.advanceToOffset(15));
+        assertThat(e, allOf(atPosition(4), atStartOffset(20), atEndOffset(22), atWeight(4), atSource(5)));
+        assertFalse(e.advanceToOffset(21));
+    }
 }
@@ -2,11 +2,14 @@ package org.wikimedia.search.highlighter.cirrus.hit;
 
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atCorpusWeight;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atQueryWeight;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atSource;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.isEmpty;
 
 import java.util.concurrent.TimeUnit;
@@ -93,6 +96,53 @@ public class PhraseHitEnumWrapperTest {
         result(1, 1, 1);
     }
 
+    @Test
+    public void advanceToPosition() {
+        phrase(0, 1, 2, 2);
+        for (int step = 0; step < 10; step++) {
+            ReplayingHitEnum forAdvance = new ReplayingHitEnum();
+            ReplayingHitEnum forNext = new ReplayingHitEnum();
+            for (int p = 0; p < 200; p++) {
+                int source = (p * 7 + p / 3) % 4;
+                forAdvance.recordHit(p, 0, 0, 1, p, source);
+                forNext.recordHit(p, 0, 0, 1, p, source);
+            }
+            HitEnum advanced = new PhraseHitEnumWrapper(forAdvance, phrase, weight, 2);
+            HitEnum stepped = new PhraseHitEnumWrapper(forNext, phrase, weight, 2);
+            int target = 0;
+            while (true) {
+                target += step;
+                boolean found;
+                do {
+                    found = stepped.next();
+                } while (found && stepped.position() < target);
+                if (!found) {
+                    assertFalse(advanced.advanceToPosition(target));
+                    break;
+                }
+                assertTrue(advanced.advanceToPosition(target));
+                assertThat(advanced, allOf(atPosition(stepped.position()), atQueryWeight(stepped.queryWeight()),
+                        atSource(stepped.source())));
+            }
+        }
+    }
+
+    @Test
+    public void advanceToPositionSkipsHitsThatCantBeInPhrases() {
+        slop(1);
+        phrase(0, 1, 2);
+        int[] sources = new int[1000];
+        for (int p = 0; p < sources.length; p++) {
+            sources[p] = p % 2;
+        }
+        inputs(sources);
+        CountingHitEnumWrapper counted = new CountingHitEnumWrapper(input);
+        HitEnum e = new PhraseHitEnumWrapper(counted, phrase, weight, slop);
+        assertTrue(e.advanceToPosition(900));
+        assertThat(e, allOf(atPosition(900), atQueryWeight(2)));
+        assertThat(counted.count(), lessThan(10));
+    }
+
     @Test
     public void largeAndBasicSpeedTest() {
         int size = 1000000;
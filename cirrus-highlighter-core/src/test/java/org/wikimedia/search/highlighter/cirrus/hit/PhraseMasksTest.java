@@ -0,0 +1,45 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class PhraseMasksTest {
+    @Test
+    public void masks() {
+        PhraseMasks masks = new PhraseMasks(new int[][] {{3}, {1, 3}, {2}, {3}});
+        assertThat(masks.mask(1), equalTo(0b10L));
+        assertThat(masks.mask(2), equalTo(0b100L));
+        assertThat(masks.mask(3), equalTo(0b1011L));
+        assertThat(masks.mask(0), equalTo(0L));
+        assertThat(masks.mask(4), equalTo(0L));
+    }
+
+    @Test
+    public void longest() {
+        int[][] phrase = new int[PhraseMasks.MAX_PHRASE_LENGTH][];
+        for (int i = 0; i < phrase.length; i++) {
+            phrase[i] = new int[] {i};
+        }
+        PhraseMasks masks = new PhraseMasks(phrase);
+        assertThat(masks.mask(0), equalTo(1L));
+        assertThat(masks.mask(phrase.length - 1), equalTo(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void tooLong() {
+        int[][] phrase = new int[PhraseMasks.MAX_PHRASE_LENGTH + 1][];
+        for (int i = 0; i < phrase.length; i++) {
+            phrase[i] = new int[] {i};
+        }
+        try {
+            new PhraseMasks(phrase);
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("can't be longer than 64 terms"));
+        }
+    }
+}
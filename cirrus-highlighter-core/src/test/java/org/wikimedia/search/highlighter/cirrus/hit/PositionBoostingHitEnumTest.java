@@ -1,7 +1,9 @@
 package org.wikimedia.search.highlighter.cirrus.hit;
 
 import static org.hamcrest.Matchers.allOf;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atWeight;
@@ -71,4 +73,41 @@ public class PositionBoostingHitEnumTest {
         assertThat(e, isEmpty());
     }
 
+    @Test
+    public void zeroBoostSkips() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        for (int i = 0; i < 100; i++) {
+            replaying.recordHit(i, 0, 0, i, 0);
+        }
+        PositionBoostingHitEnumWrapper e = new PositionBoostingHitEnumWrapper(replaying);
+        e.add(10, 0f);
+        e.add(20, 2f);
+        e.add(50, 0f);
+        int i = 10;
+        for (; i < 20; i++) {
+            assertThat(e, advances());
+            assertThat(e, allOf(atPosition(i), atWeight(i * 2)));
+        }
+        for (i = 50; i < 100; i++) {
+            assertThat(e, advances());
+            assertThat(e, allOf(atPosition(i), atWeight(i)));
+        }
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void advanceToPosition() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        for (int i = 0; i < 100; i++) {
+            replaying.recordHit(i, 0, 0, 1, 0);
+        }
+        PositionBoostingHitEnumWrapper e = new PositionBoostingHitEnumWrapper(replaying);
+        e.add(10, 2f);
+        e.add(50, 1.5f);
+        assertTrue(e.advanceToPosition(5));
+        assertThat(e, allOf(atPosition(5), atWeight(2f)));
+        assertTrue(e.advanceToPosition(60));
+        assertThat(e, allOf(atPosition(60), atWeight(1f)));
+        assertFalse(e.advanceToPosition(100));
+    }
 }
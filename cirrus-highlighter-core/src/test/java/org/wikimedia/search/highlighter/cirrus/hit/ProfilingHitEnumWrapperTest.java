@@ -0,0 +1,43 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.isEmpty;
+
+import org.junit.Test;
+
+public class ProfilingHitEnumWrapperTest {
+    @Test
+    public void empty() {
+        ProfilingHitEnumWrapper.Profile profile = new ProfilingHitEnumWrapper.Profile();
+        ProfilingHitEnumWrapper e = profile.wrap("empty", EmptyHitEnum.INSTANCE);
+        assertThat(e, isEmpty());
+        assertThat(e.hits(), equalTo(0));
+        assertThat(profile.stages(), contains(e));
+    }
+
+    @Test
+    public void countsHitsPerStage() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        replaying.recordHit(0, 0, 2, 1, 0);
+        replaying.recordHit(1, 3, 5, 1, 0);
+        replaying.recordHit(2, 6, 8, 1, 0);
+        ProfilingHitEnumWrapper.Profile profile = new ProfilingHitEnumWrapper.Profile();
+        ProfilingHitEnumWrapper inner = profile.wrap("inner", replaying);
+        ProfilingHitEnumWrapper outer = profile.wrap("outer", new TruncatingHitEnumWrapper(inner, 2));
+        assertThat(outer, advances());
+        assertThat(outer, atPosition(0));
+        assertThat(outer, advances());
+        assertThat(outer, atPosition(1));
+        assertThat(outer, isEmpty());
+        assertThat(inner.hits(), equalTo(2));
+        assertThat(outer.hits(), equalTo(2));
+        assertThat(inner.nanos(), greaterThanOrEqualTo(0L));
+        assertThat(outer.nanos(), greaterThanOrEqualTo(0L));
+        assertThat(profile.stages(), contains(inner, outer));
+    }
+}
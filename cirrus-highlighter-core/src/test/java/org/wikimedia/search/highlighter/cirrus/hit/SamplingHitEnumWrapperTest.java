@@ -0,0 +1,68 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.junit.Assert.assertThat;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atWeight;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.isEmpty;
+
+import org.junit.Test;
+
+public class SamplingHitEnumWrapperTest {
+    @Test
+    public void empty() {
+        SamplingHitEnumWrapper e = new SamplingHitEnumWrapper(EmptyHitEnum.INSTANCE, 2);
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void underLimit() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        replaying.recordHit(0, 0, 2, 1, 0);
+        replaying.recordHit(1, 3, 5, 2, 0);
+        SamplingHitEnumWrapper e = new SamplingHitEnumWrapper(replaying, 4);
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(0), atWeight(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(1), atWeight(2)));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void keepsEarlyAndHeaviestInOrder() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        replaying.recordHit(0, 0, 2, 1, 0);
+        replaying.recordHit(1, 3, 5, 1, 0);
+        replaying.recordHit(2, 6, 8, 1, 0);
+        replaying.recordHit(3, 9, 11, 5, 0);
+        replaying.recordHit(4, 12, 14, 2, 0);
+        replaying.recordHit(5, 15, 17, 3, 0);
+        SamplingHitEnumWrapper e = new SamplingHitEnumWrapper(replaying, 4);
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(0), atWeight(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(1), atWeight(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(3), atWeight(5)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(5), atWeight(3)));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void tiesKeepEarliest() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        for (int i = 0; i < 5; i++) {
+            replaying.recordHit(i, i * 2, i * 2 + 1, 1, 0);
+        }
+        SamplingHitEnumWrapper e = new SamplingHitEnumWrapper(replaying, 3);
+        assertThat(e, advances());
+        assertThat(e, atPosition(0));
+        assertThat(e, advances());
+        assertThat(e, atPosition(1));
+        assertThat(e, advances());
+        assertThat(e, atPosition(2));
+        assertThat(e, isEmpty());
+    }
+}
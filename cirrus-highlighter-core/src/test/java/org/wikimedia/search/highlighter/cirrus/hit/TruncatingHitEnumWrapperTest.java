@@ -0,0 +1,48 @@
+package org.wikimedia.search.highlighter.cirrus.hit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.atSource;
+import static org.wikimedia.search.highlighter.cirrus.Matchers.isEmpty;
+
+import org.junit.Test;
+
+public class TruncatingHitEnumWrapperTest {
+    @Test
+    public void empty() {
+        TruncatingHitEnumWrapper e = new TruncatingHitEnumWrapper(EmptyHitEnum.INSTANCE, 2);
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void underLimit() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        replaying.recordHit(0, 0, 2, 1, 1);
+        replaying.recordHit(1, 3, 5, 1, 2);
+        TruncatingHitEnumWrapper e = new TruncatingHitEnumWrapper(replaying, 3);
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(0), atSource(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(1), atSource(2)));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void truncates() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        replaying.recordHit(0, 0, 2, 1, 1);
+        replaying.recordHit(1, 3, 5, 1, 2);
+        replaying.recordHit(2, 6, 8, 1, 3);
+        TruncatingHitEnumWrapper e = new TruncatingHitEnumWrapper(replaying, 2);
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(0), atSource(1)));
+        assertThat(e, advances());
+        assertThat(e, allOf(atPosition(1), atSource(2)));
+        assertThat(e, isEmpty());
+        // The wrapped enum wasn't advanced past the limit
+        assertThat(replaying.waiting(), equalTo(1));
+    }
+}
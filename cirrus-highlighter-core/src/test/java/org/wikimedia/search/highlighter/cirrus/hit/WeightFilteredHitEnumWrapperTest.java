@@ -1,7 +1,9 @@
 package org.wikimedia.search.highlighter.cirrus.hit;
 
 import static org.hamcrest.Matchers.allOf;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.advances;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atEndOffset;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.atPosition;
@@ -52,4 +54,19 @@ public class WeightFilteredHitEnumWrapperTest {
         WeightFilteredHitEnumWrapper e = new WeightFilteredHitEnumWrapper(replaying, 2f);
         assertThat(e, isEmpty());
     }
+
+    @Test
+    public void advanceToOffsetFilters() {
+        ReplayingHitEnum replaying = new ReplayingHitEnum();
+        replaying.recordHit(0, 0, 2, 1.7f, 1);
+        replaying.recordHit(1, 3, 5, 0f, 2);
+        replaying.recordHit(2, 6, 8, 1.7f, 3);
+        replaying.recordHit(3, 9, 11, 1.7f, 4);
+        WeightFilteredHitEnumWrapper e = new WeightFilteredHitEnumWrapper(replaying, 0);
+        assertTrue(e.advanceToOffset(3));
+        assertThat(e, allOf(atPosition(2), atStartOffset(6), atSource(3)));
+        assertTrue(e.advanceToOffset(7));
+        assertThat(e, allOf(atPosition(3), atStartOffset(9), atSource(4)));
+        assertFalse(e.advanceToOffset(10));
+    }
 }
@@ -2,14 +2,21 @@ package org.wikimedia.search.highlighter.cirrus.snippet;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
 import static org.wikimedia.search.highlighter.cirrus.Matchers.extracted;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.wikimedia.search.highlighter.cirrus.Snippet;
 import org.wikimedia.search.highlighter.cirrus.SnippetChooser;
+import org.wikimedia.search.highlighter.cirrus.hit.ConcatHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.CountingHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.ReplayingHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.ReplayingHitEnum.HitEnumAndLength;
+import org.wikimedia.search.highlighter.cirrus.source.StringSourceExtracter;
 
 import com.carrotsearch.randomizedtesting.RandomizedRunner;
 
@@ -52,4 +59,25 @@ public class BasicSourceOrderSnippetChooserTest extends AbstractBasicSnippetChoo
                         extracted(extracter, "the")));
         // "lazy" isn't included because it is in the margin.
     }
+
+    @Test
+    public void skipsHitsPastTheLastSegment() {
+        String source = "a very simple test";
+        extracter = new StringSourceExtracter(source);
+        segmenter = MultiSegmenter.builder().add(new CharScanningSegmenter(source, 20, 10), source.length()).build();
+        ReplayingHitEnum first = new ReplayingHitEnum();
+        first.recordHit(2, 7, 13, 1, 0);
+        // Hits on a value the segmenter doesn't know about
+        ReplayingHitEnum second = new ReplayingHitEnum();
+        for (int i = 0; i < 10; i++) {
+            second.recordHit(i, i * 2, i * 2 + 1, 1, 0);
+        }
+        CountingHitEnumWrapper counted = new CountingHitEnumWrapper(second);
+        hitEnum = new ConcatHitEnum(Arrays.asList(new HitEnumAndLength(first, source.length()),
+                new HitEnumAndLength(counted, 20)).iterator(), 1, 1);
+        List<Snippet> snippets = chooser.choose(segmenter, hitEnum, 2);
+        assertThat(snippets, contains(extracted(extracter, "a very simple test")));
+        // Only the first hit on the second value was read before skipping it
+        assertThat(counted.count(), equalTo(1));
+    }
 }
@@ -122,6 +122,17 @@ public class MultiSegmenterTest extends RandomizedTest {
         assertFalse(segmenter.acceptable(110, 300));
     }
 
+    @Test
+    public void nextAcceptableStartOffset() {
+        setup("a very simple test", "with two fields to test");
+        // Spanning the end of the first value doesn't rule out later hits in it
+        assertThat(segmenter.nextAcceptableStartOffset(16, 25), equalTo(16));
+        // Between the values skips to the second one
+        assertThat(segmenter.nextAcceptableStartOffset(18, 20), equalTo(18 + offsetGap));
+        // Nothing past the last value is acceptable
+        assertThat(segmenter.nextAcceptableStartOffset(offsetGap + 41, offsetGap + 45), equalTo(Integer.MAX_VALUE));
+    }
+
     /**
      * Build a builder with a random offsetGap, a
      * StringMergingMultiSourceExtracter with the gap and record the gap.
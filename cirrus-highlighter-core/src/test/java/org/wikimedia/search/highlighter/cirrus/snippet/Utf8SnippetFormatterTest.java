@@ -0,0 +1,50 @@
+package org.wikimedia.search.highlighter.cirrus.snippet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.wikimedia.search.highlighter.cirrus.Snippet;
+import org.wikimedia.search.highlighter.cirrus.Snippet.Hit;
+import org.wikimedia.search.highlighter.cirrus.SnippetFormatter;
+import org.wikimedia.search.highlighter.cirrus.source.StringSourceExtracter;
+
+public class Utf8SnippetFormatterTest {
+    @Test
+    public void ascii() {
+        assertFormatsLikeDefault("tests very simple test", new Snippet(0, 22,
+                Arrays.asList(new Hit(0, 5, 1, 0), new Hit(18, 22, 1, 0))));
+    }
+
+    @Test
+    public void multiByte() {
+        String source = "Héllö wörld ру́сский 日本語 😀 done";
+        assertFormatsLikeDefault(source, new Snippet(0, source.length(),
+                Arrays.asList(new Hit(0, 5, 1, 0), new Hit(12, 20, 1, 0), new Hit(21, 24, 1, 0), new Hit(25, 27, 1, 0))));
+    }
+
+    @Test
+    public void hitAtEnd() {
+        assertFormatsLikeDefault("a b", new Snippet(0, 3, Arrays.asList(new Hit(2, 3, 1, 0))));
+    }
+
+    @Test
+    public void reusesBuffer() {
+        Utf8SnippetFormatter formatter = new Utf8SnippetFormatter(new StringSourceExtracter("aaaaaaaaaa b"), "<em>", "</em>");
+        assertThat(new String(formatter.formatBytes(new Snippet(0, 12, Arrays.asList(new Hit(11, 12, 1, 0)))), UTF_8),
+                equalTo("aaaaaaaaaa <em>b</em>"));
+        assertThat(new String(formatter.formatBytes(new Snippet(11, 12, Arrays.asList(new Hit(11, 12, 1, 0)))), UTF_8),
+                equalTo("<em>b</em>"));
+    }
+
+    private void assertFormatsLikeDefault(String source, Snippet snippet) {
+        StringSourceExtracter extracter = new StringSourceExtracter(source);
+        String expected = new SnippetFormatter.Default(extracter, "<em>", "</em>").format(snippet);
+        Utf8SnippetFormatter formatter = new Utf8SnippetFormatter(extracter, "<em>", "</em>");
+        assertThat(formatter.format(snippet), equalTo(expected));
+        assertThat(new String(formatter.formatBytes(snippet), UTF_8), equalTo(expected));
+    }
+}
@@ -0,0 +1,38 @@
+package org.wikimedia.search.highlighter.cirrus.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.wikimedia.search.highlighter.cirrus.source.StringSourceExtracter.safeSubstring;
+
+import org.junit.Test;
+import org.wikimedia.search.highlighter.cirrus.SourceExtracter;
+
+public class CharSequenceSourceExtracterTest {
+    @Test
+    public void normal() {
+        SourceExtracter<CharSequence> source = new CharSequenceSourceExtracter("0123456789");
+        assertEquals("0123", source.extract(0, 4).toString());
+        assertEquals("01", source.extract(-1, 2).toString());
+        assertEquals("", source.extract(3, 2).toString());
+        assertEquals("0123456789", source.extract(0, 11).toString());
+    }
+
+    @Test
+    public void sameAsSafeSubstring() {
+        String sourceText = "\uD834\uDD1EThis\uD834\uDD00is\uD834\uDD00a" +
+                "\uD834\uDD00lovely\uD834\uDD00music\uD834\uDD02";
+        SourceExtracter<CharSequence> source = new CharSequenceSourceExtracter(sourceText);
+        for (int start = -1; start <= sourceText.length() + 1; start++) {
+            for (int end = start - 1; end <= sourceText.length() + 1; end++) {
+                assertEquals(start + "-" + end, safeSubstring(start, end, sourceText), source.extract(start, end).toString());
+            }
+        }
+    }
+
+    @Test
+    public void viewsCanBeExtractedFrom() {
+        CharSequence extract = new CharSequenceSourceExtracter("foo bar baz").extract(4, 11);
+        assertEquals('b', extract.charAt(0));
+        assertEquals(7, extract.length());
+        assertEquals("ar", extract.subSequence(1, 3).toString());
+    }
+}
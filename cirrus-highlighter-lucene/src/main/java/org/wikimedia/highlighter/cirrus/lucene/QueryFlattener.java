@@ -9,6 +9,7 @@ import java.util.Set;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.CommonTermsQuery;
+import org.apache.lucene.queries.intervals.IntervalQuery;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
@@ -22,6 +23,7 @@ import org.apache.lucene.search.MultiTermQuery.TopTermsScoringBooleanQueryRewrit
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.RegexpQuery;
 import org.apache.lucene.search.SynonymQuery;
 import org.apache.lucene.search.TermQuery;
@@ -92,6 +94,18 @@ public class QueryFlattener {
          */
         void flattened(Automaton automaton, float boost, int source);
 
+        /**
+         * Called right after {@link #flattened(Automaton, float, int)} when
+         * the automaton matches exactly the terms starting with a prefix, so
+         * callers that can look prefixes up some cheaper way know which one
+         * it is.
+         *
+         * @param prefix the prefix
+         * @param source the source sent with the automaton
+         */
+        default void flattenedPrefix(BytesRef prefix, int source) {
+        }
+
         /**
          * Called to mark the start of a phrase.
          */
@@ -154,6 +168,8 @@ public class QueryFlattener {
             flattenQuery((CommonTermsQuery) query, pathBoost, sourceOverride, reader, callback);
         } else if (query instanceof SynonymQuery) {
             flattenQuery((SynonymQuery) query, pathBoost, sourceOverride, reader, callback);
+        } else if (query instanceof IntervalQuery) {
+            flattenQuery((IntervalQuery) query, pathBoost, sourceOverride, reader, callback);
         } else if (!flattenUnknown(query, pathBoost, sourceOverride, reader, callback)) {
             Query newRewritten = rewriteQuery(query, pathBoost, sourceOverride, reader);
             if (newRewritten != query) {
@@ -350,6 +366,27 @@ public class QueryFlattener {
         }
     }
 
+    /**
+     * Flattens the terms of an interval query. Intervals that match terms by
+     * pattern only expose a run automaton so they aren't flattened.
+     */
+    protected void flattenQuery(IntervalQuery query, float pathBoost, Object sourceOverride,
+            IndexReader reader, Callback callback) {
+        query.visit(new QueryVisitor() {
+            @Override
+            public QueryVisitor getSubVisitor(Occur occur, Query parent) {
+                return occur == Occur.MUST_NOT ? QueryVisitor.EMPTY_VISITOR : this;
+            }
+
+            @Override
+            public void consumeTerms(Query termQuery, Term... terms) {
+                for (Term t : terms) {
+                    callback.flattened(t.bytes(), pathBoost, sourceOverride);
+                }
+            }
+        });
+    }
+
     protected void flattenQuery(PrefixQuery query, float pathBoost, Object sourceOverride,
             IndexReader reader, Callback callback) {
         flattenPrefixQuery(query.getPrefix().bytes(), pathBoost, sourceOverride,
@@ -366,6 +403,7 @@ public class QueryFlattener {
         Automaton automaton = Automata.makeString(bytes.utf8ToString());
         automaton = Operations.concatenate(automaton, Automata.makeAnyString());
         callback.flattened(automaton, boost, source.hashCode());
+        callback.flattenedPrefix(bytes, source.hashCode());
     }
 
     protected void flattenQuery(FuzzyQuery query, float pathBoost, Object sourceOverride,
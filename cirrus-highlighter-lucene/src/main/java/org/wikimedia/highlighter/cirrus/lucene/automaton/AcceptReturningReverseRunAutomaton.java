@@ -27,14 +27,14 @@ public class AcceptReturningReverseRunAutomaton extends RunAutomaton {
      *            a new bitset will be returned.
      * @return BitSet representing the position in s of every match.
      */
-    public BitSet run(String s, BitSet set) {
+    public BitSet run(CharSequence s, BitSet set) {
         set = attemptReuse(set, s.length());
-        if (s.isEmpty()) {
+        if (s.length() == 0) {
             return set;
         }
         int p = 0;
         for (int cp, i = s.length(); i > 0;) {
-            cp = s.codePointBefore(i);
+            cp = Character.codePointBefore(s, i);
             i -= Character.charCount(cp);
             p = step(p, cp);
             if (p == -1) {
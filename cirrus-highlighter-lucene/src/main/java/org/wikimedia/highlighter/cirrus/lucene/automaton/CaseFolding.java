@@ -0,0 +1,94 @@
+package org.wikimedia.highlighter.cirrus.lucene.automaton;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lowercases single code points using a locale's rules. Unlike
+ * {@link String#toLowerCase(Locale)} it never changes the length of the text
+ * so offsets into lowercased text are offsets into the original. Code points
+ * that would lowercase into more than one code point, or into a different
+ * number of chars, are left alone.
+ */
+public final class CaseFolding {
+    /**
+     * Languages that lowercase differently from the root locale. These are
+     * the only ones {@link String#toLowerCase(Locale)} has special rules for.
+     */
+    private static final Set<String> SPECIAL_LANGUAGES = new HashSet<>(Arrays.asList("az", "lt", "tr"));
+    /**
+     * Keyed on the language with the empty string for everything else so it
+     * never holds more than one table per special language and the root one.
+     */
+    private static final Map<String, CaseFolding> LOWER_CASE = new ConcurrentHashMap<>();
+
+    /**
+     * Lowercasing for a locale. Built on first use and then shared with every
+     * locale of the same language. Locales without special lowercasing rules
+     * share the root locale's.
+     */
+    public static CaseFolding lowerCase(Locale locale) {
+        String language = SPECIAL_LANGUAGES.contains(locale.getLanguage()) ? locale.getLanguage() : "";
+        return LOWER_CASE.computeIfAbsent(language,
+                l -> new CaseFolding(l.isEmpty() ? Locale.ROOT : new Locale(l)));
+    }
+
+    private final char[] ascii = new char[128];
+    /**
+     * Code points above ascii that change when lowercased in sorted order.
+     */
+    private final int[] from;
+    private final int[] to;
+
+    private CaseFolding(Locale locale) {
+        int[] from = new int[2048];
+        int[] to = new int[2048];
+        int size = 0;
+        for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp++) {
+            // The locale can only change code points that Character would
+            // change so this skips almost all of them cheaply.
+            if (Character.toLowerCase(cp) == cp) {
+                if (cp < ascii.length) {
+                    ascii[cp] = (char) cp;
+                }
+                continue;
+            }
+            String lower = new String(Character.toChars(cp)).toLowerCase(locale);
+            int folded = lower.codePointAt(0);
+            if (lower.length() != Character.charCount(cp) || Character.charCount(folded) != lower.length()) {
+                folded = cp;
+            }
+            if (cp < ascii.length) {
+                ascii[cp] = (char) folded;
+                continue;
+            }
+            if (folded == cp) {
+                continue;
+            }
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+            }
+            from[size] = cp;
+            to[size] = folded;
+            size++;
+        }
+        this.from = Arrays.copyOf(from, size);
+        this.to = Arrays.copyOf(to, size);
+    }
+
+    /**
+     * Lowercase a code point.
+     */
+    public int fold(int cp) {
+        if (cp < ascii.length) {
+            return ascii[cp];
+        }
+        int index = Arrays.binarySearch(from, cp);
+        return index < 0 ? cp : to[index];
+    }
+}
@@ -20,14 +20,14 @@ public class OffsetReturningRunAutomaton extends RunAutomaton {
      * @param end end offset to end checking
      * @return the end offset of the matching string or -1 if no match
      */
-    public int run(String s, int offset, int end) {
+    public int run(CharSequence s, int offset, int end) {
         int p = 0;
         int i;
         int cp;
         int cpCharCount = 0;
         int lastMatch = -1;
         for (i = offset; i < end; i += cpCharCount) {
-            cp = s.codePointAt(i);
+            cp = Character.codePointAt(s, i);
             cpCharCount = Character.charCount(cp);
             p = step(p, cp);
             if (p == -1) {
@@ -48,4 +48,21 @@ public class OffsetReturningRunAutomaton extends RunAutomaton {
         // otherwise no match.
         return isAccept(p) ? i + cpCharCount - 1 : lastMatch;
     }
+
+    /**
+     * The state the automaton is in after stepping through s from offset to
+     * end.
+     *
+     * @return the state or -1 if s falls off the automaton
+     */
+    public int state(CharSequence s, int offset, int end) {
+        int p = 0;
+        int cp;
+        end = Math.min(end, s.length());
+        for (int i = offset; i < end && p != -1; i += Character.charCount(cp)) {
+            cp = Character.codePointAt(s, i);
+            p = step(p, cp);
+        }
+        return p;
+    }
 }
@@ -0,0 +1,362 @@
+package org.wikimedia.highlighter.cirrus.lucene.automaton;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.MinimizationOperations;
+import org.apache.lucene.util.automaton.Transition;
+
+/**
+ * A literal that every string an automaton accepts contains. Searching for it
+ * with {@link String#indexOf(String, int)} is much faster than stepping the
+ * automaton at every offset so scanners use it to skip the offsets where no
+ * match could start.
+ *
+ * The literal is found around a state that every accepting path goes
+ * through: the code points that every path into the state must end with
+ * followed by the code points that every path out of it must start with.
+ * So it finds the "foo" in "a.*foo[0-9]+" but nothing in "foo|bar".
+ */
+public final class RequiredLiteral {
+    /**
+     * Marks transitions on more than one code point.
+     */
+    private static final int RANGE = -1;
+
+    private final String literal;
+    private final int maxCharsBefore;
+
+    /**
+     * Find the longest literal that every string the automaton accepts
+     * contains.
+     *
+     * @return the literal or null if there isn't one
+     */
+    public static RequiredLiteral find(Automaton automaton, int maxDeterminizedStates) {
+        // Minimizing merges the states that would otherwise split up paths
+        // through the same literal
+        Automaton a = MinimizationOperations.minimize(automaton, maxDeterminizedStates);
+        if (a.getNumStates() == 0) {
+            return null;
+        }
+        return new Finder(a).find();
+    }
+
+    private RequiredLiteral(String literal, int maxCharsBefore) {
+        this.literal = literal;
+        this.maxCharsBefore = maxCharsBefore;
+    }
+
+    /**
+     * The literal.
+     */
+    public String literal() {
+        return literal;
+    }
+
+    /**
+     * Find the first copy of the literal in s starting at from.
+     *
+     * @return the offset of the copy or -1 if there isn't one
+     */
+    public int indexIn(CharSequence s, int from) {
+        if (s instanceof String) {
+            return ((String) s).indexOf(literal, from);
+        }
+        return indexIn(s, from, s.length());
+    }
+
+    /**
+     * Find the first copy of the literal in s that starts at or after from
+     * and before end.
+     *
+     * @return the offset of the copy or -1 if there isn't one
+     */
+    public int indexIn(CharSequence s, int from, int end) {
+        char first = literal.charAt(0);
+        int last = Math.min(end - 1, s.length() - literal.length());
+        for (int i = Math.max(from, 0); i <= last; i++) {
+            if (s.charAt(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < literal.length() && s.charAt(i + j) == literal.charAt(j)) {
+                j++;
+            }
+            if (j == literal.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The most chars that a match can have before its first copy of the
+     * literal or -1 if there isn't a limit.
+     */
+    public int maxCharsBefore() {
+        return maxCharsBefore;
+    }
+
+    @Override
+    public String toString() {
+        return literal + (maxCharsBefore < 0 ? "" : "@" + maxCharsBefore);
+    }
+
+    /**
+     * The automaton's transitions as arrays so they are cheap to walk in
+     * either direction.
+     */
+    private static final class Finder {
+        private final Automaton a;
+        private final int numStates;
+        private final int[][] dests;
+        /**
+         * The code point of each transition or {@link #RANGE}.
+         */
+        private final int[][] labels;
+        /**
+         * The most chars that the code points on each transition take.
+         */
+        private final int[][] chars;
+        private final int[][] sources;
+        private final int[][] sourceLabels;
+
+        Finder(Automaton a) {
+            this.a = a;
+            numStates = a.getNumStates();
+            dests = new int[numStates][];
+            labels = new int[numStates][];
+            chars = new int[numStates][];
+            int[] inCounts = new int[numStates];
+            Transition t = new Transition();
+            for (int state = 0; state < numStates; state++) {
+                int count = a.initTransition(state, t);
+                dests[state] = new int[count];
+                labels[state] = new int[count];
+                chars[state] = new int[count];
+                for (int i = 0; i < count; i++) {
+                    a.getNextTransition(t);
+                    dests[state][i] = t.dest;
+                    labels[state][i] = t.min == t.max ? t.min : RANGE;
+                    chars[state][i] = Character.charCount(t.max);
+                    inCounts[t.dest]++;
+                }
+            }
+            sources = new int[numStates][];
+            sourceLabels = new int[numStates][];
+            for (int state = 0; state < numStates; state++) {
+                sources[state] = new int[inCounts[state]];
+                sourceLabels[state] = new int[inCounts[state]];
+            }
+            Arrays.fill(inCounts, 0);
+            for (int state = 0; state < numStates; state++) {
+                for (int i = 0; i < dests[state].length; i++) {
+                    int dest = dests[state][i];
+                    sources[dest][inCounts[dest]] = state;
+                    sourceLabels[dest][inCounts[dest]] = labels[state][i];
+                    inCounts[dest]++;
+                }
+            }
+        }
+
+        RequiredLiteral find() {
+            String best = null;
+            int bestState = -1;
+            int bestBeforeLength = 0;
+            for (int state = 0; state < numStates; state++) {
+                String before = endingInto(state);
+                String literal = before + startingFrom(state);
+                if (literal.isEmpty() || (best != null && literal.length() <= best.length())) {
+                    continue;
+                }
+                if (onEveryAcceptingPath(state)) {
+                    best = literal;
+                    bestState = state;
+                    bestBeforeLength = before.length();
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            int maxCharsToState = maxCharsTo(bestState);
+            return new RequiredLiteral(best, maxCharsToState < 0 ? -1 : maxCharsToState - bestBeforeLength);
+        }
+
+        /**
+         * The code points that every path from the start to state ends with.
+         */
+        private String endingInto(int state) {
+            int[] codePoints = new int[numStates];
+            int length = 0;
+            int[] current = new int[] {state};
+            int currentSize = 1;
+            int[] seenAt = new int[numStates];
+            Arrays.fill(seenAt, -1);
+            while (length < numStates) {
+                int label = RANGE;
+                int[] next = new int[numStates];
+                int nextSize = 0;
+                for (int i = 0; i < currentSize; i++) {
+                    int s = current[i];
+                    if (s == 0) {
+                        // A path can start right here so nothing more is required
+                        return reversed(codePoints, length);
+                    }
+                    for (int j = 0; j < sources[s].length; j++) {
+                        int sourceLabel = sourceLabels[s][j];
+                        if (sourceLabel == RANGE || (label != RANGE && label != sourceLabel)) {
+                            return reversed(codePoints, length);
+                        }
+                        label = sourceLabel;
+                        int source = sources[s][j];
+                        if (seenAt[source] != length) {
+                            seenAt[source] = length;
+                            next[nextSize++] = source;
+                        }
+                    }
+                }
+                if (label == RANGE) {
+                    break;
+                }
+                codePoints[length++] = label;
+                current = next;
+                currentSize = nextSize;
+            }
+            return reversed(codePoints, length);
+        }
+
+        private static String reversed(int[] codePoints, int length) {
+            StringBuilder b = new StringBuilder();
+            for (int i = length - 1; i >= 0; i--) {
+                b.appendCodePoint(codePoints[i]);
+            }
+            return b.toString();
+        }
+
+        /**
+         * The code points that every path from state to an accept state
+         * starts with.
+         */
+        private String startingFrom(int state) {
+            StringBuilder b = new StringBuilder();
+            int steps = 0;
+            while (!a.isAccept(state) && dests[state].length == 1 && labels[state][0] != RANGE && steps < numStates) {
+                b.appendCodePoint(labels[state][0]);
+                state = dests[state][0];
+                steps++;
+            }
+            return b.toString();
+        }
+
+        /**
+         * Is it impossible to reach an accept state without going through
+         * state?
+         */
+        private boolean onEveryAcceptingPath(int state) {
+            if (state == 0) {
+                return true;
+            }
+            boolean[] seen = new boolean[numStates];
+            Deque<Integer> queue = new ArrayDeque<>();
+            seen[0] = true;
+            seen[state] = true;
+            queue.add(0);
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                if (a.isAccept(current)) {
+                    return false;
+                }
+                for (int dest : dests[current]) {
+                    if (!seen[dest]) {
+                        seen[dest] = true;
+                        queue.add(dest);
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The most chars on any path from the start to state that doesn't go
+         * through state along the way or -1 if those paths can loop.
+         */
+        private int maxCharsTo(int state) {
+            // States on the way from the start to state
+            boolean[] fromStart = new boolean[numStates];
+            Deque<Integer> queue = new ArrayDeque<>();
+            fromStart[0] = true;
+            queue.add(0);
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                if (current == state) {
+                    continue;
+                }
+                for (int dest : dests[current]) {
+                    if (!fromStart[dest]) {
+                        fromStart[dest] = true;
+                        queue.add(dest);
+                    }
+                }
+            }
+            boolean[] onTheWay = new boolean[numStates];
+            onTheWay[state] = true;
+            queue.add(state);
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                for (int source : sources[current]) {
+                    if (!onTheWay[source] && fromStart[source] && source != state) {
+                        onTheWay[source] = true;
+                        queue.add(source);
+                    }
+                }
+            }
+
+            // Longest path by walking the states in topological order. If they
+            // can't all be walked then there is a loop.
+            int[] inDegree = new int[numStates];
+            int size = 0;
+            for (int current = 0; current < numStates; current++) {
+                if (!onTheWay[current]) {
+                    continue;
+                }
+                size++;
+                if (current == state) {
+                    continue;
+                }
+                for (int dest : dests[current]) {
+                    if (onTheWay[dest]) {
+                        inDegree[dest]++;
+                    }
+                }
+            }
+            for (int current = 0; current < numStates; current++) {
+                if (onTheWay[current] && inDegree[current] == 0) {
+                    queue.add(current);
+                }
+            }
+            int[] longest = new int[numStates];
+            int walked = 0;
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                walked++;
+                if (current == state) {
+                    continue;
+                }
+                for (int i = 0; i < dests[current].length; i++) {
+                    int dest = dests[current][i];
+                    if (!onTheWay[dest]) {
+                        continue;
+                    }
+                    longest[dest] = Math.max(longest[dest], longest[current] + chars[current][i]);
+                    if (--inDegree[dest] == 0) {
+                        queue.add(dest);
+                    }
+                }
+            }
+            return walked == size ? longest[state] : -1;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.wikimedia.highlighter.cirrus.lucene.automaton;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
+import org.apache.lucene.util.automaton.Transition;
+
+/**
+ * Deterministic union of some automata whose accept states remember which of
+ * the automata accepted. Each state is a tuple of the states that each
+ * automaton would be in so running it is like running them all side by side.
+ */
+public final class TaggedUnionAutomaton {
+    private final Automaton automaton;
+    private final int[] tags;
+
+    /**
+     * Build the union.
+     *
+     * @throws TooComplexToDeterminizeException if the union would have more
+     *             than maxDeterminizedStates states
+     */
+    public static TaggedUnionAutomaton build(List<Automaton> automata, int maxDeterminizedStates) {
+        int count = automata.size();
+        Automaton[] dfas = new Automaton[count];
+        int[] start = new int[count];
+        for (int i = 0; i < count; i++) {
+            dfas[i] = Operations.removeDeadStates(Operations.determinize(automata.get(i), maxDeterminizedStates));
+            start[i] = dfas[i].getNumStates() == 0 ? -1 : 0;
+        }
+
+        Automaton union = new Automaton();
+        List<Integer> tags = new ArrayList<>();
+        Map<IntsRef, Integer> ids = new HashMap<>();
+        Deque<int[]> pending = new ArrayDeque<>();
+        ids.put(new IntsRef(start, 0, count), union.createState());
+        pending.add(start);
+
+        Transition t = new Transition();
+        int[] points = new int[4];
+        while (!pending.isEmpty()) {
+            int[] states = pending.poll();
+            // States are created in the order they are queued so this is
+            // the state that is being finished.
+            int state = tags.size();
+            int tag = -1;
+            int pointCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (states[i] < 0) {
+                    continue;
+                }
+                if (tag < 0 && dfas[i].isAccept(states[i])) {
+                    tag = i;
+                }
+                int transitions = dfas[i].initTransition(states[i], t);
+                for (int j = 0; j < transitions; j++) {
+                    dfas[i].getNextTransition(t);
+                    if (pointCount + 2 > points.length) {
+                        points = Arrays.copyOf(points, points.length * 2);
+                    }
+                    points[pointCount++] = t.min;
+                    points[pointCount++] = t.max + 1;
+                }
+            }
+            tags.add(tag);
+            union.setAccept(state, tag >= 0);
+
+            // Every code point between two of the points goes to the same
+            // states so only the first of them needs stepping.
+            Arrays.sort(points, 0, pointCount);
+            for (int p = 0; p < pointCount; p++) {
+                int min = points[p];
+                if (min > Character.MAX_CODE_POINT || (p > 0 && min == points[p - 1])) {
+                    continue;
+                }
+                int[] dests = new int[count];
+                boolean live = false;
+                for (int i = 0; i < count; i++) {
+                    dests[i] = states[i] < 0 ? -1 : dfas[i].step(states[i], min);
+                    live |= dests[i] >= 0;
+                }
+                if (!live) {
+                    continue;
+                }
+                IntsRef key = new IntsRef(dests, 0, count);
+                Integer dest = ids.get(key);
+                if (dest == null) {
+                    if (ids.size() >= maxDeterminizedStates) {
+                        throw new TooComplexToDeterminizeException(automata.get(0), maxDeterminizedStates);
+                    }
+                    dest = union.createState();
+                    ids.put(key, dest);
+                    pending.add(dests);
+                }
+                int next = p + 1;
+                while (next < pointCount && points[next] == min) {
+                    next++;
+                }
+                int max = next < pointCount ? points[next] - 1 : Character.MAX_CODE_POINT;
+                union.addTransition(state, dest, min, max);
+            }
+        }
+        union.finishState();
+
+        int[] tagArray = new int[tags.size()];
+        for (int i = 0; i < tagArray.length; i++) {
+            tagArray[i] = tags.get(i);
+        }
+        return new TaggedUnionAutomaton(union, tagArray);
+    }
+
+    private TaggedUnionAutomaton(Automaton automaton, int[] tags) {
+        this.automaton = automaton;
+        this.tags = tags;
+    }
+
+    /**
+     * The deterministic union.
+     */
+    public Automaton automaton() {
+        return automaton;
+    }
+
+    /**
+     * The index of the first automaton that accepts in a state of the union
+     * or -1 if none of them do.
+     */
+    public int tag(int state) {
+        return tags[state];
+    }
+}
@@ -0,0 +1,92 @@
+package org.wikimedia.highlighter.cirrus.lucene.automaton;
+
+/**
+ * View of a source as a regex should see it without copying it: optionally
+ * lowercased and optionally wrapped in a char marking its start and one
+ * marking its end so regexes can be anchored to them. Offsets into the view
+ * are offsets into the source plus one if it is anchored.
+ */
+public final class VirtualSource implements CharSequence {
+    private final String source;
+    private final CaseFolding folding;
+    private final boolean anchored;
+    private final char startAnchor;
+    private final char endAnchor;
+    private final int length;
+
+    /**
+     * View of a source lowercased with folding.
+     */
+    public VirtualSource(String source, CaseFolding folding) {
+        this(source, folding, false, '\0', '\0');
+    }
+
+    /**
+     * View of a source wrapped in anchors and lowercased with folding if it
+     * isn't null.
+     */
+    public VirtualSource(String source, CaseFolding folding, char startAnchor, char endAnchor) {
+        this(source, folding, true, startAnchor, endAnchor);
+    }
+
+    private VirtualSource(String source, CaseFolding folding, boolean anchored, char startAnchor, char endAnchor) {
+        this.source = source;
+        this.folding = folding;
+        this.anchored = anchored;
+        this.startAnchor = startAnchor;
+        this.endAnchor = endAnchor;
+        length = source.length() + (anchored ? 2 : 0);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (anchored) {
+            if (index == 0) {
+                return startAnchor;
+            }
+            if (index == length - 1) {
+                return endAnchor;
+            }
+            index--;
+        }
+        char c = source.charAt(index);
+        if (folding == null) {
+            return c;
+        }
+        if (!Character.isSurrogate(c)) {
+            return (char) folding.fold(c);
+        }
+        // Fold the whole code point and return our half of it. Folding never
+        // moves code points in or out of the basic plane.
+        if (Character.isHighSurrogate(c)) {
+            if (index + 1 < source.length() && Character.isLowSurrogate(source.charAt(index + 1))) {
+                return Character.highSurrogate(folding.fold(Character.toCodePoint(c, source.charAt(index + 1))));
+            }
+        } else if (index > 0 && Character.isHighSurrogate(source.charAt(index - 1))) {
+            return Character.lowSurrogate(folding.fold(Character.toCodePoint(source.charAt(index - 1), c)));
+        }
+        return c;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * Copies the whole view so only use it for debugging.
+     */
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            b.append(charAt(i));
+        }
+        return b.toString();
+    }
+}
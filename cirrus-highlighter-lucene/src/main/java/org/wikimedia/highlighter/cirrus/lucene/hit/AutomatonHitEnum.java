@@ -1,14 +1,29 @@
 package org.wikimedia.highlighter.cirrus.lucene.hit;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.automaton.Automata;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.Operations;
 import org.apache.lucene.util.automaton.RegExp;
 import org.apache.lucene.util.automaton.Transition;
 import org.wikimedia.highlighter.cirrus.lucene.automaton.AcceptReturningReverseRunAutomaton;
 import org.wikimedia.highlighter.cirrus.lucene.automaton.OffsetReturningRunAutomaton;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.RequiredLiteral;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.TaggedUnionAutomaton;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.VirtualSource;
 import org.wikimedia.search.highlighter.cirrus.hit.AbstractHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.Deadline;
 import org.wikimedia.search.highlighter.cirrus.hit.HitWeigher;
 import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantHitWeigher;
 
@@ -18,61 +33,332 @@ import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantHitWeigher;
  */
 public abstract class AutomatonHitEnum extends AbstractHitEnum {
     public static Factory factory(String regex, int maxDeterminizedStates) {
-        return new Factory(regex, maxDeterminizedStates);
+        return new Factory(new RegExp(regex).toAutomaton(maxDeterminizedStates), null, maxDeterminizedStates);
     }
 
+    /**
+     * Build a factory that finds the matches of all the regexes in a single
+     * scan of the source. The regexes are compiled into one automaton so
+     * matches don't overlap: at each offset the longest match of any of them
+     * wins. Each hit's source is the hash code of the first regex that
+     * matches it exactly.
+     */
+    public static Factory factory(List<String> regexes, int maxDeterminizedStates) {
+        if (regexes.size() == 1) {
+            return factory(regexes.get(0), maxDeterminizedStates);
+        }
+        List<Automaton> automata = new ArrayList<>(regexes.size());
+        for (String regex : regexes) {
+            automata.add(new RegExp(regex).toAutomaton(maxDeterminizedStates));
+        }
+        TaggedUnionAutomaton union = TaggedUnionAutomaton.build(automata, maxDeterminizedStates);
+        int[] stateSources = new int[union.automaton().getNumStates()];
+        for (int state = 0; state < stateSources.length; state++) {
+            int tag = union.tag(state);
+            stateSources[state] = tag < 0 ? 0 : regexes.get(tag).hashCode();
+        }
+        return new Factory(union.automaton(), stateSources, maxDeterminizedStates);
+    }
+
+    /**
+     * Builds AutomatonHitEnums for a regex. Not thread safe because it reuses
+     * memory between builds. Use {@link #copy()} to share the compiled
+     * automata between threads.
+     */
     public static final class Factory {
         private final OffsetReturningRunAutomaton forward;
         private final AcceptReturningReverseRunAutomaton reverse;
+        private final RequiredLiteral literal;
+        /**
+         * The source of hits that end in each state of forward or null if
+         * they all have the same source.
+         */
+        private final int[] stateSources;
+        /**
+         * The most chars a match can have or -1 if there isn't a limit.
+         */
+        private final int maxMatchLength;
         private BitSet startPositions;
 
-        private Factory(String regexString, int maxDeterminizedStates) {
-            Automaton automaton = new RegExp(regexString).toAutomaton(maxDeterminizedStates);
+        private Factory(Automaton automaton, int[] stateSources, int maxDeterminizedStates) {
             forward = new OffsetReturningRunAutomaton(automaton, false);
+            literal = RequiredLiteral.find(automaton, maxDeterminizedStates);
+            this.stateSources = stateSources;
+            maxMatchLength = maxMatchLength(automaton);
             if (hasLeadingWildcard(automaton)) {
                 Automaton reversed = Operations.determinize(Operations.reverse(
-                        new RegExp("(" + regexString + ").*").toAutomaton(maxDeterminizedStates)), maxDeterminizedStates);
+                        Operations.concatenate(automaton, Automata.makeAnyString())), maxDeterminizedStates);
                 reverse = new AcceptReturningReverseRunAutomaton(reversed);
             } else {
                 reverse = null;
             }
         }
 
+        private Factory(OffsetReturningRunAutomaton forward, AcceptReturningReverseRunAutomaton reverse,
+                RequiredLiteral literal, int[] stateSources, int maxMatchLength) {
+            this.forward = forward;
+            this.reverse = reverse;
+            this.literal = literal;
+            this.stateSources = stateSources;
+            this.maxMatchLength = maxMatchLength;
+        }
+
+        /**
+         * Copy this factory, sharing the compiled automata but not the memory
+         * reused between builds.
+         */
+        public Factory copy() {
+            return new Factory(forward, reverse, literal, stateSources, maxMatchLength);
+        }
+
+        /**
+         * Number of states in the automata used to find hits, including the
+         * reversed one used to find start positions if there is one.
+         */
+        public int size() {
+            return forward.getSize() + (reverse == null ? 0 : reverse.getSize());
+        }
+
         /**
          * Build the HitEnum so all hits have equal weight.
          */
-        public AutomatonHitEnum build(String source) {
+        public AutomatonHitEnum build(CharSequence source) {
             return build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE);
         }
 
-        public AutomatonHitEnum build(String source, HitWeigher queryWeigher,
+        public AutomatonHitEnum build(CharSequence source, HitWeigher queryWeigher,
                 HitWeigher corpusWeigher) {
-            if (reverse == null) {
-                return new AutomatonHitEnum.Forward(forward, source, queryWeigher, corpusWeigher);
+            return build(source, queryWeigher, corpusWeigher, Deadline.none());
+        }
+
+        /**
+         * Build the HitEnum so it stops scanning the source once the deadline
+         * has expired. The source can be a {@link VirtualSource} to lowercase
+         * or anchor it without copying it.
+         */
+        public AutomatonHitEnum build(CharSequence source, HitWeigher queryWeigher,
+                HitWeigher corpusWeigher, Deadline deadline) {
+            // If the literal isn't in the source there can't be any matches so
+            // skip the reverse pass. The forward pass will give up right away.
+            AutomatonHitEnum e;
+            if (reverse == null || (literal != null && literal.indexIn(source, 0) < 0)) {
+                e = new AutomatonHitEnum.Forward(forward, source, queryWeigher, corpusWeigher, deadline, literal);
             } else {
                 startPositions = reverse.run(source, startPositions);
-                return new AutomatonHitEnum.TwoPass(forward, startPositions, source, queryWeigher, corpusWeigher);
+                e = new AutomatonHitEnum.TwoPass(forward, startPositions, source, queryWeigher, corpusWeigher, deadline);
+            }
+            e.stateSources = stateSources;
+            return e;
+        }
+
+        /**
+         * Build the HitEnum, scanning sources longer than chunkSize in chunks
+         * of chunkSize chars on executor. Only regexes whose matches can't be
+         * longer than some limit are scanned in chunks because chunks have to
+         * read that far past their end. Everything else is scanned on this
+         * thread. This thread also scans any chunk that executor rejects or
+         * hasn't started by the time this thread gets to it so a busy
+         * executor only makes the scan slower.
+         */
+        public AutomatonHitEnum build(CharSequence source, HitWeigher queryWeigher,
+                HitWeigher corpusWeigher, Deadline deadline, Executor executor, int chunkSize) {
+            if (maxMatchLength < 0 || source.length() <= chunkSize) {
+                return build(source, queryWeigher, corpusWeigher, deadline);
+            }
+            int chunks = (source.length() + chunkSize - 1) / chunkSize;
+            List<FutureTask<ChunkScan>> scans = new ArrayList<>(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                ChunkScan scan = new ChunkScan(this, source, deadline, chunkSize, chunk);
+                scans.add(new FutureTask<>(scan, scan));
+            }
+            // The first chunk is scanned right here so don't hand it off
+            for (int chunk = 1; chunk < chunks; chunk++) {
+                try {
+                    executor.execute(scans.get(chunk));
+                } catch (RejectedExecutionException e) {
+                    // Scanned on this thread below
+                    break;
+                }
             }
+            ChunkScan[] scanned = new ChunkScan[chunks];
+            int hitCount = 0;
+            boolean expired = false;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                FutureTask<ChunkScan> task = scans.get(chunk);
+                // Does nothing if the task already started on another thread
+                task.run();
+                scanned[chunk] = waitFor(task, scans);
+                hitCount += scanned[chunk].hits.length;
+                expired |= scanned[chunk].expired;
+            }
+            int[] hits = new int[hitCount];
+            hitCount = 0;
+            for (ChunkScan scan : scanned) {
+                System.arraycopy(scan.hits, 0, hits, hitCount, scan.hits.length);
+                hitCount += scan.hits.length;
+            }
+            if (expired) {
+                deadline.expire();
+            }
+            AutomatonHitEnum e = new Chunked(forward, hits, source, queryWeigher, corpusWeigher, deadline);
+            e.stateSources = stateSources;
+            return e;
+        }
+
+        private static ChunkScan waitFor(FutureTask<ChunkScan> task, List<FutureTask<ChunkScan>> scans) {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                for (FutureTask<ChunkScan> scan : scans) {
+                    scan.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scanning for regex hits", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new IllegalStateException("Failed scanning for regex hits", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Scans a chunk of the source for hits.
+     */
+    private static final class ChunkScan implements Runnable {
+        private final Factory factory;
+        private final CharSequence source;
+        private final Deadline deadline;
+        private final int chunkSize;
+        private final int chunk;
+        /**
+         * Starts and ends of the hits found, interleaved.
+         */
+        private int[] hits;
+        private boolean expired;
+
+        ChunkScan(Factory factory, CharSequence source, Deadline deadline, int chunkSize, int chunk) {
+            this.factory = factory;
+            this.source = source;
+            this.deadline = deadline;
+            this.chunkSize = chunkSize;
+            this.chunk = chunk;
+        }
+
+        /**
+         * Find the hits that start in our chunk just like {@link Forward}
+         * would if it started scanning at the start of the chunk.
+         */
+        @Override
+        public void run() {
+            int length = source.length();
+            int start = chunkStart(chunk);
+            int chunkEnd = chunkStart(chunk + 1);
+            // Matches starting in the chunk end before here
+            int readEnd = Math.min(length, chunkEnd + factory.maxMatchLength);
+            Deadline chunkDeadline = deadline.copy();
+            RequiredLiteral literal = factory.literal;
+            int literalStart = -1;
+            int[] found = new int[16];
+            int size = 0;
+            while (start < chunkEnd) {
+                if (chunkDeadline.expired()) {
+                    expired = true;
+                    break;
+                }
+                if (literal != null) {
+                    if (literalStart < start) {
+                        literalStart = literal.indexIn(source, start, readEnd);
+                        if (literalStart < 0) {
+                            break;
+                        }
+                    }
+                    int maxCharsBefore = literal.maxCharsBefore();
+                    if (maxCharsBefore >= 0 && literalStart - start > maxCharsBefore) {
+                        start = alignToCodePoint(literalStart - maxCharsBefore);
+                        if (start >= chunkEnd) {
+                            break;
+                        }
+                    }
+                }
+                int end = factory.forward.run(source, start, length);
+                if (end >= 0) {
+                    if (size + 2 > found.length) {
+                        found = Arrays.copyOf(found, found.length * 2);
+                    }
+                    found[size++] = start;
+                    found[size++] = end;
+                    start = end;
+                } else {
+                    start += Character.charCount(Character.codePointAt(source, start));
+                }
+            }
+            hits = Arrays.copyOf(found, size);
+        }
+
+        private int chunkStart(int chunk) {
+            return alignToCodePoint((int) Math.min(source.length(), (long) chunk * chunkSize));
+        }
+
+        /**
+         * Move offset off of the middle of a surrogate pair.
+         */
+        private int alignToCodePoint(int offset) {
+            if (offset > 0 && offset < source.length() && Character.isLowSurrogate(source.charAt(offset))
+                    && Character.isHighSurrogate(source.charAt(offset - 1))) {
+                return offset + 1;
+            }
+            return offset;
         }
     }
 
     protected final OffsetReturningRunAutomaton runAutomaton;
-    protected final String source;
+    protected final CharSequence source;
     protected final HitWeigher queryWeigher;
     protected final HitWeigher corpusWeigher;
+    protected final Deadline deadline;
     protected final int length;
     protected int start;
     protected int end;
     protected float queryWeight;
     protected float corpusWeight;
     protected int position = -1;
+    private int[] stateSources;
+    private int hitSourcePosition = -1;
+    private int hitSource;
+
+    public AutomatonHitEnum(OffsetReturningRunAutomaton runAutomaton, CharSequence source, HitWeigher queryWeigher, HitWeigher corpusWeigher) {
+        this(runAutomaton, source, queryWeigher, corpusWeigher, Deadline.none());
+    }
 
-    public AutomatonHitEnum(OffsetReturningRunAutomaton runAutomaton, String source, HitWeigher queryWeigher, HitWeigher corpusWeigher) {
+    public AutomatonHitEnum(OffsetReturningRunAutomaton runAutomaton, CharSequence source, HitWeigher queryWeigher,
+            HitWeigher corpusWeigher, Deadline deadline) {
         this.runAutomaton = runAutomaton;
         this.source = source;
         this.length = source.length();
         this.queryWeigher = queryWeigher;
         this.corpusWeigher = corpusWeigher;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Restarts the scan at target rather than looking for hits before it.
+     */
+    @Override
+    public boolean advanceToOffset(int target) {
+        if (target > end) {
+            end = Math.min(target, length);
+            // Don't start scanning in the middle of a surrogate pair
+            if (end < length && end > 0 && Character.isLowSurrogate(source.charAt(end))
+                    && Character.isHighSurrogate(source.charAt(end - 1))) {
+                end++;
+            }
+        }
+        return next();
     }
 
     @Override
@@ -102,9 +388,17 @@ public abstract class AutomatonHitEnum extends AbstractHitEnum {
 
     @Override
     public int source() {
-        // We punt here and hope someone will override this behavior
-        // because we really can't trace the hit to a useful source.
-        return 0;
+        if (stateSources == null) {
+            // We punt here and hope someone will override this behavior
+            // because we really can't trace the hit to a useful source.
+            return 0;
+        }
+        if (hitSourcePosition != position) {
+            // Replay the hit to find the accept state it ended in
+            hitSource = stateSources[runAutomaton.state(source, start, end)];
+            hitSourcePosition = position;
+        }
+        return hitSource;
     }
 
     @Override
@@ -113,9 +407,29 @@ public abstract class AutomatonHitEnum extends AbstractHitEnum {
     }
 
     public static class Forward extends AutomatonHitEnum {
-        public Forward(OffsetReturningRunAutomaton runAutomaton, String source,
+        private final RequiredLiteral literal;
+        private int literalStart = -1;
+
+        public Forward(OffsetReturningRunAutomaton runAutomaton, CharSequence source,
                        HitWeigher queryWeigher, HitWeigher corpusWeigher) {
-            super(runAutomaton, source, queryWeigher, corpusWeigher);
+            this(runAutomaton, source, queryWeigher, corpusWeigher, Deadline.none());
+        }
+
+        public Forward(OffsetReturningRunAutomaton runAutomaton, CharSequence source,
+                       HitWeigher queryWeigher, HitWeigher corpusWeigher, Deadline deadline) {
+            this(runAutomaton, source, queryWeigher, corpusWeigher, deadline, null);
+        }
+
+        /**
+         * @param literal if not null then a literal that every match
+         *            contains. Offsets too far before it are skipped without
+         *            running the automaton.
+         */
+        public Forward(OffsetReturningRunAutomaton runAutomaton, CharSequence source,
+                       HitWeigher queryWeigher, HitWeigher corpusWeigher, Deadline deadline,
+                       RequiredLiteral literal) {
+            super(runAutomaton, source, queryWeigher, corpusWeigher, deadline);
+            this.literal = literal;
         }
 
         @Override
@@ -123,8 +437,11 @@ public abstract class AutomatonHitEnum extends AbstractHitEnum {
             // Start looking where the last hit stopped
             start = end;
 
-            // Look until there aren't any more characters
-            while (start < length) {
+            // Look until there aren't any more characters or we run out of time
+            while (start < length && !deadline.expired()) {
+                if (literal != null && !skipToLiteral()) {
+                    break;
+                }
                 end = runAutomaton.run(source, start, length);
                 if (end >= 0) {
                     // Found a match!
@@ -134,7 +451,7 @@ public abstract class AutomatonHitEnum extends AbstractHitEnum {
                     return true;
                 }
                 // No match, push start and keep checking
-                start += Character.charCount(source.codePointAt(start));
+                start += Character.charCount(Character.codePointAt(source, start));
             }
 
             // No matches at all, set end to length so we never check again
@@ -142,9 +459,103 @@ public abstract class AutomatonHitEnum extends AbstractHitEnum {
             return false;
         }
 
+        /**
+         * Move start up to the first offset close enough to the next copy of
+         * the literal for a match to start there.
+         *
+         * @return false if the literal isn't in the rest of the source so
+         *         there can't be any more matches
+         */
+        private boolean skipToLiteral() {
+            if (literalStart < start) {
+                literalStart = literal.indexIn(source, start);
+                if (literalStart < 0) {
+                    return false;
+                }
+            }
+            int maxCharsBefore = literal.maxCharsBefore();
+            if (maxCharsBefore >= 0 && literalStart - start > maxCharsBefore) {
+                start = literalStart - maxCharsBefore;
+                // Don't start scanning in the middle of a surrogate pair
+                if (Character.isLowSurrogate(source.charAt(start))
+                        && Character.isHighSurrogate(source.charAt(start - 1))) {
+                    start--;
+                }
+            }
+            return true;
+        }
+
         @Override
         public String toString() {
-            return runAutomaton.toString();
+            return literal == null ? runAutomaton.toString() : runAutomaton + " prefiltered by " + literal;
+        }
+    }
+
+    /**
+     * Stitches together the hits found by scanning chunks of the source in
+     * parallel. Each chunk's hits are the ones {@link Forward} would find if
+     * it started scanning at the start of the chunk. That agrees with
+     * scanning the whole source except after a hit that runs past the end of
+     * its chunk into the next one. There the offsets inside the hit are
+     * rescanned until one isn't inside any hit and the chunk's hits can be
+     * trusted again.
+     */
+    static class Chunked extends AutomatonHitEnum {
+        /**
+         * Starts and ends of the hits found by the chunks, interleaved.
+         */
+        private final int[] hits;
+        private int nextHit;
+        /**
+         * The end of the longest hit from the chunks that starts before the
+         * current offset.
+         */
+        private int coveredUntil;
+
+        Chunked(OffsetReturningRunAutomaton forward, int[] hits, CharSequence source,
+                HitWeigher queryWeigher, HitWeigher corpusWeigher, Deadline deadline) {
+            super(forward, source, queryWeigher, corpusWeigher, deadline);
+            this.hits = hits;
+        }
+
+        @Override
+        public boolean next() {
+            start = end;
+            while (start < length && !deadline.expired()) {
+                while (nextHit < hits.length && hits[nextHit] < start) {
+                    coveredUntil = Math.max(coveredUntil, hits[nextHit + 1]);
+                    nextHit += 2;
+                }
+                if (coveredUntil > start) {
+                    // No chunk scanned from here so check it ourselves
+                    end = runAutomaton.run(source, start, length);
+                    if (end >= 0) {
+                        return found();
+                    }
+                    start += Character.charCount(Character.codePointAt(source, start));
+                    continue;
+                }
+                if (nextHit >= hits.length) {
+                    break;
+                }
+                start = hits[nextHit];
+                end = hits[nextHit + 1];
+                return found();
+            }
+            end = length;
+            return false;
+        }
+
+        private boolean found() {
+            position++;
+            queryWeight = queryWeigher.weight(position, start, end);
+            corpusWeight = corpusWeigher.weight(position, start, end);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return runAutomaton + " in chunks";
         }
     }
 
@@ -163,15 +574,15 @@ public abstract class AutomatonHitEnum extends AbstractHitEnum {
     static class TwoPass extends AutomatonHitEnum {
         private final BitSet startPositions;
 
-        TwoPass(OffsetReturningRunAutomaton forward, BitSet startPositions, String source,
-                                HitWeigher queryWeigher, HitWeigher corpusWeigher) {
-            super(forward, source, queryWeigher, corpusWeigher);
+        TwoPass(OffsetReturningRunAutomaton forward, BitSet startPositions, CharSequence source,
+                                HitWeigher queryWeigher, HitWeigher corpusWeigher, Deadline deadline) {
+            super(forward, source, queryWeigher, corpusWeigher, deadline);
             this.startPositions = startPositions;
         }
 
         @Override
         public boolean next() {
-            if (end >= length) {
+            if (end >= length || deadline.expired()) {
                 return false;
             }
             // Start looking where the last hit stopped.
@@ -195,6 +606,54 @@ public abstract class AutomatonHitEnum extends AbstractHitEnum {
         }
     }
 
+    /**
+     * The most chars that a string the automaton accepts can have or -1 if
+     * there isn't a limit.
+     */
+    static int maxMatchLength(Automaton a) {
+        a = Operations.removeDeadStates(a);
+        int numStates = a.getNumStates();
+        if (numStates == 0) {
+            return 0;
+        }
+        // Longest path by walking the states in topological order. If they
+        // can't all be walked then there is a loop.
+        int[] inDegree = new int[numStates];
+        Transition t = new Transition();
+        for (int state = 0; state < numStates; state++) {
+            int count = a.initTransition(state, t);
+            for (int i = 0; i < count; i++) {
+                a.getNextTransition(t);
+                inDegree[t.dest]++;
+            }
+        }
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int state = 0; state < numStates; state++) {
+            if (inDegree[state] == 0) {
+                queue.add(state);
+            }
+        }
+        int[] longest = new int[numStates];
+        int walked = 0;
+        int max = 0;
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            walked++;
+            if (a.isAccept(state)) {
+                max = Math.max(max, longest[state]);
+            }
+            int count = a.initTransition(state, t);
+            for (int i = 0; i < count; i++) {
+                a.getNextTransition(t);
+                longest[t.dest] = Math.max(longest[t.dest], longest[state] + Character.charCount(t.max));
+                if (--inDegree[t.dest] == 0) {
+                    queue.add(t.dest);
+                }
+            }
+        }
+        return walked == numStates ? max : -1;
+    }
+
     static boolean hasLeadingWildcard(Automaton a) {
         // catches [a-z]*
         if (isStateUnconstrainedWildcard(a, 0)) {
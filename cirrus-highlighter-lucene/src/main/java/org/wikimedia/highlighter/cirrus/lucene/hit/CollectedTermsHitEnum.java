@@ -0,0 +1,156 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.AbstractHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.EmptyHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.MergingHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+
+/**
+ * Hit enum over terms collected up front from the matches of some query. The
+ * hits are sorted by position once they are all collected and duplicates,
+ * like those from overlapping matches, are dropped.
+ */
+abstract class CollectedTermsHitEnum extends AbstractHitEnum {
+    private final TermWeigher<BytesRef> queryWeigher;
+    private final TermWeigher<BytesRef> corpusWeigher;
+    private final TermSourceFinder<BytesRef> sourceFinder;
+    private int[] positions = new int[16];
+    private int[] startOffsets = new int[16];
+    private int[] endOffsets = new int[16];
+    private BytesRef[] terms = new BytesRef[16];
+    private int hitCount;
+    private Integer[] order;
+    private int current = -1;
+    private int hit;
+
+    CollectedTermsHitEnum(TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+            TermSourceFinder<BytesRef> sourceFinder) {
+        this.queryWeigher = queryWeigher;
+        this.corpusWeigher = corpusWeigher;
+        this.sourceFinder = sourceFinder;
+    }
+
+    /**
+     * Merge collected hits with hits from another source by position.
+     */
+    static HitEnum merge(HitEnum collected, HitEnum otherHits) {
+        if (collected == EmptyHitEnum.INSTANCE) {
+            return otherHits;
+        }
+        if (otherHits == EmptyHitEnum.INSTANCE) {
+            return collected;
+        }
+        return new MergingHitEnum(Arrays.asList(collected, otherHits), HitEnum.LessThans.POSITION);
+    }
+
+    /**
+     * Collect a hit. The term is copied because Lucene reuses them.
+     */
+    final void add(int position, int startOffset, int endOffset, BytesRef term) {
+        positions = ArrayUtil.grow(positions, hitCount + 1);
+        startOffsets = ArrayUtil.grow(startOffsets, hitCount + 1);
+        endOffsets = ArrayUtil.grow(endOffsets, hitCount + 1);
+        terms = ArrayUtil.grow(terms, hitCount + 1);
+        positions[hitCount] = position;
+        startOffsets[hitCount] = startOffset;
+        endOffsets[hitCount] = endOffset;
+        terms[hitCount] = BytesRef.deepCopyOf(term);
+        hitCount++;
+    }
+
+    /**
+     * Were any hits collected?
+     */
+    final boolean collectedAny() {
+        return hitCount > 0;
+    }
+
+    /**
+     * Sort the collected hits by position and offset and drop the duplicates.
+     * Call once after collecting all the hits and before calling next.
+     */
+    final void sort() {
+        Integer[] sorted = new Integer[hitCount];
+        for (int i = 0; i < hitCount; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (lhs, rhs) -> {
+            int cmp = Integer.compare(positions[lhs], positions[rhs]);
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = Integer.compare(startOffsets[lhs], startOffsets[rhs]);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return terms[lhs].compareTo(terms[rhs]);
+        });
+        int unique = 0;
+        for (int i = 0; i < hitCount; i++) {
+            if (unique > 0) {
+                int last = sorted[unique - 1];
+                if (positions[last] == positions[sorted[i]] && startOffsets[last] == startOffsets[sorted[i]]
+                        && terms[last].equals(terms[sorted[i]])) {
+                    continue;
+                }
+            }
+            sorted[unique++] = sorted[i];
+        }
+        order = Arrays.copyOf(sorted, unique);
+    }
+
+    @Override
+    public boolean next() {
+        current++;
+        if (current >= order.length) {
+            current = order.length;
+            return false;
+        }
+        hit = order[current];
+        return true;
+    }
+
+    @Override
+    public int position() {
+        return positions[hit];
+    }
+
+    @Override
+    public int startOffset() {
+        return startOffsets[hit];
+    }
+
+    @Override
+    public int endOffset() {
+        return endOffsets[hit];
+    }
+
+    @Override
+    public float queryWeight() {
+        return queryWeigher.weigh(terms[hit]);
+    }
+
+    @Override
+    public float corpusWeight() {
+        return corpusWeigher.weigh(terms[hit]);
+    }
+
+    @Override
+    public int source() {
+        return sourceFinder.source(terms[hit]);
+    }
+
+    /**
+     * Number of hits for toString.
+     */
+    final String describeHits() {
+        return String.format(Locale.ENGLISH, "%s hits", order == null ? hitCount : order.length);
+    }
+}
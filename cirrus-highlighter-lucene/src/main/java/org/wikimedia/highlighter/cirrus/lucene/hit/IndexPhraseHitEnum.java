@@ -0,0 +1,341 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.AbstractHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnumGenerator;
+
+/**
+ * Hit enum that finds two word phrases in a field indexed with
+ * index_phrases. Those phrases are queried as single shingle terms on a
+ * companion field, so here they are read as single terms from its postings.
+ * Each shingle hit is then split into hits on its two words using the offsets
+ * of just those words from the main field's postings.
+ */
+public class IndexPhraseHitEnum extends AbstractHitEnum {
+    /**
+     * Separates the words in a shingle.
+     */
+    private static final byte SHINGLE_SEPARATOR = ' ';
+
+    /**
+     * Build the hits from the shingles on a doc merged with the hits from
+     * the main field.
+     * @param phraseFieldName name of the field containing the shingles
+     * @param phraseWrapper wraps the shingle hits to weigh phrases made of
+     *            more than one shingle
+     * @param otherHits hits from the main field
+     */
+    public static HitEnum fromPostings(IndexReader reader, int docId, String fieldName, String phraseFieldName,
+            CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+            TermSourceFinder<BytesRef> sourceFinder, UnaryOperator<HitEnum> phraseWrapper, HitEnum otherHits)
+            throws IOException {
+        List<LeafReaderContext> leaves = reader.getContext().leaves();
+        LeafReaderContext subcontext = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        LeafReader leafReader = subcontext.reader();
+        docId -= subcontext.docBase;
+        Terms phraseTerms = leafReader.terms(phraseFieldName);
+        Terms terms = leafReader.terms(fieldName);
+        if (phraseTerms == null || terms == null) {
+            return otherHits;
+        }
+        Shingles shingles = new Shingles(queryWeigher, corpusWeigher, sourceFinder);
+        TokenOffsets words = new TokenOffsets();
+        Set<BytesRef> wordsRead = new HashSet<>();
+        TermsEnum wordsEnum = terms.iterator();
+        TermsEnum shinglesEnum = acceptable.getTermsEnum(phraseTerms);
+        PostingsEnum dp = null;
+        BytesRef shingle;
+        while ((shingle = shinglesEnum.next()) != null) {
+            int separator = indexOf(shingle, SHINGLE_SEPARATOR);
+            if (separator < 0) {
+                continue;
+            }
+            dp = shinglesEnum.postings(dp, PostingsEnum.OFFSETS);
+            if (dp.advance(docId) != docId) {
+                continue;
+            }
+            int freq = dp.freq();
+            for (int i = 0; i < freq; i++) {
+                int position = dp.nextPosition();
+                shingles.add(position, dp.startOffset(), dp.endOffset(), shingle);
+            }
+            BytesRef left = new BytesRef(shingle.bytes, shingle.offset, separator);
+            BytesRef right = new BytesRef(shingle.bytes, shingle.offset + separator + 1,
+                    shingle.length - separator - 1);
+            dp = words.read(wordsEnum, wordsRead, left, docId, dp);
+            dp = words.read(wordsEnum, wordsRead, right, docId, dp);
+        }
+        if (!shingles.collectedAny()) {
+            return otherHits;
+        }
+        shingles.sort();
+        words.sort();
+        HitEnum split = new IndexPhraseHitEnum(phraseWrapper.apply(shingles), words);
+        return CollectedTermsHitEnum.merge(split, otherHits);
+    }
+
+    private static int indexOf(BytesRef bytes, byte b) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes.bytes[bytes.offset + i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private final HitEnum shingles;
+    private final TokenOffsets words;
+    /**
+     * Split hits waiting to be returned. There are never more than three:
+     * the right half of the last shingle and both halves of the next one.
+     */
+    private final int[] positions = new int[3];
+    private final int[] startOffsets = new int[3];
+    private final int[] endOffsets = new int[3];
+    private final float[] queryWeights = new float[3];
+    private final float[] corpusWeights = new float[3];
+    private final int[] sources = new int[3];
+    private int pending;
+    private boolean shinglesDone;
+    private int position;
+    private int startOffset;
+    private int endOffset;
+    private float queryWeight;
+    private float corpusWeight;
+    private int source;
+
+    private IndexPhraseHitEnum(HitEnum shingles, TokenOffsets words) {
+        this.shingles = shingles;
+        this.words = words;
+    }
+
+    @Override
+    public boolean next() {
+        // Hold on to the last half until the next shingle comes in because
+        // the shingle after "a b" is "b c" and its left half is the same hit.
+        while (pending < 2 && !shinglesDone) {
+            if (shingles.next()) {
+                split();
+            } else {
+                shinglesDone = true;
+            }
+        }
+        if (pending == 0) {
+            return false;
+        }
+        position = positions[0];
+        startOffset = startOffsets[0];
+        endOffset = endOffsets[0];
+        queryWeight = queryWeights[0];
+        corpusWeight = corpusWeights[0];
+        source = sources[0];
+        pending--;
+        for (int i = 0; i < pending; i++) {
+            positions[i] = positions[i + 1];
+            startOffsets[i] = startOffsets[i + 1];
+            endOffsets[i] = endOffsets[i + 1];
+            queryWeights[i] = queryWeights[i + 1];
+            corpusWeights[i] = corpusWeights[i + 1];
+            sources[i] = sources[i + 1];
+        }
+        return true;
+    }
+
+    /**
+     * Split the current shingle into hits on its words. If the words can't
+     * be found then the shingle is left whole.
+     */
+    private void split() {
+        int shinglePosition = shingles.position();
+        int leftIndex = words.find(shinglePosition);
+        int rightIndex = words.find(shinglePosition + 1);
+        if (leftIndex < 0 && rightIndex < 0) {
+            push(shinglePosition, shingles.startOffset(), shingles.endOffset());
+            return;
+        }
+        if (leftIndex >= 0) {
+            push(shinglePosition, shingles.startOffset(), words.endOffsets[leftIndex]);
+        }
+        if (rightIndex >= 0) {
+            push(shinglePosition + 1, words.startOffsets[rightIndex], shingles.endOffset());
+        }
+    }
+
+    /**
+     * Add a hit to the pending hits, keeping them sorted by position and
+     * offset. Shingles at the same position, like those from synonyms, can
+     * make them come in out of order.
+     */
+    private void push(int hitPosition, int hitStartOffset, int hitEndOffset) {
+        int insert = pending;
+        for (int i = 0; i < pending; i++) {
+            if (positions[i] == hitPosition && startOffsets[i] == hitStartOffset) {
+                // Same word from two shingles so keep the better weight
+                if (shingles.queryWeight() * shingles.corpusWeight() > queryWeights[i] * corpusWeights[i]) {
+                    queryWeights[i] = shingles.queryWeight();
+                    corpusWeights[i] = shingles.corpusWeight();
+                    sources[i] = shingles.source();
+                }
+                return;
+            }
+            if (insert == pending && (positions[i] > hitPosition
+                    || (positions[i] == hitPosition && startOffsets[i] > hitStartOffset))) {
+                insert = i;
+            }
+        }
+        for (int i = pending; i > insert; i--) {
+            positions[i] = positions[i - 1];
+            startOffsets[i] = startOffsets[i - 1];
+            endOffsets[i] = endOffsets[i - 1];
+            queryWeights[i] = queryWeights[i - 1];
+            corpusWeights[i] = corpusWeights[i - 1];
+            sources[i] = sources[i - 1];
+        }
+        positions[insert] = hitPosition;
+        startOffsets[insert] = hitStartOffset;
+        endOffsets[insert] = hitEndOffset;
+        queryWeights[insert] = shingles.queryWeight();
+        corpusWeights[insert] = shingles.corpusWeight();
+        sources[insert] = shingles.source();
+        pending++;
+    }
+
+    @Override
+    public int position() {
+        return position;
+    }
+
+    @Override
+    public int startOffset() {
+        return startOffset;
+    }
+
+    @Override
+    public int endOffset() {
+        return endOffset;
+    }
+
+    @Override
+    public float queryWeight() {
+        return queryWeight;
+    }
+
+    @Override
+    public float corpusWeight() {
+        return corpusWeight;
+    }
+
+    @Override
+    public int source() {
+        return source;
+    }
+
+    @Override
+    public void toGraph(GraphvizHitEnumGenerator generator) {
+        super.toGraph(generator);
+        generator.addChild(this, shingles);
+    }
+
+    @Override
+    public String toString() {
+        return "index_phrase(" + shingles + ")";
+    }
+
+    /**
+     * Hits on the shingles themselves.
+     */
+    private static final class Shingles extends CollectedTermsHitEnum {
+        Shingles(TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+                TermSourceFinder<BytesRef> sourceFinder) {
+            super(queryWeigher, corpusWeigher, sourceFinder);
+        }
+
+        @Override
+        public String toString() {
+            return "shingles(" + describeHits() + ")";
+        }
+    }
+
+    /**
+     * Offsets of the words in the shingles by position.
+     */
+    private static final class TokenOffsets {
+        private int[] positions = new int[16];
+        private int[] startOffsets = new int[16];
+        private int[] endOffsets = new int[16];
+        private int size;
+
+        /**
+         * Read the offsets of every occurrence of a word in the doc unless
+         * they've already been read.
+         * @return the postings enum to reuse
+         */
+        PostingsEnum read(TermsEnum wordsEnum, Set<BytesRef> wordsRead, BytesRef word, int docId,
+                PostingsEnum reuse) throws IOException {
+            if (!wordsRead.add(BytesRef.deepCopyOf(word)) || !wordsEnum.seekExact(word)) {
+                return reuse;
+            }
+            PostingsEnum dp = wordsEnum.postings(reuse, PostingsEnum.OFFSETS);
+            if (dp.advance(docId) != docId) {
+                return dp;
+            }
+            int freq = dp.freq();
+            positions = ArrayUtil.grow(positions, size + freq);
+            startOffsets = ArrayUtil.grow(startOffsets, size + freq);
+            endOffsets = ArrayUtil.grow(endOffsets, size + freq);
+            for (int i = 0; i < freq; i++) {
+                positions[size] = dp.nextPosition();
+                startOffsets[size] = dp.startOffset();
+                endOffsets[size] = dp.endOffset();
+                size++;
+            }
+            return dp;
+        }
+
+        void sort() {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) positions[i] << 32) | (i & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            int[] sortedPositions = new int[size];
+            int[] sortedStartOffsets = new int[size];
+            int[] sortedEndOffsets = new int[size];
+            for (int i = 0; i < size; i++) {
+                int from = (int) packed[i];
+                sortedPositions[i] = positions[from];
+                sortedStartOffsets[i] = startOffsets[from];
+                sortedEndOffsets[i] = endOffsets[from];
+            }
+            positions = sortedPositions;
+            startOffsets = sortedStartOffsets;
+            endOffsets = sortedEndOffsets;
+        }
+
+        /**
+         * Index of a word at position or a negative number if there isn't one.
+         */
+        int find(int position) {
+            return Arrays.binarySearch(positions, 0, size, position);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.EmptyHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+
+/**
+ * Hit enum that finds the words starting with some prefixes by looking each
+ * prefix up as a single term on a field indexed with index_prefixes. That
+ * field holds the leading characters of every word at the word's position
+ * and with its offsets so one lookup replaces running the prefix's automaton
+ * over every term in the main field.
+ */
+public class IndexPrefixHitEnum extends CollectedTermsHitEnum {
+    /**
+     * The prefixes to look up on a field and the automaton of the terms left
+     * over for the main field. Thread safe once built so it can be reused for
+     * every doc in a search.
+     */
+    public static final class Source {
+        private final String prefixFieldName;
+        private final BytesRef[] prefixes;
+        /**
+         * Do any of the prefixes start with another one?
+         */
+        private final boolean overlapping;
+        private final CompiledAutomaton otherTerms;
+
+        /**
+         * @param prefixes prefixes short enough to be indexed on the prefix
+         *            field
+         * @param otherTerms all the terms the query could highlight except
+         *            those that only the prefixes match
+         */
+        public static Source build(String prefixFieldName, Collection<BytesRef> prefixes,
+                CompiledAutomaton otherTerms) {
+            BytesRef[] sorted = prefixes.toArray(new BytesRef[0]);
+            Arrays.sort(sorted);
+            List<BytesRef> unique = new ArrayList<>(sorted.length);
+            boolean overlapping = false;
+            for (BytesRef prefix : sorted) {
+                if (unique.isEmpty()) {
+                    unique.add(prefix);
+                    continue;
+                }
+                BytesRef last = unique.get(unique.size() - 1);
+                if (prefix.equals(last)) {
+                    continue;
+                }
+                // Prefixes that start with another sort right after it
+                overlapping |= StringHelper.startsWith(prefix, last);
+                unique.add(prefix);
+            }
+            return new Source(prefixFieldName, unique.toArray(new BytesRef[0]), overlapping, otherTerms);
+        }
+
+        private Source(String prefixFieldName, BytesRef[] prefixes, boolean overlapping,
+                CompiledAutomaton otherTerms) {
+            this.prefixFieldName = prefixFieldName;
+            this.prefixes = prefixes;
+            this.overlapping = overlapping;
+            this.otherTerms = otherTerms;
+        }
+
+        /**
+         * Terms the query could highlight that aren't covered by the
+         * prefixes. Hits on these come from the main field's postings as
+         * usual.
+         */
+        public CompiledAutomaton otherTerms() {
+            return otherTerms;
+        }
+
+        /**
+         * Build the hits on words starting with the prefixes on a doc.
+         */
+        public HitEnum build(LeafReaderContext leaf, int docId, TermWeigher<BytesRef> queryWeigher,
+                TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder) throws IOException {
+            if (prefixes.length == 0) {
+                return EmptyHitEnum.INSTANCE;
+            }
+            Terms terms = leaf.reader().terms(prefixFieldName);
+            if (terms == null) {
+                return EmptyHitEnum.INSTANCE;
+            }
+            BytesRef[] lookups = prefixes;
+            Set<Long> found = null;
+            if (overlapping) {
+                // Words that start with "ab" also start with "a" so look up
+                // the best weighted prefix first and skip the words that it
+                // already found. That way each word gets the weight of the
+                // best prefix it starts with.
+                lookups = prefixes.clone();
+                Arrays.sort(lookups, (lhs, rhs) -> Float.compare(queryWeigher.weigh(rhs), queryWeigher.weigh(lhs)));
+                found = new HashSet<>();
+            }
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum dp = null;
+            IndexPrefixHitEnum e = null;
+            for (BytesRef prefix : lookups) {
+                if (!termsEnum.seekExact(prefix)) {
+                    continue;
+                }
+                dp = termsEnum.postings(dp, PostingsEnum.OFFSETS);
+                if (dp.advance(docId) != docId) {
+                    continue;
+                }
+                if (e == null) {
+                    e = new IndexPrefixHitEnum(queryWeigher, corpusWeigher, sourceFinder);
+                }
+                int freq = dp.freq();
+                for (int i = 0; i < freq; i++) {
+                    int position = dp.nextPosition();
+                    if (found != null && !found.add(((long) position << 32) | dp.startOffset())) {
+                        continue;
+                    }
+                    e.add(position, dp.startOffset(), dp.endOffset(), prefix);
+                }
+            }
+            if (e == null) {
+                return EmptyHitEnum.INSTANCE;
+            }
+            e.sort();
+            return e;
+        }
+
+        /**
+         * Build the hits on words starting with the prefixes on a doc merged
+         * with the hits on every other term the query could highlight.
+         */
+        public HitEnum build(LeafReaderContext leaf, int docId, HitEnum otherHits,
+                TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+                TermSourceFinder<BytesRef> sourceFinder) throws IOException {
+            return merge(build(leaf, docId, queryWeigher, corpusWeigher, sourceFinder), otherHits);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "index_prefix(%s, %s)", prefixFieldName, Arrays.toString(prefixes));
+        }
+    }
+
+    private IndexPrefixHitEnum(TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+            TermSourceFinder<BytesRef> sourceFinder) {
+        super(queryWeigher, corpusWeigher, sourceFinder);
+    }
+
+    @Override
+    public String toString() {
+        return "index_prefix(" + describeHits() + ")";
+    }
+}
@@ -0,0 +1,144 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.queries.intervals.IntervalQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Matches;
+import org.apache.lucene.search.MatchesIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.EmptyHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+
+/**
+ * Hit enum that only returns the terms inside intervals that an interval
+ * query accepts. The intervals for a doc are collected up front, their terms
+ * sorted by position, and duplicates from overlapping intervals dropped.
+ */
+public class IntervalsHitEnum extends CollectedTermsHitEnum {
+    /**
+     * Finds the interval queries on a field and builds the weights to run
+     * them. Thread safe once built so it can be reused for every doc in a
+     * search.
+     */
+    public static final class Source {
+        private final String fieldName;
+        private final List<Weight> weights;
+        private final CompiledAutomaton otherTerms;
+
+        /**
+         * @param acceptableWithout all the terms that the query could
+         *            highlight except the ones passed to it
+         */
+        public static Source build(IndexSearcher searcher, Query query, String fieldName,
+                Function<Collection<BytesRef>, CompiledAutomaton> acceptableWithout) throws IOException {
+            ProximityQueryExtractor extractor = new ProximityQueryExtractor(fieldName,
+                    q -> q instanceof IntervalQuery && fieldName.equals(((IntervalQuery) q).getField()));
+            query.visit(extractor);
+            List<Weight> weights = new ArrayList<>(extractor.proximityQueries().size());
+            for (Query intervalQuery : extractor.proximityQueries()) {
+                weights.add(searcher.createWeight(searcher.rewrite(intervalQuery), ScoreMode.COMPLETE_NO_SCORES, 1));
+            }
+            return new Source(fieldName, weights, acceptableWithout.apply(extractor.proximityOnlyTerms()));
+        }
+
+        private Source(String fieldName, List<Weight> weights, CompiledAutomaton otherTerms) {
+            this.fieldName = fieldName;
+            this.weights = weights;
+            this.otherTerms = otherTerms;
+        }
+
+        /**
+         * Terms the query could highlight that aren't only in interval
+         * queries. Hits on these come from the postings as usual.
+         */
+        public CompiledAutomaton otherTerms() {
+            return otherTerms;
+        }
+
+        /**
+         * Build the hits inside accepted intervals on a doc.
+         */
+        public HitEnum build(LeafReaderContext leaf, int docId, TermWeigher<BytesRef> queryWeigher,
+                TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder) throws IOException {
+            IntervalsHitEnum e = new IntervalsHitEnum(queryWeigher, corpusWeigher, sourceFinder);
+            for (Weight weight : weights) {
+                Matches matches = weight.matches(leaf, docId);
+                if (matches == null) {
+                    continue;
+                }
+                MatchesIterator intervals = matches.getMatches(fieldName);
+                if (intervals == null) {
+                    continue;
+                }
+                while (intervals.next()) {
+                    e.collect(intervals);
+                }
+            }
+            if (!e.collectedAny()) {
+                return EmptyHitEnum.INSTANCE;
+            }
+            e.sort();
+            return e;
+        }
+
+        /**
+         * Build the hits inside accepted intervals on a doc merged with the
+         * hits on every other term the query could highlight.
+         */
+        public HitEnum build(LeafReaderContext leaf, int docId, HitEnum otherHits,
+                TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+                TermSourceFinder<BytesRef> sourceFinder) throws IOException {
+            return merge(build(leaf, docId, queryWeigher, corpusWeigher, sourceFinder), otherHits);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "intervals(%s, %s)", fieldName, weights);
+        }
+    }
+
+    private IntervalsHitEnum(TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+            TermSourceFinder<BytesRef> sourceFinder) {
+        super(queryWeigher, corpusWeigher, sourceFinder);
+    }
+
+    /**
+     * Collect the terms in the interval the iterator is on. Lucene builds the
+     * interval from the postings of its terms with offsets so descending
+     * into the sub matches finds each term's position and offsets without
+     * reanalyzing anything.
+     */
+    private void collect(MatchesIterator interval) throws IOException {
+        MatchesIterator terms = interval.getSubMatches();
+        if (terms == null) {
+            Query query = interval.getQuery();
+            if (query instanceof TermQuery && interval.startOffset() >= 0) {
+                add(interval.startPosition(), interval.startOffset(), interval.endOffset(),
+                        ((TermQuery) query).getTerm().bytes());
+            }
+            return;
+        }
+        while (terms.next()) {
+            collect(terms);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "intervals(" + describeHits() + ")";
+    }
+}
@@ -0,0 +1,207 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Matches;
+import org.apache.lucene.search.MatchesIterator;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.wikimedia.highlighter.cirrus.lucene.WrappedExceptionFromLucene;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.AbstractHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.EmptyHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Hit enum that pulls its hits from Lucene's {@link MatchesIterator} so
+ * phrases, spans, and intervals are matched by the query itself. Each match is
+ * a single hit covering everything it matched, so a phrase comes out as one
+ * hit from the start of its first term to the end of its last. Matches come in
+ * position order.
+ */
+@SuppressFBWarnings(
+        value = "EXS_EXCEPTION_SOFTENING_NO_CHECKED",
+        justification = "The contract of AbstractHitEnum makes sense without exposing IOException")
+public class MatchesHitEnum extends AbstractHitEnum {
+    /**
+     * Build a hit enum from the matches of weight on a doc.
+     * @param phraseWeigher weighs phrases from the sources of their terms,
+     *            returning 0 if it doesn't know the phrase
+     */
+    public static HitEnum fromWeight(Weight weight, LeafReaderContext leaf, int docId, String fieldName,
+            TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+            TermSourceFinder<BytesRef> sourceFinder, TermWeigher<int[]> phraseWeigher) throws IOException {
+        Matches matches = weight.matches(leaf, docId);
+        if (matches == null) {
+            return EmptyHitEnum.INSTANCE;
+        }
+        MatchesIterator iterator = matches.getMatches(fieldName);
+        if (iterator == null) {
+            return EmptyHitEnum.INSTANCE;
+        }
+        return new MatchesHitEnum(iterator, queryWeigher, corpusWeigher, sourceFinder, phraseWeigher);
+    }
+
+    private final MatchesIterator iterator;
+    private final TermWeigher<BytesRef> queryWeigher;
+    private final TermWeigher<BytesRef> corpusWeigher;
+    private final TermSourceFinder<BytesRef> sourceFinder;
+    private final TermWeigher<int[]> phraseWeigher;
+    private int position;
+    private int startOffset;
+    private int endOffset;
+    private float queryWeight;
+    private float corpusWeight;
+    private int source;
+
+    public MatchesHitEnum(MatchesIterator iterator, TermWeigher<BytesRef> queryWeigher,
+            TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder,
+            TermWeigher<int[]> phraseWeigher) {
+        this.iterator = iterator;
+        this.queryWeigher = queryWeigher;
+        this.corpusWeigher = corpusWeigher;
+        this.sourceFinder = sourceFinder;
+        this.phraseWeigher = phraseWeigher;
+    }
+
+    @Override
+    public boolean next() {
+        try {
+            if (!iterator.next()) {
+                return false;
+            }
+            position = iterator.startPosition();
+            startOffset = iterator.startOffset();
+            endOffset = iterator.endOffset();
+            if (startOffset < 0) {
+                throw new IllegalArgumentException("Can't use matches as a hit source without offsets in the postings");
+            }
+        } catch (IOException e) {
+            throw new WrappedExceptionFromLucene(e);
+        }
+        weigh(iterator.getQuery());
+        return true;
+    }
+
+    private void weigh(Query query) {
+        if (query instanceof TermQuery) {
+            BytesRef term = ((TermQuery) query).getTerm().bytes();
+            queryWeight = queryWeigher.weigh(term);
+            corpusWeight = corpusWeigher.weigh(term);
+            source = sourceFinder.source(term);
+        } else if (query instanceof PhraseQuery) {
+            weighPhrase(((PhraseQuery) query).getTerms());
+        } else if (query instanceof SynonymQuery) {
+            weighAlternatives(((SynonymQuery) query).getTerms().toArray(new Term[0]));
+        } else if (query instanceof MultiPhraseQuery) {
+            // We don't know which term matched at each position so take the best
+            Term[][] termArrays = ((MultiPhraseQuery) query).getTermArrays();
+            float bestQueryWeight = 0;
+            float totalCorpusWeight = 0;
+            int combinedSource = 0;
+            for (Term[] terms : termArrays) {
+                weighAlternatives(terms);
+                bestQueryWeight = Math.max(bestQueryWeight, queryWeight);
+                totalCorpusWeight += corpusWeight;
+                combinedSource = 31 * combinedSource + source;
+            }
+            queryWeight = bestQueryWeight;
+            corpusWeight = totalCorpusWeight;
+            source = combinedSource;
+        } else {
+            // Spans, intervals, and multi term queries don't tell us which
+            // terms they matched so we can't weigh them any better than this.
+            queryWeight = 1;
+            corpusWeight = 1;
+            source = query.hashCode();
+        }
+    }
+
+    /**
+     * Weigh a phrase. The query weight is the phrase's weight or, if the
+     * phrase weigher doesn't know it, the weight of the best term. The corpus
+     * weight is the sum of the terms' weights, just like Lucene sums the idf
+     * of phrase terms.
+     */
+    private void weighPhrase(Term[] terms) {
+        int[] sources = new int[terms.length];
+        float bestQueryWeight = 0;
+        float totalCorpusWeight = 0;
+        int combinedSource = 0;
+        for (int i = 0; i < terms.length; i++) {
+            BytesRef term = terms[i].bytes();
+            sources[i] = sourceFinder.source(term);
+            bestQueryWeight = Math.max(bestQueryWeight, queryWeigher.weigh(term));
+            totalCorpusWeight += corpusWeigher.weigh(term);
+            combinedSource = 31 * combinedSource + sources[i];
+        }
+        float phraseWeight = phraseWeigher.weigh(sources);
+        queryWeight = phraseWeight > 0 ? phraseWeight : bestQueryWeight;
+        corpusWeight = totalCorpusWeight;
+        source = combinedSource;
+    }
+
+    /**
+     * Weigh a match of any one of terms with the best weights of all of them.
+     */
+    private void weighAlternatives(Term[] terms) {
+        queryWeight = 0;
+        corpusWeight = 0;
+        source = 0;
+        for (Term t : terms) {
+            BytesRef term = t.bytes();
+            float weight = queryWeigher.weigh(term);
+            if (weight > queryWeight) {
+                queryWeight = weight;
+                source = sourceFinder.source(term);
+            }
+            corpusWeight = Math.max(corpusWeight, corpusWeigher.weigh(term));
+        }
+    }
+
+    @Override
+    public int position() {
+        return position;
+    }
+
+    @Override
+    public int startOffset() {
+        return startOffset;
+    }
+
+    @Override
+    public int endOffset() {
+        return endOffset;
+    }
+
+    @Override
+    public float queryWeight() {
+        return queryWeight;
+    }
+
+    @Override
+    public float corpusWeight() {
+        return corpusWeight;
+    }
+
+    @Override
+    public int source() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "matches(%s)", iterator);
+    }
+}
@@ -0,0 +1,92 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+/**
+ * Encodes the output of a {@link TokenStream} into the compact token table
+ * read by {@link OffsetsTableHitEnum}. The table is built at index time so
+ * highlighting can find hits without running the analyzer again.
+ * <p>
+ * The layout is all vints:
+ * <ul>
+ * <li>length of the analyzed value in chars
+ * <li>number of distinct terms followed by each term's length and bytes, in
+ * the order they were first seen
+ * <li>number of tokens followed by, for each token, its term ordinal, the
+ * delta from the previous position, the zig-zag encoded delta from the
+ * previous start offset, and its length in chars
+ * </ul>
+ */
+public final class OffsetsTableEncoder {
+    private OffsetsTableEncoder() {
+        // Util class
+    }
+
+    /**
+     * Encode a token stream. This resets, consumes, and ends the stream but
+     * leaves closing it to the caller.
+     *
+     * @param tokenStream the stream to encode
+     * @param sourceLength length of the value that was analyzed
+     * @return the encoded table
+     */
+    public static BytesRef encode(TokenStream tokenStream, int sourceLength) throws IOException {
+        PositionIncrementAttribute positionIncr = tokenStream.addAttribute(PositionIncrementAttribute.class);
+        OffsetAttribute offsets = tokenStream.addAttribute(OffsetAttribute.class);
+        TermToBytesRefAttribute termRef = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+
+        BytesRefHash terms = new BytesRefHash();
+        // Four ints per token: ordinal, position delta, start delta, length
+        int[] tokens = new int[64];
+        int tokenCount = 0;
+        int lastPosition = -1;
+        int lastStartOffset = 0;
+
+        tokenStream.reset();
+        while (tokenStream.incrementToken()) {
+            int ord = terms.add(termRef.getBytesRef());
+            if (ord < 0) {
+                ord = -1 - ord;
+            }
+            int position = lastPosition + positionIncr.getPositionIncrement();
+            int startOffset = offsets.startOffset();
+            tokens = ArrayUtil.grow(tokens, (tokenCount + 1) * 4);
+            int t = tokenCount * 4;
+            tokens[t] = ord;
+            tokens[t + 1] = position - lastPosition;
+            tokens[t + 2] = startOffset - lastStartOffset;
+            tokens[t + 3] = offsets.endOffset() - startOffset;
+            tokenCount++;
+            lastPosition = position;
+            lastStartOffset = startOffset;
+        }
+        tokenStream.end();
+
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        out.writeVInt(sourceLength);
+        out.writeVInt(terms.size());
+        BytesRef scratch = new BytesRef();
+        for (int ord = 0; ord < terms.size(); ord++) {
+            terms.get(ord, scratch);
+            out.writeVInt(scratch.length);
+            out.writeBytes(scratch.bytes, scratch.offset, scratch.length);
+        }
+        out.writeVInt(tokenCount);
+        for (int t = 0; t < tokenCount * 4; t += 4) {
+            out.writeVInt(tokens[t]);
+            out.writeVInt(tokens[t + 1]);
+            out.writeZInt(tokens[t + 2]);
+            out.writeVInt(tokens[t + 3]);
+        }
+        return new BytesRef(out.toArrayCopy());
+    }
+}
@@ -0,0 +1,194 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.AbstractHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.ConcatHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.EmptyHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.ReplayingHitEnum.HitEnumAndLength;
+import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+
+/**
+ * Hit enum that replays a token table written by {@link OffsetsTableEncoder}.
+ * Only tokens for terms accepted by the automaton are returned and they come
+ * back in position order, just like the merged {@link PostingsHitEnum}. Each
+ * distinct term in the table is weighed once.
+ */
+public class OffsetsTableHitEnum extends AbstractHitEnum {
+    /**
+     * Build a hit enum from all the tables stored in fieldName for the doc.
+     * Multi-valued fields are concatenated with positionGap between each
+     * value and an offset gap of 1.
+     */
+    public static HitEnum fromStoredFields(IndexReader reader, int docId, String fieldName,
+            CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher,
+            TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder,
+            int positionGap) throws IOException {
+        List<LeafReaderContext> leaves = reader.getContext().leaves();
+        int leaf = ReaderUtil.subIndex(docId, leaves);
+        LeafReaderContext subcontext = leaves.get(leaf);
+        TableCollector collector = new TableCollector(fieldName);
+        subcontext.reader().document(docId - subcontext.docBase, collector);
+        switch (collector.tables.size()) {
+            case 0:
+                return EmptyHitEnum.INSTANCE;
+            case 1:
+                return new OffsetsTableHitEnum(collector.tables.get(0), acceptable, queryWeigher,
+                        corpusWeigher, sourceFinder);
+            default:
+                Iterator<HitEnumAndLength> hitEnums = collector.tables.stream().map(table -> {
+                    OffsetsTableHitEnum e = new OffsetsTableHitEnum(table, acceptable, queryWeigher,
+                            corpusWeigher, sourceFinder);
+                    return new HitEnumAndLength(e, e.sourceLength());
+                }).iterator();
+                return new ConcatHitEnum(hitEnums, positionGap, 1);
+        }
+    }
+
+    private final ByteArrayDataInput in;
+    private final int sourceLength;
+    private final boolean[] accepted;
+    private final float[] queryWeights;
+    private final float[] corpusWeights;
+    private final int[] sources;
+    private int tokensLeft;
+    private int term;
+    private int position = -1;
+    private int startOffset;
+    private int endOffset;
+
+    public OffsetsTableHitEnum(BytesRef table, CompiledAutomaton acceptable,
+            TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+            TermSourceFinder<BytesRef> sourceFinder) {
+        in = new ByteArrayDataInput(table.bytes, table.offset, table.length);
+        sourceLength = in.readVInt();
+        int termCount = in.readVInt();
+        accepted = new boolean[termCount];
+        queryWeights = new float[termCount];
+        corpusWeights = new float[termCount];
+        sources = new int[termCount];
+        BytesRef scratch = new BytesRef();
+        for (int t = 0; t < termCount; t++) {
+            int length = in.readVInt();
+            scratch.bytes = table.bytes;
+            scratch.offset = table.offset + in.getPosition();
+            scratch.length = length;
+            in.skipBytes(length);
+            if (!accepts(acceptable, scratch)) {
+                continue;
+            }
+            accepted[t] = true;
+            queryWeights[t] = queryWeigher.weigh(scratch);
+            corpusWeights[t] = corpusWeigher.weigh(scratch);
+            sources[t] = sourceFinder.source(scratch);
+        }
+        tokensLeft = in.readVInt();
+    }
+
+    private static boolean accepts(CompiledAutomaton acceptable, BytesRef term) {
+        switch (acceptable.type) {
+            case NONE:
+                return false;
+            case ALL:
+                return true;
+            case SINGLE:
+                return acceptable.term.bytesEquals(term);
+            default:
+                return acceptable.runAutomaton.run(term.bytes, term.offset, term.length);
+        }
+    }
+
+    /**
+     * Length of the value that was analyzed to build the table.
+     */
+    public int sourceLength() {
+        return sourceLength;
+    }
+
+    @Override
+    public boolean next() {
+        while (tokensLeft > 0) {
+            tokensLeft--;
+            term = in.readVInt();
+            position += in.readVInt();
+            startOffset += in.readZInt();
+            endOffset = startOffset + in.readVInt();
+            if (accepted[term]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int position() {
+        return position;
+    }
+
+    @Override
+    public int startOffset() {
+        return startOffset;
+    }
+
+    @Override
+    public int endOffset() {
+        return endOffset;
+    }
+
+    @Override
+    public float queryWeight() {
+        return queryWeights[term];
+    }
+
+    @Override
+    public float corpusWeight() {
+        return corpusWeights[term];
+    }
+
+    @Override
+    public int source() {
+        return sources[term];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "table(%s tokens left)", tokensLeft);
+    }
+
+    /**
+     * Collects the stored tables for a single field in the order they were
+     * indexed.
+     */
+    private static final class TableCollector extends StoredFieldVisitor {
+        private final String fieldName;
+        private final List<BytesRef> tables = new ArrayList<>();
+
+        private TableCollector(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) {
+            return fieldName.equals(fieldInfo.name) ? Status.YES : Status.NO;
+        }
+
+        @Override
+        public void binaryField(FieldInfo fieldInfo, byte[] value) {
+            tables.add(new BytesRef(value));
+        }
+    }
+}
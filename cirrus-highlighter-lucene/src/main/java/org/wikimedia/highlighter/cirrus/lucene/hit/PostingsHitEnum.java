@@ -35,36 +35,100 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
         value = "EXS_EXCEPTION_SOFTENING_NO_CHECKED",
         justification = "The contract of AbstractHitEnum makes sense without exposing IOException")
 public class PostingsHitEnum extends AbstractHitEnum {
+    /**
+     * Default number of matching terms above which the postings are drained
+     * into a {@link SortedPostingsHitEnum} rather than merged on the fly.
+     */
+    public static final int DEFAULT_MAX_MERGED_TERMS = 32;
+
     public static HitEnum fromTermVectors(IndexReader reader, int docId, String fieldName,
             CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher,
             TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder)
             throws IOException {
+        return fromTermVectors(reader, docId, fieldName, acceptable, queryWeigher, corpusWeigher,
+                sourceFinder, DEFAULT_MAX_MERGED_TERMS);
+    }
+
+    /**
+     * Build a hit enum from the term vectors of a doc.
+     * @param maxMergedTerms if more than this many terms match then drain
+     *            their postings and sort them rather than merge them lazily
+     */
+    public static HitEnum fromTermVectors(IndexReader reader, int docId, String fieldName,
+            CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher,
+            TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder,
+            int maxMergedTerms) throws IOException {
+        return fromTermVectors(reader, docId, fieldName, acceptable, queryWeigher, corpusWeigher,
+                sourceFinder, maxMergedTerms, null);
+    }
+
+    /**
+     * Build a hit enum from the term vectors of a doc.
+     * @param maxMergedTerms if more than this many terms match then drain
+     *            their postings and sort them rather than merge them lazily
+     * @param phraseMatcher if not null then match its phrases on the term
+     *            vectors and weigh the hits that are part of them
+     */
+    public static HitEnum fromTermVectors(IndexReader reader, int docId, String fieldName,
+            CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher,
+            TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder,
+            int maxMergedTerms, PostingsPhraseMatcher phraseMatcher) throws IOException {
         Fields vectors = reader.getTermVectors(docId);
         if (vectors == null) {
             // No term vectors so no hits
             return EmptyHitEnum.INSTANCE;
         }
         return fromTerms(vectors.terms(fieldName), acceptable, -1, queryWeigher,
-                corpusWeigher, sourceFinder);
+                corpusWeigher, sourceFinder, maxMergedTerms, phraseMatcher);
     }
 
     public static HitEnum fromPostings(IndexReader reader, int docId, String fieldName,
             CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher,
             TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder)
             throws IOException {
+        return fromPostings(reader, docId, fieldName, acceptable, queryWeigher, corpusWeigher,
+                sourceFinder, DEFAULT_MAX_MERGED_TERMS);
+    }
+
+    /**
+     * Build a hit enum from the postings of a doc.
+     * @param maxMergedTerms if more than this many terms match then drain
+     *            their postings and sort them rather than merge them lazily
+     */
+    public static HitEnum fromPostings(IndexReader reader, int docId, String fieldName,
+            CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher,
+            TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder,
+            int maxMergedTerms) throws IOException {
+        return fromPostings(reader, docId, fieldName, acceptable, queryWeigher, corpusWeigher,
+                sourceFinder, maxMergedTerms, null);
+    }
+
+    /**
+     * Build a hit enum from the postings of a doc.
+     * @param maxMergedTerms if more than this many terms match then drain
+     *            their postings and sort them rather than merge them lazily
+     * @param phraseMatcher if not null then match its phrases on the postings
+     *            and weigh the hits that are part of them
+     */
+    public static HitEnum fromPostings(IndexReader reader, int docId, String fieldName,
+            CompiledAutomaton acceptable, TermWeigher<BytesRef> queryWeigher,
+            TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder,
+            int maxMergedTerms, PostingsPhraseMatcher phraseMatcher) throws IOException {
         List<LeafReaderContext> leaves = reader.getContext().leaves();
         int leaf = ReaderUtil.subIndex(docId, leaves);
         LeafReaderContext subcontext = leaves.get(leaf);
         LeafReader atomicReader = subcontext.reader();
         docId -= subcontext.docBase;
         return fromTerms(atomicReader.terms(fieldName), acceptable, docId,
-                queryWeigher, corpusWeigher, sourceFinder);
+                queryWeigher, corpusWeigher, sourceFinder, maxMergedTerms, phraseMatcher);
     }
 
     private static HitEnum fromTerms(Terms terms, CompiledAutomaton acceptable,
                                      int docId, TermWeigher<BytesRef> queryWeigher,
                                      TermWeigher<BytesRef> corpusWeigher,
-                                     TermSourceFinder<BytesRef> sourceFinder) throws IOException {
+                                     TermSourceFinder<BytesRef> sourceFinder,
+                                     int maxMergedTerms,
+                                     PostingsPhraseMatcher phraseMatcher) throws IOException {
         if (terms == null) {
             // No term vectors on field so no hits
             return EmptyHitEnum.INSTANCE;
@@ -72,6 +136,8 @@ public class PostingsHitEnum extends AbstractHitEnum {
         TermsEnum termsEnum = acceptable.getTermsEnum(terms);
         BytesRef term;
         List<HitEnum> enums = new ArrayList<>();
+        // Once too many terms match we drain everything into this instead.
+        SortedPostingsHitEnum sorted = null;
 
         // Last enum that didn't find anything.  We can reuse it.
         PostingsEnum dp = null;
@@ -89,19 +155,41 @@ public class PostingsHitEnum extends AbstractHitEnum {
                     continue;
                 }
             }
-            HitEnum e = new PostingsHitEnum(dp, queryWeigher.weigh(term), corpusWeigher.weigh(term), sourceFinder.source(term));
+            int source = sourceFinder.source(term);
+            if (phraseMatcher != null) {
+                phraseMatcher.collect(termsEnum, docId, source);
+            }
+            if (sorted != null) {
+                // Draining frees dp up for reuse on the next term.
+                sorted.add(dp, queryWeigher.weigh(term), corpusWeigher.weigh(term), source);
+                continue;
+            }
+            HitEnum e = new PostingsHitEnum(dp, queryWeigher.weigh(term), corpusWeigher.weigh(term), source);
             enums.add(e);
             dp = null;
+            if (enums.size() > maxMergedTerms) {
+                sorted = new SortedPostingsHitEnum();
+                for (HitEnum merged : enums) {
+                    sorted.add(merged);
+                }
+                enums.clear();
+            }
         }
-        switch (enums.size()) {
-            case 0:
-                return EmptyHitEnum.INSTANCE;
-            case 1:
-                return enums.get(0);
-            default:
-                // do nothing, we only handle the simple cases here.
+        HitEnum merged;
+        if (sorted != null) {
+            merged = sorted;
+        } else {
+            switch (enums.size()) {
+                case 0:
+                    return EmptyHitEnum.INSTANCE;
+                case 1:
+                    merged = enums.get(0);
+                    break;
+                default:
+                    merged = new MergingHitEnum(enums, HitEnum.LessThans.POSITION);
+            }
         }
-        return new MergingHitEnum(enums, HitEnum.LessThans.POSITION);
+        return phraseMatcher == null ? merged : phraseMatcher.wrap(merged);
     }
 
     private final PostingsEnum dp;
@@ -139,6 +227,42 @@ public class PostingsHitEnum extends AbstractHitEnum {
         }
     }
 
+    /**
+     * Positions come out of the postings in order so this just reads them
+     * until it finds one at least target.
+     */
+    @Override
+    public boolean advanceToPosition(int target) {
+        try {
+            while (current < freq) {
+                current++;
+                position = dp.nextPosition();
+                if (position >= target) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new WrappedExceptionFromLucene(e);
+        }
+    }
+
+    @Override
+    public boolean advanceToOffset(int target) {
+        try {
+            while (current < freq) {
+                current++;
+                position = dp.nextPosition();
+                if (dp.startOffset() >= target) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new WrappedExceptionFromLucene(e);
+        }
+    }
+
     @Override
     public int position() {
         return position;
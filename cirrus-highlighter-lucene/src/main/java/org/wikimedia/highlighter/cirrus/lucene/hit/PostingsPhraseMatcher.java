@@ -0,0 +1,183 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.MatchedPhraseHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.PhraseMasks;
+
+/**
+ * Finds exact (slop 0) phrases on a doc by intersecting the positions of
+ * their terms in the postings, like Lucene's ExactPhraseMatcher, rather than
+ * by watching the merged stream of every hit go by. Only the postings of
+ * terms that are in a phrase are read so the cost scales with how often the
+ * phrase's terms appear, not with the total number of hits. Build one per doc,
+ * {@link #collect} each matching term, and then {@link #wrap} the hits.
+ */
+public class PostingsPhraseMatcher {
+    private final List<Phrase> phrases = new ArrayList<>();
+    private PostingsEnum positionsEnum;
+    private int[] termPositions = new int[16];
+
+    /**
+     * Add a phrase to match.
+     * @param phrase array of arrays of term sources. Each inner array should
+     *            be sorted.
+     */
+    public void add(int[][] phrase, float weight) {
+        phrases.add(new Phrase(phrase, weight));
+    }
+
+    /**
+     * Does this have any phrases to match?
+     */
+    public boolean isEmpty() {
+        return phrases.isEmpty();
+    }
+
+    /**
+     * Read the positions of the term that termsEnum is on if it is in any
+     * phrase.
+     * @param docId the doc to read or -1 to read the first doc like with term
+     *            vectors
+     * @param source the source of the term
+     */
+    public void collect(TermsEnum termsEnum, int docId, int source) throws IOException {
+        boolean wanted = false;
+        for (Phrase phrase : phrases) {
+            if (phrase.mask(source) != 0) {
+                wanted = true;
+                break;
+            }
+        }
+        if (!wanted) {
+            return;
+        }
+        positionsEnum = termsEnum.postings(positionsEnum, PostingsEnum.POSITIONS);
+        if (positionsEnum == null) {
+            return;
+        }
+        if (docId < 0) {
+            if (positionsEnum.nextDoc() == DocIdSetIterator.NO_MORE_DOCS) {
+                return;
+            }
+        } else if (positionsEnum.advance(docId) != docId) {
+            return;
+        }
+        int freq = positionsEnum.freq();
+        termPositions = ArrayUtil.grow(termPositions, freq);
+        for (int i = 0; i < freq; i++) {
+            termPositions[i] = positionsEnum.nextPosition();
+        }
+        for (Phrase phrase : phrases) {
+            long mask = phrase.mask(source);
+            while (mask != 0) {
+                phrase.addPositions(Long.numberOfTrailingZeros(mask), termPositions, freq);
+                mask &= mask - 1;
+            }
+        }
+    }
+
+    /**
+     * Match the phrases against the collected positions and weigh the hits
+     * that are part of them.
+     */
+    public HitEnum wrap(HitEnum e) {
+        for (Phrase phrase : phrases) {
+            int startCount = phrase.match();
+            if (startCount > 0) {
+                e = new MatchedPhraseHitEnumWrapper(e, phrase.phrase, phrase.weight, phrase.starts, startCount);
+            }
+        }
+        return e;
+    }
+
+    private static final class Phrase {
+        private final int[][] phrase;
+        private final float weight;
+        private final PhraseMasks masks;
+        /**
+         * Positions of all the terms that can appear at each index in the
+         * phrase.
+         */
+        private final int[][] slotPositions;
+        private final int[] slotSizes;
+        private int[] starts;
+
+        Phrase(int[][] phrase, float weight) {
+            this.phrase = phrase;
+            this.weight = weight;
+            masks = new PhraseMasks(phrase);
+            slotPositions = new int[phrase.length][];
+            slotSizes = new int[phrase.length];
+        }
+
+        long mask(int source) {
+            return masks.mask(source);
+        }
+
+        void addPositions(int slot, int[] positions, int count) {
+            int size = slotSizes[slot];
+            if (slotPositions[slot] == null) {
+                slotPositions[slot] = new int[ArrayUtil.oversize(count, Integer.BYTES)];
+            } else {
+                slotPositions[slot] = ArrayUtil.grow(slotPositions[slot], size + count);
+            }
+            System.arraycopy(positions, 0, slotPositions[slot], size, count);
+            slotSizes[slot] = size + count;
+        }
+
+        /**
+         * Leapfrog over the positions of each slot looking for starts where
+         * every slot has a term at start + slot.
+         * @return the number of starts found
+         */
+        int match() {
+            for (int slot = 0; slot < phrase.length; slot++) {
+                if (slotSizes[slot] == 0) {
+                    return 0;
+                }
+                // Slots with more than one term or more than one phrase
+                // position get their positions out of order.
+                Arrays.sort(slotPositions[slot], 0, slotSizes[slot]);
+            }
+            int[] cursors = new int[phrase.length];
+            int startCount = 0;
+            int start = slotPositions[0][0];
+            while (true) {
+                boolean matched = true;
+                for (int slot = 0; slot < phrase.length; slot++) {
+                    int target = start + slot;
+                    int[] positions = slotPositions[slot];
+                    int cursor = cursors[slot];
+                    while (cursor < slotSizes[slot] && positions[cursor] < target) {
+                        cursor++;
+                    }
+                    cursors[slot] = cursor;
+                    if (cursor == slotSizes[slot]) {
+                        return startCount;
+                    }
+                    if (positions[cursor] > target) {
+                        start = positions[cursor] - slot;
+                        matched = false;
+                        break;
+                    }
+                }
+                if (matched) {
+                    if (starts == null) {
+                        starts = new int[slotSizes[0]];
+                    }
+                    starts[startCount++] = start;
+                    start++;
+                }
+            }
+        }
+    }
+}
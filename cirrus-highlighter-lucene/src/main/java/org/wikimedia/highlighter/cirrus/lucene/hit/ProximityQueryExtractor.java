@@ -0,0 +1,87 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Finds the outermost proximity queries, like span or interval queries, on a
+ * field and sorts the terms on the field into those inside proximity queries
+ * and those outside of them.
+ */
+final class ProximityQueryExtractor extends QueryVisitor {
+    private final String fieldName;
+    private final Predicate<Query> isProximity;
+    private final List<Query> proximityQueries;
+    private final Set<BytesRef> proximityTerms;
+    private final Set<BytesRef> otherTerms;
+    private final boolean inProximity;
+
+    /**
+     * @param isProximity is this query a proximity query on the field?
+     */
+    ProximityQueryExtractor(String fieldName, Predicate<Query> isProximity) {
+        this(fieldName, isProximity, new ArrayList<>(), new HashSet<>(), new HashSet<>(), false);
+    }
+
+    private ProximityQueryExtractor(String fieldName, Predicate<Query> isProximity, List<Query> proximityQueries,
+            Set<BytesRef> proximityTerms, Set<BytesRef> otherTerms, boolean inProximity) {
+        this.fieldName = fieldName;
+        this.isProximity = isProximity;
+        this.proximityQueries = proximityQueries;
+        this.proximityTerms = proximityTerms;
+        this.otherTerms = otherTerms;
+        this.inProximity = inProximity;
+    }
+
+    /**
+     * The outermost proximity queries found.
+     */
+    List<Query> proximityQueries() {
+        return proximityQueries;
+    }
+
+    /**
+     * The terms on the field that are only found inside proximity queries.
+     */
+    Set<BytesRef> proximityOnlyTerms() {
+        Set<BytesRef> proximityOnlyTerms = new HashSet<>(proximityTerms);
+        proximityOnlyTerms.removeAll(otherTerms);
+        return proximityOnlyTerms;
+    }
+
+    @Override
+    public QueryVisitor getSubVisitor(BooleanClause.Occur occur, Query parent) {
+        if (occur == BooleanClause.Occur.MUST_NOT) {
+            return QueryVisitor.EMPTY_VISITOR;
+        }
+        if (!inProximity && isProximity.test(parent)) {
+            proximityQueries.add(parent);
+            return new ProximityQueryExtractor(fieldName, isProximity, proximityQueries, proximityTerms,
+                    otherTerms, true);
+        }
+        return this;
+    }
+
+    @Override
+    public void consumeTerms(Query query, Term... terms) {
+        boolean proximity = inProximity;
+        if (!proximity && isProximity.test(query)) {
+            proximityQueries.add(query);
+            proximity = true;
+        }
+        for (Term term : terms) {
+            if (fieldName.equals(term.field())) {
+                (proximity ? proximityTerms : otherTerms).add(term.bytes());
+            }
+        }
+    }
+}
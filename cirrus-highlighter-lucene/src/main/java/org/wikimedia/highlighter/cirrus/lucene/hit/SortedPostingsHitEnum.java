@@ -0,0 +1,214 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.wikimedia.highlighter.cirrus.lucene.WrappedExceptionFromLucene;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.AbstractHitEnum;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Hit enum that drains {@link PostingsEnum}s positioned on a doc into
+ * primitive arrays and replays them in position order. It sorts all the hits
+ * once with a radix sort rather than merging one enum per term in a priority
+ * queue, which is cheaper when many terms match a few times each. It also
+ * frees the {@link PostingsEnum}s as soon as they are drained so they can be
+ * reused.
+ */
+@SuppressFBWarnings(
+        value = "EXS_EXCEPTION_SOFTENING_NO_CHECKED",
+        justification = "The contract of AbstractHitEnum makes sense without exposing IOException")
+public class SortedPostingsHitEnum extends AbstractHitEnum {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+    private int[] positions = new int[16];
+    private int[] startOffsets = new int[16];
+    private int[] endOffsets = new int[16];
+    private int[] terms = new int[16];
+    private float[] queryWeights = new float[4];
+    private float[] corpusWeights = new float[4];
+    private int[] sources = new int[4];
+    private int termCount;
+    private int hitCount;
+    /**
+     * Order in which to replay the hits. Null until the first call to next.
+     */
+    private int[] order;
+    private int current = -1;
+    private int hit;
+
+    /**
+     * Drain all positions from dp which must be positioned on the doc.
+     */
+    public void add(PostingsEnum dp, float queryWeight, float corpusWeight, int source) {
+        int term = addTerm(queryWeight, corpusWeight, source);
+        try {
+            int freq = dp.freq();
+            grow(hitCount + freq);
+            for (int i = 0; i < freq; i++) {
+                positions[hitCount] = dp.nextPosition();
+                startOffsets[hitCount] = dp.startOffset();
+                endOffsets[hitCount] = dp.endOffset();
+                assert startOffsets[hitCount] < endOffsets[hitCount];
+                terms[hitCount] = term;
+                hitCount++;
+            }
+        } catch (IOException e) {
+            throw new WrappedExceptionFromLucene(e);
+        }
+    }
+
+    /**
+     * Drain all hits from e. All hits from e are assumed to come from the same
+     * term so its weights and source are taken from its first hit.
+     */
+    public void add(HitEnum e) {
+        if (!e.next()) {
+            return;
+        }
+        int term = addTerm(e.queryWeight(), e.corpusWeight(), e.source());
+        do {
+            grow(hitCount + 1);
+            positions[hitCount] = e.position();
+            startOffsets[hitCount] = e.startOffset();
+            endOffsets[hitCount] = e.endOffset();
+            terms[hitCount] = term;
+            hitCount++;
+        } while (e.next());
+    }
+
+    private int addTerm(float queryWeight, float corpusWeight, int source) {
+        queryWeights = ArrayUtil.grow(queryWeights, termCount + 1);
+        corpusWeights = ArrayUtil.grow(corpusWeights, termCount + 1);
+        sources = ArrayUtil.grow(sources, termCount + 1);
+        queryWeights[termCount] = queryWeight;
+        corpusWeights[termCount] = corpusWeight;
+        sources[termCount] = source;
+        return termCount++;
+    }
+
+    private void grow(int minSize) {
+        positions = ArrayUtil.grow(positions, minSize);
+        startOffsets = ArrayUtil.grow(startOffsets, minSize);
+        endOffsets = ArrayUtil.grow(endOffsets, minSize);
+        terms = ArrayUtil.grow(terms, minSize);
+    }
+
+    @Override
+    public boolean next() {
+        if (order == null) {
+            order = sortByPosition();
+        }
+        current++;
+        if (current >= hitCount) {
+            current = hitCount;
+            return false;
+        }
+        hit = order[current];
+        return true;
+    }
+
+    /**
+     * Binary searches the sorted hits for the first one at least target.
+     */
+    @Override
+    public boolean advanceToPosition(int target) {
+        if (order == null) {
+            order = sortByPosition();
+        }
+        int low = current + 1;
+        int high = hitCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[order[mid]] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        current = low;
+        if (current >= hitCount) {
+            current = hitCount;
+            return false;
+        }
+        hit = order[current];
+        return true;
+    }
+
+    /**
+     * Stable LSD radix sort of the hit indexes by position. Stability keeps
+     * hits on the same position in the order their terms were added. Only
+     * sorts on as many bytes as the largest position needs.
+     */
+    private int[] sortByPosition() {
+        int[] sorted = new int[hitCount];
+        int maxPosition = 0;
+        for (int i = 0; i < hitCount; i++) {
+            sorted[i] = i;
+            maxPosition = Math.max(maxPosition, positions[i]);
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(maxPosition);
+        int[] scratch = new int[hitCount];
+        int[] histogram = new int[1 << RADIX_BITS];
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < hitCount; i++) {
+                histogram[(positions[sorted[i]] >>> shift) & RADIX_MASK]++;
+            }
+            int sum = 0;
+            for (int b = 0; b < histogram.length; b++) {
+                int count = histogram[b];
+                histogram[b] = sum;
+                sum += count;
+            }
+            for (int i = 0; i < hitCount; i++) {
+                scratch[histogram[(positions[sorted[i]] >>> shift) & RADIX_MASK]++] = sorted[i];
+            }
+            int[] swap = sorted;
+            sorted = scratch;
+            scratch = swap;
+        }
+        return sorted;
+    }
+
+    @Override
+    public int position() {
+        return positions[hit];
+    }
+
+    @Override
+    public int startOffset() {
+        return startOffsets[hit];
+    }
+
+    @Override
+    public int endOffset() {
+        return endOffsets[hit];
+    }
+
+    @Override
+    public float queryWeight() {
+        return queryWeights[terms[hit]];
+    }
+
+    @Override
+    public float corpusWeight() {
+        return corpusWeights[terms[hit]];
+    }
+
+    @Override
+    public int source() {
+        return sources[terms[hit]];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "sorted(%s terms, %s hits)", termCount, hitCount);
+    }
+}
@@ -0,0 +1,136 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.EmptyHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+
+/**
+ * Hit enum that only returns the terms inside spans that a span query
+ * accepts. The spans for a doc are collected up front, their terms sorted by
+ * position, and duplicates from overlapping spans dropped.
+ */
+public class SpansHitEnum extends CollectedTermsHitEnum {
+    /**
+     * Finds the span queries on a field and builds the weights to run them.
+     * Thread safe once built so it can be reused for every doc in a search.
+     */
+    public static final class Source {
+        private final String fieldName;
+        private final List<SpanWeight> weights;
+        private final CompiledAutomaton otherTerms;
+
+        /**
+         * @param acceptableWithout all the terms that the query could
+         *            highlight except the ones passed to it
+         */
+        public static Source build(IndexSearcher searcher, Query query, String fieldName,
+                Function<Collection<BytesRef>, CompiledAutomaton> acceptableWithout) throws IOException {
+            ProximityQueryExtractor extractor = new ProximityQueryExtractor(fieldName,
+                    q -> q instanceof SpanQuery && fieldName.equals(((SpanQuery) q).getField()));
+            query.visit(extractor);
+            List<SpanWeight> weights = new ArrayList<>(extractor.proximityQueries().size());
+            for (Query spanQuery : extractor.proximityQueries()) {
+                Query rewritten = searcher.rewrite(spanQuery);
+                if (rewritten instanceof SpanQuery) {
+                    weights.add(((SpanQuery) rewritten).createWeight(searcher, ScoreMode.COMPLETE_NO_SCORES, 1));
+                }
+            }
+            return new Source(fieldName, weights, acceptableWithout.apply(extractor.proximityOnlyTerms()));
+        }
+
+        private Source(String fieldName, List<SpanWeight> weights, CompiledAutomaton otherTerms) {
+            this.fieldName = fieldName;
+            this.weights = weights;
+            this.otherTerms = otherTerms;
+        }
+
+        /**
+         * Terms the query could highlight that aren't only in span queries.
+         * Hits on these come from the postings as usual.
+         */
+        public CompiledAutomaton otherTerms() {
+            return otherTerms;
+        }
+
+        /**
+         * Build the hits inside accepted spans on a doc.
+         */
+        public HitEnum build(LeafReaderContext leaf, int docId, TermWeigher<BytesRef> queryWeigher,
+                TermWeigher<BytesRef> corpusWeigher, TermSourceFinder<BytesRef> sourceFinder) throws IOException {
+            SpansHitEnum e = null;
+            for (SpanWeight weight : weights) {
+                Spans spans = weight.getSpans(leaf, SpanWeight.Postings.OFFSETS);
+                if (spans == null || spans.advance(docId) != docId) {
+                    continue;
+                }
+                if (e == null) {
+                    e = new SpansHitEnum(queryWeigher, corpusWeigher, sourceFinder);
+                }
+                while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+                    spans.collect(e.collector);
+                }
+            }
+            if (e == null) {
+                return EmptyHitEnum.INSTANCE;
+            }
+            e.sort();
+            return e;
+        }
+
+        /**
+         * Build the hits inside accepted spans on a doc merged with the hits
+         * on every other term the query could highlight.
+         */
+        public HitEnum build(LeafReaderContext leaf, int docId, HitEnum otherHits,
+                TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+                TermSourceFinder<BytesRef> sourceFinder) throws IOException {
+            return merge(build(leaf, docId, queryWeigher, corpusWeigher, sourceFinder), otherHits);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "spans(%s, %s)", fieldName, weights);
+        }
+    }
+
+    private final SpanCollector collector = new SpanCollector() {
+        @Override
+        public void collectLeaf(PostingsEnum postings, int position, Term term) throws IOException {
+            add(position, postings.startOffset(), postings.endOffset(), term.bytes());
+        }
+
+        @Override
+        public void reset() {
+        }
+    };
+
+    private SpansHitEnum(TermWeigher<BytesRef> queryWeigher, TermWeigher<BytesRef> corpusWeigher,
+            TermSourceFinder<BytesRef> sourceFinder) {
+        super(queryWeigher, corpusWeigher, sourceFinder);
+    }
+
+    @Override
+    public String toString() {
+        return "spans(" + describeHits() + ")";
+    }
+}
@@ -2,6 +2,8 @@ package org.wikimedia.highlighter.cirrus.lucene.hit.weight;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,8 +18,11 @@ import org.apache.lucene.util.automaton.ByteRunAutomaton;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
 import org.apache.lucene.util.automaton.Operations;
 import org.wikimedia.highlighter.cirrus.lucene.QueryFlattener;
+import org.wikimedia.highlighter.cirrus.lucene.hit.PostingsPhraseMatcher;
 import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.ExactPhraseHitEnumWrapper;
 import org.wikimedia.search.highlighter.cirrus.hit.PhraseHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.PhraseMasks;
 import org.wikimedia.search.highlighter.cirrus.hit.TermSourceFinder;
 import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
 
@@ -30,11 +35,13 @@ import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
 public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinder<BytesRef> {
     private final List<AutomatonSourceInfo> automata = new ArrayList<>();
     private final List<BytesRef> terms = new ArrayList<>();
+    private final List<BytesRef> multiWordTerms = new ArrayList<>();
     private final TermInfos termInfos;
     private final float maxTermWeight;
     private Map<String, List<PhraseInfo>> phrases;
     private Map<PhraseKey, PhraseInfo> allPhrases;
     private CompiledAutomaton acceptable;
+    private CompiledAutomaton acceptableMultiWord;
 
     public BasicQueryWeigher(IndexReader reader, Query query) {
         this(new QueryFlattener(1000, false, true), new HashMapTermInfos(), reader, query);
@@ -67,6 +74,15 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
      * Wrap the hit enum if required to support things like phrases.
      */
     public HitEnum wrap(String field, HitEnum e) {
+        return wrap(field, e, true);
+    }
+
+    /**
+     * Wrap the hit enum if required to support things like phrases.
+     * @param exactPhrases should exact phrases be matched? Pass false if they
+     *            were already matched by the {@link #exactPhraseMatcher}.
+     */
+    public HitEnum wrap(String field, HitEnum e, boolean exactPhrases) {
         if (phrases == null) {
             return e;
         }
@@ -75,11 +91,60 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
             return e;
         }
         for (PhraseInfo phrase: phraseList) {
-            e = new PhraseHitEnumWrapper(e, phrase.phrase, phrase.weight, phrase.slop);
+            if (phrase.isExact()) {
+                if (exactPhrases) {
+                    e = new ExactPhraseHitEnumWrapper(e, phrase.phrase, phrase.weight);
+                }
+            } else {
+                e = new PhraseHitEnumWrapper(e, phrase.phrase, phrase.weight, phrase.slop);
+            }
         }
         return e;
     }
 
+    /**
+     * Build a matcher for the exact phrases on field that finds them on the
+     * postings. Returns null if there aren't any exact phrases on the field.
+     */
+    public PostingsPhraseMatcher exactPhraseMatcher(String field) {
+        if (phrases == null) {
+            return null;
+        }
+        List<PhraseInfo> phraseList = phrases.get(field);
+        if (phraseList == null) {
+            return null;
+        }
+        PostingsPhraseMatcher matcher = new PostingsPhraseMatcher();
+        for (PhraseInfo phrase : phraseList) {
+            if (phrase.isExact()) {
+                matcher.add(phrase.phrase, phrase.weight);
+            }
+        }
+        return matcher.isEmpty() ? null : matcher;
+    }
+
+    /**
+     * Weight of the best phrase on field whose terms have these sources or 0
+     * if there isn't one. Ignores slop because it is for phrases that have
+     * already been matched.
+     */
+    public float phraseWeight(String field, int[] sources) {
+        if (phrases == null) {
+            return 0;
+        }
+        List<PhraseInfo> phraseList = phrases.get(field);
+        if (phraseList == null) {
+            return 0;
+        }
+        float weight = 0;
+        for (PhraseInfo phrase : phraseList) {
+            if (phrase.matches(sources)) {
+                weight = Math.max(weight, phrase.weight);
+            }
+        }
+        return weight;
+    }
+
     /**
      * The maximum weight of a single term without phrase queries.
      */
@@ -87,6 +152,33 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
         return maxTermWeight;
     }
 
+    /**
+     * Are there any terms with more than one word in them? Phrases queried
+     * against index_phrases shingle fields are made of these.
+     */
+    public boolean hasMultiWordTerms() {
+        return !multiWordTerms.isEmpty();
+    }
+
+    /**
+     * Matches just the terms with more than one word in them. Use this rather
+     * than {@link #acceptableTerms()} on index_phrases shingle fields because
+     * the automata from prefix, wildcard, regexp and fuzzy queries match
+     * shingles that aren't in any phrase.
+     */
+    public CompiledAutomaton acceptableMultiWordTerms() {
+        if (acceptableMultiWord == null) {
+            if (multiWordTerms.isEmpty()) {
+                acceptableMultiWord = new CompiledAutomaton(Automata.makeEmpty());
+            } else {
+                // Sort the terms in UTF-8 order.
+                CollectionUtil.timSort(multiWordTerms);
+                acceptableMultiWord = new CompiledAutomaton(Automata.makeStringUnion(multiWordTerms));
+            }
+        }
+        return acceptableMultiWord;
+    }
+
     /**
      * Are there phrases on the provided field?
      */
@@ -100,24 +192,70 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
 
     public CompiledAutomaton acceptableTerms() {
         if (acceptable == null) {
-            acceptable = new CompiledAutomaton(buildAcceptableTerms());
+            acceptable = new CompiledAutomaton(buildAcceptableTerms(Collections.emptySet()));
         }
         return acceptable;
     }
 
-    private Automaton buildAcceptableTerms() {
-        if (automata.isEmpty()) {
-            if (terms.isEmpty()) {
-                return Automata.makeEmpty();
+    /**
+     * Prefixes from prefix queries. Each one's automaton in
+     * {@link #acceptableTerms()} matches every term starting with it.
+     */
+    public List<BytesRef> prefixes() {
+        List<BytesRef> prefixes = new ArrayList<>();
+        for (AutomatonSourceInfo info : automata) {
+            if (info.prefix != null) {
+                prefixes.add(info.prefix);
             }
-            return buildTermsAutomata();
         }
-        if (automata.size() == 1 && terms.isEmpty()) {
-            return automata.get(0).automaton;
+        return prefixes;
+    }
+
+    /**
+     * Like {@link #acceptableTerms()} but without the automata of some
+     * prefixes, for when the terms they match are found some other way.
+     * Builds a new automaton every time so callers should hold on to it.
+     */
+    public CompiledAutomaton acceptableTermsWithoutPrefixes(Collection<BytesRef> skipped) {
+        if (skipped.isEmpty()) {
+            return acceptableTerms();
+        }
+        return new CompiledAutomaton(buildAcceptableTerms(skipped));
+    }
+
+    /**
+     * Like {@link #acceptableTerms()} but without some terms, for when hits
+     * on them are found some other way. Builds a new automaton every time so
+     * callers should hold on to it.
+     */
+    public CompiledAutomaton acceptableTermsWithout(Collection<BytesRef> skipped) {
+        if (skipped.isEmpty()) {
+            return acceptableTerms();
         }
+        List<BytesRef> sorted = new ArrayList<>(skipped);
+        // Sort the terms in UTF-8 order.
+        CollectionUtil.timSort(sorted);
+        // Both sides are on code points so the difference compiles like the
+        // full automaton does.
+        return new CompiledAutomaton(Operations.minus(buildAcceptableTerms(Collections.emptySet()),
+                Automata.makeStringUnion(sorted), Operations.DEFAULT_DETERMINIZE_WORK_LIMIT));
+    }
+
+    private Automaton buildAcceptableTerms(Collection<BytesRef> skippedPrefixes) {
         List<Automaton> all = new ArrayList<>(automata.size() + 1);
         for (AutomatonSourceInfo info : automata) {
-            all.add(info.automaton);
+            if (info.prefix == null || !skippedPrefixes.contains(info.prefix)) {
+                all.add(info.automaton);
+            }
+        }
+        if (all.isEmpty()) {
+            if (terms.isEmpty()) {
+                return Automata.makeEmpty();
+            }
+            return buildTermsAutomata();
+        }
+        if (all.size() == 1 && terms.isEmpty()) {
+            return all.get(0);
         }
         if (!terms.isEmpty()) {
             all.add(buildTermsAutomata());
@@ -136,13 +274,18 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
         if (info != null) {
             return info;
         }
+        // Automata can overlap, like those from prefix queries on "a" and
+        // "ab", so weigh terms by the best one that matches.
+        AutomatonSourceInfo best = null;
         for (AutomatonSourceInfo automatonInfo : automata) {
-            if (automatonInfo.matches(term)) {
-                termInfos.put(term, automatonInfo);
-                return automatonInfo;
+            if ((best == null || automatonInfo.weight > best.weight) && automatonInfo.matches(term)) {
+                best = automatonInfo;
             }
         }
-        return null;
+        if (best != null) {
+            termInfos.put(term, best);
+        }
+        return best;
     }
 
     public static class SourceInfo {
@@ -153,6 +296,11 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
     private class AutomatonSourceInfo extends SourceInfo {
         public final Automaton automaton;
         public ByteRunAutomaton compiled;
+        /**
+         * The prefix if the automaton came from a prefix query, null
+         * otherwise.
+         */
+        public BytesRef prefix;
 
         AutomatonSourceInfo(Automaton automaton) {
             this.automaton = automaton;
@@ -200,6 +348,22 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
             }
         }
 
+        private boolean isExact() {
+            return slop == 0 && phrase.length <= PhraseMasks.MAX_PHRASE_LENGTH;
+        }
+
+        private boolean matches(int[] sources) {
+            if (sources.length != phrase.length) {
+                return false;
+            }
+            for (int p = 0; p < phrase.length; p++) {
+                if (Arrays.binarySearch(phrase[p], sources[p]) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         @Override
         public String toString() {
             StringBuilder b = new StringBuilder();
@@ -232,7 +396,11 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
                 info.source = source;
                 info.weight = boost;
                 termInfos.put(term, info);
-                terms.add(BytesRef.deepCopyOf(term));
+                BytesRef copy = BytesRef.deepCopyOf(term);
+                terms.add(copy);
+                if (containsSpace(copy)) {
+                    multiWordTerms.add(copy);
+                }
             } else {
                 /*
                  * If both terms can't be traced back to the same source we
@@ -264,6 +432,14 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
             }
         }
 
+        @Override
+        public void flattenedPrefix(BytesRef prefix, int source) {
+            AutomatonSourceInfo info = automata.get(automata.size() - 1);
+            if (info.source == source) {
+                info.prefix = BytesRef.deepCopyOf(prefix);
+            }
+        }
+
         @Override
         public void startPhrase(int positionCount, float boost) {
             if (positionCount < 2) {
@@ -329,6 +505,15 @@ public class BasicQueryWeigher implements TermWeigher<BytesRef>, TermSourceFinde
         }
     }
 
+    private static boolean containsSpace(BytesRef term) {
+        for (int i = term.offset; i < term.offset + term.length; i++) {
+            if (term.bytes[i] == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static class PhraseKey {
         private final int[][] phrase;
 
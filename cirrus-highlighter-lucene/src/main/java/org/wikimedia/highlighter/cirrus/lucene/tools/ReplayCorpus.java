@@ -0,0 +1,162 @@
+package org.wikimedia.highlighter.cirrus.lucene.tools;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory mapped file of captured highlight requests for
+ * {@link ReplayLoadTester}. The file is a sequence of records, each three
+ * length prefixed UTF-8 strings:
+ * <ol>
+ * <li>the query: whitespace separated terms and double quoted phrases, each
+ * optionally followed by <code>^weight</code>
+ * <li>the source of the field to highlight
+ * <li>the options: one <code>key=value</code> per line
+ * </ol>
+ * Lengths are big endian ints, the format written by
+ * {@link DataOutputStream#writeInt(int)}. Records are only decoded when they
+ * are read so the corpus can be much larger than the heap.
+ */
+public final class ReplayCorpus {
+    /**
+     * A single captured request.
+     */
+    public static final class Record {
+        private final String query;
+        private final String source;
+        private final Map<String, String> options;
+
+        public Record(String query, String source, Map<String, String> options) {
+            this.query = query;
+            this.source = source;
+            this.options = options;
+        }
+
+        public String query() {
+            return query;
+        }
+
+        public String source() {
+            return source;
+        }
+
+        public Map<String, String> options() {
+            return options;
+        }
+    }
+
+    /**
+     * Memory map a corpus.
+     */
+    public static ReplayCorpus open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Corpus is too large to map:  " + channel.size() + " bytes");
+            }
+            return new ReplayCorpus(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Append a record to a corpus being written.
+     */
+    public static void write(OutputStream out, Record record) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        writeString(data, record.query());
+        writeString(data, record.source());
+        StringBuilder options = new StringBuilder();
+        for (Map.Entry<String, String> option : record.options().entrySet()) {
+            options.append(option.getKey()).append('=').append(option.getValue()).append('\n');
+        }
+        writeString(data, options.toString());
+        data.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private final MappedByteBuffer buffer;
+    /**
+     * Offset of the start of each record.
+     */
+    private final int[] offsets;
+
+    private ReplayCorpus(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        int[] offsets = new int[16];
+        int count = 0;
+        int offset = 0;
+        while (offset < buffer.limit()) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = offset;
+            for (int field = 0; field < 3; field++) {
+                if (offset + Integer.BYTES > buffer.limit()) {
+                    throw new IllegalArgumentException("Corpus is truncated");
+                }
+                offset += Integer.BYTES + buffer.getInt(offset);
+            }
+        }
+        if (offset != buffer.limit()) {
+            throw new IllegalArgumentException("Corpus is truncated");
+        }
+        this.offsets = Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Number of records in the corpus.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Decode a record. Safe to call from many threads at once.
+     */
+    public Record get(int index) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(offsets[index]);
+        String query = readString(b);
+        String source = readString(b);
+        String options = readString(b);
+        return new Record(query, source, parseOptions(options));
+    }
+
+    private static String readString(ByteBuffer b) {
+        int length = b.getInt();
+        byte[] bytes = new byte[length];
+        b.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static Map<String, String> parseOptions(String options) {
+        if (options.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String line : options.split("\n")) {
+            int equals = line.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Invalid option:  " + line);
+            }
+            result.put(line.substring(0, equals), line.substring(equals + 1));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,385 @@
+package org.wikimedia.highlighter.cirrus.lucene.tools;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.wikimedia.highlighter.cirrus.lucene.QueryFlattener;
+import org.wikimedia.highlighter.cirrus.lucene.hit.PostingsHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.PostingsPhraseMatcher;
+import org.wikimedia.highlighter.cirrus.lucene.hit.weight.BasicQueryWeigher;
+import org.wikimedia.highlighter.cirrus.lucene.hit.weight.DefaultSimilarityTermWeigher;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.Segmenter;
+import org.wikimedia.search.highlighter.cirrus.Snippet;
+import org.wikimedia.search.highlighter.cirrus.SnippetChooser;
+import org.wikimedia.search.highlighter.cirrus.hit.MergingHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.OverlapMergingHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.RegexHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.TermWeigher;
+import org.wikimedia.search.highlighter.cirrus.hit.WeightFilteredHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantTermWeigher;
+import org.wikimedia.search.highlighter.cirrus.snippet.BasicScoreBasedSnippetChooser;
+import org.wikimedia.search.highlighter.cirrus.snippet.BasicSourceOrderSnippetChooser;
+import org.wikimedia.search.highlighter.cirrus.snippet.CharScanningSegmenter;
+import org.wikimedia.search.highlighter.cirrus.snippet.ExponentialSnippetWeigher;
+import org.wikimedia.search.highlighter.cirrus.snippet.Utf8SnippetFormatter;
+import org.wikimedia.search.highlighter.cirrus.source.CharSequenceSourceExtracter;
+
+/**
+ * Replays a {@link ReplayCorpus} through the highlighting pipeline as fast as
+ * it can on some threads and reports throughput, latency percentiles, and
+ * allocation. Each record's source is indexed into a {@link MemoryIndex} with
+ * offsets in the postings and its query is flattened and weighed by
+ * {@link BasicQueryWeigher}, so hits are found on the postings and phrases are
+ * matched just like the plugin's <code>postings</code> hit source does.
+ * Indexing the source and parsing the query aren't part of highlighting so
+ * they aren't measured. Usage:
+ * <pre>
+ * java -cp cirrus-highlighter-lucene.jar:lucene-core.jar:lucene-queries.jar:lucene-memory.jar:cirrus-highlighter-core.jar \
+ *     org.wikimedia.highlighter.cirrus.lucene.tools.ReplayLoadTester corpus [threads] [rounds] [warmup_rounds]
+ * </pre>
+ * Supported options are <code>regex</code>, <code>fragment_size</code>,
+ * <code>boundary_max_scan</code>, <code>number_of_fragments</code>,
+ * <code>order</code>, <code>top_scoring</code>, <code>pre_tag</code>, and
+ * <code>post_tag</code> and mean what they mean to the plugin. Snippets are
+ * formatted straight to UTF-8 from views of the source like the plugin does
+ * by default.
+ * <p>
+ * It only replays the plugin's most common path so its numbers don't cover:
+ * <ul>
+ * <li>hit sources other than postings: term vectors, the offsets index,
+ * reanalyzing, matches, spans, and intervals
+ * <li>looking prefixes and phrases up on <code>index_prefixes</code> and
+ * <code>index_phrases</code> sub fields
+ * <li>multi-valued fields, <code>matched_fields</code>, and
+ * <code>fetch_fields</code>
+ * <li>lucene flavored and case insensitive regexes, and scanning long values
+ * for regexes in parallel
+ * <li>the <code>sentence</code> and <code>none</code> fragmenters,
+ * <code>boost_before</code>, <code>max_hits_per_doc</code>,
+ * <code>highlight_timeout</code>, and custom snippet weighers
+ * <li>the node caches
+ * </ul>
+ */
+public final class ReplayLoadTester {
+    /**
+     * Name of the field sources are indexed into.
+     */
+    private static final String FIELD = "field";
+    /**
+     * Matches a quoted phrase or a term in the query, each with an optional
+     * weight.
+     */
+    private static final Pattern QUERY_PART = Pattern.compile("\"([^\"]*)\"(?:\\^(\\S+))?|([^\\s\"]+)");
+    private static final Analyzer ANALYZER = new StandardAnalyzer();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: ReplayLoadTester corpus [threads] [rounds] [warmup_rounds]");
+        }
+        ReplayCorpus corpus = ReplayCorpus.open(Paths.get(args[0]));
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int warmupRounds = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        ReplayLoadTester tester = new ReplayLoadTester(corpus, threads);
+        System.out.printf(Locale.ENGLISH, "Replaying %s records on %s threads%n", corpus.size(), threads);
+        if (warmupRounds > 0) {
+            System.out.println("Warmup:  " + tester.run(warmupRounds));
+        }
+        System.out.println("Result:  " + tester.run(rounds));
+    }
+
+    /**
+     * Index and highlight a single record.
+     *
+     * @return the formatted snippets
+     */
+    public static List<String> highlight(ReplayCorpus.Record record) throws IOException {
+        List<byte[]> snippets = highlight(record, index(record.source()), parseQuery(record.query()));
+        List<String> result = new ArrayList<>(snippets.size());
+        for (byte[] snippet : snippets) {
+            result.add(new String(snippet, UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * Index a source as the only document of a reader.
+     */
+    public static IndexReader index(String source) {
+        MemoryIndex index = new MemoryIndex(true);
+        index.addField(FIELD, source, ANALYZER);
+        return index.createSearcher().getIndexReader();
+    }
+
+    /**
+     * Parse a query in the corpus' format into the queries that match and
+     * match_phrase would build.
+     */
+    public static Query parseQuery(String query) {
+        QueryBuilder builder = new QueryBuilder(ANALYZER);
+        BooleanQuery.Builder bool = new BooleanQuery.Builder();
+        Matcher m = QUERY_PART.matcher(query);
+        while (m.find()) {
+            Query part;
+            float weight = 1;
+            if (m.group(1) != null) {
+                part = builder.createPhraseQuery(FIELD, m.group(1));
+                if (m.group(2) != null) {
+                    weight = Float.parseFloat(m.group(2));
+                }
+            } else {
+                String term = m.group(3);
+                int caret = term.lastIndexOf('^');
+                if (caret > 0) {
+                    weight = Float.parseFloat(term.substring(caret + 1));
+                    term = term.substring(0, caret);
+                }
+                part = builder.createBooleanQuery(FIELD, term);
+            }
+            if (part == null) {
+                // Nothing left after analysis
+                continue;
+            }
+            bool.add(weight == 1 ? part : new BoostQuery(part, weight), BooleanClause.Occur.SHOULD);
+        }
+        return bool.build();
+    }
+
+    /**
+     * Highlight a record that has already been indexed into reader. This is
+     * the part that is measured.
+     *
+     * @return the formatted snippets as UTF-8
+     */
+    public static List<byte[]> highlight(ReplayCorpus.Record record, IndexReader reader, Query query)
+            throws IOException {
+        String source = record.source();
+        Map<String, String> options = record.options();
+        boolean scoreMatters = "score".equals(options.get("order")) || Boolean.parseBoolean(options.get("top_scoring"));
+
+        BasicQueryWeigher weigher = new BasicQueryWeigher(new QueryFlattener(1000, false, true),
+                new BasicQueryWeigher.HashMapTermInfos(), reader, query);
+        TermWeigher<BytesRef> corpusWeigher = scoreMatters && !weigher.singleTerm()
+                ? new DefaultSimilarityTermWeigher(reader, FIELD) : new ConstantTermWeigher<>();
+        PostingsPhraseMatcher phraseMatcher = weigher.exactPhraseMatcher(FIELD);
+        HitEnum e = PostingsHitEnum.fromPostings(reader, 0, FIELD, weigher.acceptableTerms(), weigher,
+                corpusWeigher, weigher, PostingsHitEnum.DEFAULT_MAX_MERGED_TERMS, phraseMatcher);
+        e = weigher.wrap(FIELD, e, phraseMatcher == null);
+        if (!scoreMatters) {
+            e = new WeightFilteredHitEnumWrapper(e, 0f);
+        }
+        String regex = options.get("regex");
+        if (regex != null) {
+            e = new MergingHitEnum(Arrays.asList(e, new RegexHitEnum(Pattern.compile(regex).matcher(source))),
+                    HitEnum.LessThans.OFFSETS);
+        }
+        e = new OverlapMergingHitEnumWrapper(e);
+
+        Segmenter segmenter = new CharScanningSegmenter(source, intOption(options, "fragment_size", 100),
+                intOption(options, "boundary_max_scan", 20));
+        SnippetChooser chooser;
+        if ("score".equals(options.get("order"))) {
+            chooser = new BasicScoreBasedSnippetChooser(true, new ExponentialSnippetWeigher(1.1f));
+        } else if (scoreMatters) {
+            chooser = new BasicScoreBasedSnippetChooser(false, new ExponentialSnippetWeigher(1.1f));
+        } else {
+            chooser = new BasicSourceOrderSnippetChooser();
+        }
+        List<Snippet> snippets = chooser.choose(segmenter, e, intOption(options, "number_of_fragments", 1));
+
+        Utf8SnippetFormatter formatter = new Utf8SnippetFormatter(new CharSequenceSourceExtracter(source),
+                options.getOrDefault("pre_tag", "<em>"), options.getOrDefault("post_tag", "</em>"));
+        List<byte[]> result = new ArrayList<>(snippets.size());
+        for (Snippet snippet : snippets) {
+            result.add(formatter.formatBytes(snippet));
+        }
+        return result;
+    }
+
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private final ReplayCorpus corpus;
+    private final int threads;
+
+    public ReplayLoadTester(ReplayCorpus corpus, int threads) {
+        this.corpus = corpus;
+        this.threads = threads;
+    }
+
+    /**
+     * Replay every record rounds times spread across all the threads.
+     */
+    public Result run(int rounds) throws InterruptedException {
+        int total = corpus.size() * rounds;
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Worker[] workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(next, total, failure);
+            running[t] = new Thread(workers[t], "replay-" + t);
+            running[t].start();
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw new RuntimeException("Replay failed", failure.get());
+        }
+
+        long[] latencies = new long[total];
+        int count = 0;
+        long allocated = 0;
+        long snippetBytes = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, count, worker.count);
+            count += worker.count;
+            allocated = worker.allocated < 0 || allocated < 0 ? -1 : allocated + worker.allocated;
+            snippetBytes += worker.snippetBytes;
+        }
+        Arrays.sort(latencies, 0, count);
+        return new Result(count, elapsed, latencies, allocated, snippetBytes);
+    }
+
+    private final class Worker implements Runnable {
+        private final AtomicInteger next;
+        private final int total;
+        private final AtomicReference<Throwable> failure;
+        private long[] latencies = new long[64];
+        private int count;
+        private long allocated;
+        private long snippetBytes;
+
+        private Worker(AtomicInteger next, int total, AtomicReference<Throwable> failure) {
+            this.next = next;
+            this.total = total;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+                com.sun.management.ThreadMXBean allocationBean = null;
+                if (threadBean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+                    allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+                } else {
+                    allocated = -1;
+                }
+                long threadId = Thread.currentThread().getId();
+                int i;
+                while ((i = next.getAndIncrement()) < total && failure.get() == null) {
+                    // Decoding the record, indexing it, and parsing its query
+                    // aren't part of highlighting so they aren't measured.
+                    ReplayCorpus.Record record = corpus.get(i % corpus.size());
+                    IndexReader reader = index(record.source());
+                    Query query = parseQuery(record.query());
+                    long allocatedBefore = allocationBean == null ? 0 : allocationBean.getThreadAllocatedBytes(threadId);
+                    long start = System.nanoTime();
+                    List<byte[]> snippets = highlight(record, reader, query);
+                    long took = System.nanoTime() - start;
+                    if (allocationBean != null) {
+                        allocated += allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                    }
+                    for (byte[] snippet : snippets) {
+                        snippetBytes += snippet.length;
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = took;
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }
+    }
+
+    /**
+     * The result of a run.
+     */
+    public static final class Result {
+        private final int requests;
+        private final long elapsedNanos;
+        private final long[] sortedLatencies;
+        private final long allocatedBytes;
+        private final long snippetBytes;
+
+        private Result(int requests, long elapsedNanos, long[] sortedLatencies, long allocatedBytes, long snippetBytes) {
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = sortedLatencies;
+            this.allocatedBytes = allocatedBytes;
+            this.snippetBytes = snippetBytes;
+        }
+
+        /**
+         * Requests per second across all threads.
+         */
+        public double throughput() {
+            return requests / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Latency of a single request at some percentile, in nanoseconds.
+         */
+        public long latency(double percentile) {
+            if (requests == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * requests) - 1;
+            return sortedLatencies[Math.max(0, Math.min(requests - 1, index))];
+        }
+
+        /**
+         * Bytes allocated per second while highlighting or -1 if the JVM
+         * can't measure it.
+         */
+        public double allocationRate() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                    "%s requests in %.2fs, %.1f req/s, latency p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus, "
+                            + "allocation %s, %s snippet bytes",
+                    requests, elapsedNanos / 1e9, throughput(), latency(50) / 1e3, latency(90) / 1e3,
+                    latency(99) / 1e3, latency(100) / 1e3,
+                    allocatedBytes < 0 ? "unavailable"
+                            : String.format(Locale.ENGLISH, "%.1fMB/s %.0fB/req", allocationRate() / 1e6,
+                                    (double) allocatedBytes / Math.max(1, requests)),
+                    snippetBytes);
+        }
+    }
+}
@@ -28,6 +28,8 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.CommonTermsQuery;
+import org.apache.lucene.queries.intervals.IntervalQuery;
+import org.apache.lucene.queries.intervals.Intervals;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
@@ -41,6 +43,7 @@ import org.apache.lucene.search.SynonymQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.TestUtil;
 import org.apache.lucene.util.automaton.Automaton;
@@ -123,6 +126,18 @@ public class QueryFlattenerTest extends LuceneTestCase {
         verify(callback).flattened(bar.bytes(), 1f, rewritten);
     }
 
+    @Test
+    public void intervalQuery() {
+        Callback callback = mock(Callback.class);
+        IntervalQuery q = new IntervalQuery("foo", Intervals.notContaining(
+                Intervals.maxgaps(1, Intervals.ordered(Intervals.term("bar"), Intervals.term("qux"))),
+                Intervals.term("baz")));
+        new QueryFlattener().flatten(q, null, callback);
+        verify(callback).flattened(bar.bytes(), 1f, null);
+        verify(callback).flattened(new BytesRef("qux"), 1f, null);
+        verify(callback, never()).flattened(eq(baz.bytes()), anyFloat(), isNull(Query.class));
+    }
+
     @Test
     public void fuzzyQuery() {
         flattenedToAutomatonThatMatches(new FuzzyQuery(bar), recognises(bar), recognises(baz), recognises("barr"), recognises("bor"),
@@ -158,6 +173,22 @@ public class QueryFlattenerTest extends LuceneTestCase {
                 not(recognises("bor")));
     }
 
+    @Test
+    public void prefixQueryFlattensPrefix() {
+        Callback callback = mock(Callback.class);
+        BytesRef prefix = new BytesRef("ba");
+        new QueryFlattener().flatten(new PrefixQuery(new Term("test", prefix)), null, callback);
+        verify(callback).flattened(any(Automaton.class), eq(1f), eq(prefix.hashCode()));
+        verify(callback).flattenedPrefix(prefix, prefix.hashCode());
+    }
+
+    @Test
+    public void wildcardQueryDoesNotFlattenPrefix() {
+        Callback callback = mock(Callback.class);
+        new QueryFlattener().flatten(new WildcardQuery(new Term("test", "ba*")), null, callback);
+        verify(callback, never()).flattenedPrefix(any(BytesRef.class), anyInt());
+    }
+
     @Test
     public void commonTermsQueryNoRemove() {
         IndexReader reader = readerWithTerms(bar, randomIntBetween(1, 20), baz, randomIntBetween(1, 20));
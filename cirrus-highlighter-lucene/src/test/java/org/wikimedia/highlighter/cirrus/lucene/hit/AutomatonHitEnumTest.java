@@ -4,18 +4,36 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.wikimedia.highlighter.cirrus.Matchers.advances;
 import static org.wikimedia.highlighter.cirrus.Matchers.hit;
 import static org.wikimedia.highlighter.cirrus.Matchers.isEmpty;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.Operations;
 import org.apache.lucene.util.automaton.RegExp;
 import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.CaseFolding;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.RequiredLiteral;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.VirtualSource;
 import org.wikimedia.search.highlighter.cirrus.HitEnum;
 import org.wikimedia.search.highlighter.cirrus.SourceExtracter;
+import org.wikimedia.search.highlighter.cirrus.hit.Deadline;
+import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantHitWeigher;
 import org.wikimedia.search.highlighter.cirrus.source.StringSourceExtracter;
 
 public class AutomatonHitEnumTest extends AbstractHitEnumTestBase {
@@ -50,6 +68,33 @@ public class AutomatonHitEnumTest extends AbstractHitEnumTestBase {
         assertThat(e, isEmpty());
     }
 
+    @Test
+    public void advanceToOffset() {
+        String source = "hero of legend hero of legend";
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        HitEnum e = AutomatonHitEnum.factory("hero|legend", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        assertTrue(e.advanceToOffset(5));
+        assertThat(e, hit(0, extracter, equalTo("legend")));
+        assertTrue(e.advanceToOffset(16));
+        assertThat(e, hit(1, extracter, equalTo("legend")));
+        assertFalse(e.advanceToOffset(24));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void advanceToOffsetTwoPass() {
+        String source = "hero of legend hero of legend";
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        HitEnum e = AutomatonHitEnum.factory("[a-z]+d", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        // The scan restarts at the target so it finds the end of the word
+        assertTrue(e.advanceToOffset(10));
+        assertThat(e, hit(0, extracter, equalTo("gend")));
+        assertThat(e, advances());
+        assertThat(e, hit(1, extracter, equalTo("legend")));
+        assertThat(e, isEmpty());
+        assertFalse(e.advanceToOffset(0));
+    }
+
     @Test
     public void partialWithStar() {
         String source = "hero of legend";
@@ -165,6 +210,218 @@ public class AutomatonHitEnumTest extends AbstractHitEnumTestBase {
         assertThat(AutomatonHitEnum.hasLeadingWildcard(automaton), equalTo(true));
     }
 
+    @Test
+    public void singlePass() {
+        String source = "hero of legend";
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        List<String> regexes = Arrays.asList("hero", "leg[a-z]+", "l.g");
+        HitEnum e = AutomatonHitEnum.factory(regexes, Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        assertThat(e, advances());
+        assertThat(e, hit(0, extracter, equalTo("hero")));
+        assertThat(e.source(), equalTo("hero".hashCode()));
+        assertThat(e, advances());
+        // The longest match wins
+        assertThat(e, hit(1, extracter, equalTo("legend")));
+        assertThat(e.source(), equalTo("leg[a-z]+".hashCode()));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void singlePassLeadingWildcard() {
+        String source = makeLongSource();
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        List<String> regexes = Arrays.asList(".*hero", "of", "[a-z]+end");
+        HitEnum e = AutomatonHitEnum.factory(regexes, Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        assertThat(e, advances());
+        assertThat(e, hit(0, extracter, containsString("hero")));
+        assertThat(e.source(), equalTo(".*hero".hashCode()));
+        assertThat(e, advances());
+        assertThat(e, hit(1, extracter, equalTo("of")));
+        assertThat(e.source(), equalTo("of".hashCode()));
+        assertThat(e, advances());
+        assertThat(e, hit(2, extracter, equalTo("legend")));
+        assertThat(e.source(), equalTo("[a-z]+end".hashCode()));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void lowerCasedSource() {
+        String source = "HERO of LEGEND \uD801\uDC00";
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        HitEnum e = AutomatonHitEnum.factory("hero|legend|\uD801\uDC28", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)
+                .build(new VirtualSource(source, CaseFolding.lowerCase(Locale.ROOT)), ConstantHitWeigher.ONE, ConstantHitWeigher.ONE);
+        assertThat(e, advances());
+        assertThat(e, hit(0, extracter, equalTo("HERO")));
+        assertThat(e, advances());
+        assertThat(e, hit(1, extracter, equalTo("LEGEND")));
+        assertThat(e, advances());
+        assertThat(e, hit(2, extracter, equalTo("\uD801\uDC00")));
+        assertThat(e, isEmpty());
+
+        e = AutomatonHitEnum.factory("\u0131", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)
+                .build(new VirtualSource("I", CaseFolding.lowerCase(new Locale("tr"))));
+        assertThat(e, advances());
+        e = AutomatonHitEnum.factory("\u0131", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)
+                .build(new VirtualSource("I", CaseFolding.lowerCase(Locale.ROOT)));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void caseFoldingIsSharedByLanguage() {
+        assertThat(CaseFolding.lowerCase(new Locale("tr", "TR")), sameInstance(CaseFolding.lowerCase(new Locale("tr"))));
+        assertThat(CaseFolding.lowerCase(new Locale("tr")), not(sameInstance(CaseFolding.lowerCase(Locale.ROOT))));
+        assertThat(CaseFolding.lowerCase(Locale.FRANCE), sameInstance(CaseFolding.lowerCase(Locale.ROOT)));
+        assertThat(CaseFolding.lowerCase(new Locale("xx", "YY", "made_up")), sameInstance(CaseFolding.lowerCase(Locale.ROOT)));
+        assertThat(CaseFolding.lowerCase(new Locale("tr", "TR")).fold('I'), equalTo((int) '\u0131'));
+    }
+
+    @Test
+    public void anchoredSource() {
+        VirtualSource source = new VirtualSource("hero of hero", null, '\u0002', '\u0003');
+        HitEnum e = AutomatonHitEnum.factory("\u0002hero", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        assertThat(e, advances());
+        assertThat(e.startOffset(), equalTo(0));
+        assertThat(e.endOffset(), equalTo(5));
+        assertThat(e, isEmpty());
+
+        e = AutomatonHitEnum.factory("hero\u0003", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        assertThat(e, advances());
+        assertThat(e.startOffset(), equalTo(9));
+        assertThat(e.endOffset(), equalTo(14));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void findMaxMatchLength() {
+        assertThat(AutomatonHitEnum.maxMatchLength(new RegExp("hero|legend").toAutomaton()), equalTo(6));
+        assertThat(AutomatonHitEnum.maxMatchLength(new RegExp("[a-z]{2,5}o?").toAutomaton()), equalTo(6));
+        assertThat(AutomatonHitEnum.maxMatchLength(new RegExp("\uD801\uDC00.").toAutomaton()), equalTo(4));
+        assertThat(AutomatonHitEnum.maxMatchLength(new RegExp("[a-z]+").toAutomaton()), equalTo(-1));
+        assertThat(AutomatonHitEnum.maxMatchLength(new RegExp("a.*b").toAutomaton()), equalTo(-1));
+    }
+
+    @Test
+    public void chunkedMatchesSequential() {
+        String source = "hero of legend herolegend \uD801\uDC00ero heroes of legends " + makeLongSource(4, 4);
+        for (String regex : new String[] {"hero|legend", "[a-z]{2,5}", "of leg[a-z]{1,3}", "[a-z]{1,3}e", ".\uD801\uDC00?e"}) {
+            AutomatonHitEnum.Factory f = AutomatonHitEnum.factory(regex, Operations.DEFAULT_DETERMINIZE_WORK_LIMIT);
+            List<String> expected = hitOffsets(f.build(source));
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                for (int chunkSize = 1; chunkSize < 40; chunkSize++) {
+                    HitEnum e = f.build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, Deadline.none(),
+                            executor, chunkSize);
+                    assertThat(e.toString(), containsString("in chunks"));
+                    assertThat(regex + " in chunks of " + chunkSize, hitOffsets(e), equalTo(expected));
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void chunkedScansRejectedChunksOnThisThread() {
+        String source = "hero of legend herolegend heroes of legends " + makeLongSource(4, 4);
+        AutomatonHitEnum.Factory f = AutomatonHitEnum.factory("hero|legend", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT);
+        List<String> expected = hitOffsets(f.build(source));
+        HitEnum e = f.build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, Deadline.none(), command -> {
+            throw new RejectedExecutionException("busy");
+        }, 7);
+        assertThat(e.toString(), containsString("in chunks"));
+        assertThat(hitOffsets(e), equalTo(expected));
+    }
+
+    @Test
+    public void chunkedAdvanceToOffset() {
+        String source = "hero of legend hero of legend";
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        HitEnum e = AutomatonHitEnum.factory("hero|legend", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)
+                .build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, Deadline.none(), Runnable::run, 4);
+        assertTrue(e.advanceToOffset(5));
+        assertThat(e, hit(0, extracter, equalTo("legend")));
+        // The scan restarts in the middle of the second hero so skips it
+        assertTrue(e.advanceToOffset(17));
+        assertThat(e, hit(1, extracter, equalTo("legend")));
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void unboundedIsNotChunked() {
+        HitEnum e = AutomatonHitEnum.factory("[a-z]+", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)
+                .build(makeLongSource(), ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, Deadline.none(), Runnable::run, 4);
+        assertThat(e.toString(), not(containsString("in chunks")));
+    }
+
+    @Test
+    public void findRequiredLiteral() {
+        RequiredLiteral literal = requiredLiteral("foo[0-9]+");
+        assertThat(literal.literal(), equalTo("foo"));
+        assertThat(literal.maxCharsBefore(), equalTo(0));
+
+        literal = requiredLiteral("[0-9]{1,3}foo");
+        assertThat(literal.literal(), equalTo("foo"));
+        assertThat(literal.maxCharsBefore(), equalTo(3));
+
+        literal = requiredLiteral("[a-z]+legend");
+        assertThat(literal.literal(), equalTo("legend"));
+        assertThat(literal.maxCharsBefore(), equalTo(-1));
+
+        literal = requiredLiteral("a.*foo[0-9]+");
+        assertThat(literal.literal(), equalTo("foo"));
+        assertThat(literal.maxCharsBefore(), equalTo(-1));
+
+        literal = requiredLiteral("(hero|zero) of");
+        assertThat(literal.literal(), equalTo("ero of"));
+        assertThat(literal.maxCharsBefore(), equalTo(1));
+
+        assertThat(requiredLiteral("hero|legend"), nullValue());
+        assertThat(requiredLiteral("[a-z]+"), nullValue());
+    }
+
+    @Test
+    public void prefilteredByLiteral() {
+        String source = makeLongSource();
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        HitEnum e = AutomatonHitEnum.factory("[a-z]{1,3}o of", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        assertThat(e.toString(), containsString("prefiltered by o of@3"));
+        assertThat(e, advances());
+        assertThat(e, hit(0, extracter, equalTo("hero of")));
+        assertThat(e, isEmpty());
+
+        // No copy of the literal means no matches without running the automaton
+        e = AutomatonHitEnum.factory("[a-z]+ of myth", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT).build(source);
+        assertThat(e, isEmpty());
+    }
+
+    @Test
+    public void stopsAtDeadline() {
+        String source = makeLongSource();
+        Deadline expired = Deadline.after(0, TimeUnit.MILLISECONDS);
+        HitEnum e = AutomatonHitEnum.factory("hero", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)
+                .build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, expired);
+        assertThat(e, isEmpty());
+        assertThat(expired.hasExpired(), equalTo(true));
+
+        expired = Deadline.after(0, TimeUnit.MILLISECONDS);
+        e = AutomatonHitEnum.factory(".*legend", Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)
+                .build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, expired);
+        assertThat(e, isEmpty());
+        assertThat(expired.hasExpired(), equalTo(true));
+    }
+
+    private List<String> hitOffsets(HitEnum e) {
+        List<String> offsets = new ArrayList<>();
+        while (e.next()) {
+            offsets.add(e.startOffset() + "-" + e.endOffset());
+        }
+        return offsets;
+    }
+
+    private RequiredLiteral requiredLiteral(String regex) {
+        return RequiredLiteral.find(new RegExp(regex).toAutomaton(), Operations.DEFAULT_DETERMINIZE_WORK_LIMIT);
+    }
+
     private String makeLongSource() {
         return makeLongSource(512, 512);
     }
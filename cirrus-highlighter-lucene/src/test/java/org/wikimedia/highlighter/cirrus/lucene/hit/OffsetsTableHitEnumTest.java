@@ -0,0 +1,60 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.wikimedia.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.highlighter.cirrus.Matchers.hit;
+import static org.wikimedia.highlighter.cirrus.Matchers.isEmpty;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.lucene.WrappedExceptionFromLucene;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.SourceExtracter;
+import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantTermWeigher;
+import org.wikimedia.search.highlighter.cirrus.hit.weight.NoSourceTermSourceFinder;
+import org.wikimedia.search.highlighter.cirrus.source.StringSourceExtracter;
+
+/**
+ * Tests OffsetsTableHitEnum by encoding the token stream and reading it back.
+ */
+public class OffsetsTableHitEnumTest extends AbstractPostingsHitEnumTestBase {
+    @Override
+    protected HitEnum buildEnum(String source, Analyzer analyzer, CompiledAutomaton acceptable) {
+        return new OffsetsTableHitEnum(encode(source, analyzer), acceptable,
+                new ConstantTermWeigher<BytesRef>(), new ConstantTermWeigher<BytesRef>(),
+                new NoSourceTermSourceFinder<BytesRef>());
+    }
+
+    private BytesRef encode(String source, Analyzer analyzer) {
+        try (TokenStream tokenStream = analyzer.tokenStream("field", source)) {
+            return OffsetsTableEncoder.encode(tokenStream, source.length());
+        } catch (IOException e) {
+            throw new WrappedExceptionFromLucene(e);
+        }
+    }
+
+    @Test
+    public void sourceLength() {
+        String source = "hero of legend";
+        OffsetsTableHitEnum e = (OffsetsTableHitEnum) buildEnum(source, mockAnalyzer(), "legend");
+        assertThat(e.sourceLength(), equalTo(source.length()));
+    }
+
+    @Test
+    public void repeatedTerms() {
+        String source = "legend of the legend";
+        SourceExtracter<String> extracter = new StringSourceExtracter(source);
+        HitEnum e = buildEnum(source, mockAnalyzer(), "legend");
+        assertThat(e, advances());
+        assertThat(e, hit(0, extracter, equalTo("legend")));
+        assertThat(e, advances());
+        assertThat(e, hit(3, extracter, equalTo("legend")));
+        assertThat(e, isEmpty());
+    }
+}
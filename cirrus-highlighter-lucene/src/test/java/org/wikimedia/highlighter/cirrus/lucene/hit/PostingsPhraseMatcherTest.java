@@ -0,0 +1,86 @@
+package org.wikimedia.highlighter.cirrus.lucene.hit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.wikimedia.highlighter.cirrus.Matchers.advances;
+import static org.wikimedia.highlighter.cirrus.Matchers.atPosition;
+import static org.wikimedia.highlighter.cirrus.Matchers.isEmpty;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.junit.Test;
+import org.wikimedia.search.highlighter.cirrus.HitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantTermWeigher;
+
+/**
+ * Tests for matching phrases on the postings.
+ */
+public class PostingsPhraseMatcherTest {
+    @Test
+    public void exactPhrase() throws IOException {
+        int[] weights = buildWeights("a b a b c a c b", new int[][] {{source("a")}, {source("b")}});
+        assertWeights(weights, 5, 5, 5, 5, 1, 1, 1, 1);
+    }
+
+    @Test
+    public void multiTermPosition() throws IOException {
+        int[] weights = buildWeights("a b a c b a d",
+                new int[][] {{source("a")}, sorted(source("b"), source("c"))});
+        assertWeights(weights, 5, 5, 5, 5, 1, 1, 1);
+    }
+
+    @Test
+    public void sameTermTwice() throws IOException {
+        int[] weights = buildWeights("a a b a b", new int[][] {{source("a")}, {source("a")}, {source("b")}});
+        assertWeights(weights, 5, 5, 5, 1, 1);
+    }
+
+    @Test
+    public void noMatch() throws IOException {
+        int[] weights = buildWeights("a c b", new int[][] {{source("a")}, {source("b")}});
+        assertWeights(weights, 1, 1, 1);
+    }
+
+    private int[] buildWeights(String source, int[][] phrase) throws IOException {
+        MemoryIndex index = new MemoryIndex(true);
+        try (Analyzer analyzer = new WhitespaceAnalyzer()) {
+            index.addField("field", source, analyzer);
+        }
+        IndexReader reader = index.createSearcher().getIndexReader();
+        PostingsPhraseMatcher matcher = new PostingsPhraseMatcher();
+        matcher.add(phrase, 5);
+        HitEnum e = PostingsHitEnum.fromPostings(reader, 0, "field",
+                new CompiledAutomaton(Automata.makeAnyString()), new ConstantTermWeigher<BytesRef>(),
+                new ConstantTermWeigher<BytesRef>(), term -> source(term.utf8ToString()),
+                PostingsHitEnum.DEFAULT_MAX_MERGED_TERMS, matcher);
+        int[] weights = new int[source.split(" ").length];
+        for (int p = 0; p < weights.length; p++) {
+            assertThat(e, advances());
+            assertThat(e, atPosition(p));
+            weights[p] = (int) e.queryWeight();
+        }
+        assertThat(e, isEmpty());
+        return weights;
+    }
+
+    private void assertWeights(int[] weights, int... expected) {
+        assertArrayEquals(expected, weights);
+    }
+
+    private static int source(String term) {
+        return term.hashCode();
+    }
+
+    private static int[] sorted(int... sources) {
+        Arrays.sort(sources);
+        return sources;
+    }
+}
@@ -0,0 +1,92 @@
+package org.wikimedia.highlighter.cirrus.lucene.tools;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for reading and writing replay corpora.
+ */
+public class ReplayCorpusTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("regex", "a=b");
+        options.put("number_of_fragments", "2");
+        Path path = tmp.newFile().toPath();
+        try (OutputStream out = Files.newOutputStream(path)) {
+            ReplayCorpus.write(out, new ReplayCorpus.Record("test^2 \"simple test\"", "tests very simple test",
+                    options));
+            ReplayCorpus.write(out, new ReplayCorpus.Record("", "", Collections.emptyMap()));
+            ReplayCorpus.write(out, new ReplayCorpus.Record("Ünïcödé 𝄞", "more than one\nline 𝄞",
+                    Collections.singletonMap("pre_tag", "«")));
+        }
+
+        ReplayCorpus corpus = ReplayCorpus.open(path);
+        assertThat(corpus.size(), equalTo(3));
+        ReplayCorpus.Record record = corpus.get(0);
+        assertThat(record.query(), equalTo("test^2 \"simple test\""));
+        assertThat(record.source(), equalTo("tests very simple test"));
+        assertThat(record.options(), equalTo(options));
+        record = corpus.get(1);
+        assertThat(record.query(), equalTo(""));
+        assertThat(record.source(), equalTo(""));
+        assertThat(record.options(), equalTo(Collections.emptyMap()));
+        // Records can be read in any order
+        record = corpus.get(2);
+        assertThat(record.query(), equalTo("Ünïcödé 𝄞"));
+        assertThat(record.source(), equalTo("more than one\nline 𝄞"));
+        assertThat(record.options(), equalTo(Collections.singletonMap("pre_tag", "«")));
+        assertThat(corpus.get(0).source(), equalTo("tests very simple test"));
+    }
+
+    @Test
+    public void empty() throws IOException {
+        assertThat(ReplayCorpus.open(tmp.newFile().toPath()).size(), equalTo(0));
+    }
+
+    @Test
+    public void truncatedString() throws IOException {
+        assertTruncated(Collections.singletonMap("order", "score"));
+    }
+
+    @Test
+    public void truncatedLength() throws IOException {
+        // Without options the last bytes are the length of the options
+        assertTruncated(Collections.emptyMap());
+    }
+
+    private void assertTruncated(Map<String, String> options) throws IOException {
+        Path path = tmp.newFile().toPath();
+        try (OutputStream out = Files.newOutputStream(path)) {
+            ReplayCorpus.write(out, new ReplayCorpus.Record("test", "tests very simple test", options));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try {
+            ReplayCorpus.open(path);
+            fail("Expected the truncated corpus to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("truncated"));
+        }
+    }
+}
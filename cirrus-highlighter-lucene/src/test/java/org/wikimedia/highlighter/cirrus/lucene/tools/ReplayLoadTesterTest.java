@@ -0,0 +1,72 @@
+package org.wikimedia.highlighter.cirrus.lucene.tools;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that the replay load tester highlights like the postings hit source.
+ */
+public class ReplayLoadTesterTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void terms() throws IOException {
+        assertThat(highlight("test", "tests very simple test"), contains("tests very simple <em>test</em>"));
+        // Terms are analyzed like the source
+        assertThat(highlight("Very TEST^2", "tests very simple test"),
+                contains("tests <em>very</em> simple <em>test</em>"));
+    }
+
+    @Test
+    public void phrase() throws IOException {
+        assertThat(highlight("\"simple test\"", "test very simple and simple test"),
+                contains("test very simple and <em>simple</em> <em>test</em>"));
+    }
+
+    @Test
+    public void regex() throws IOException {
+        assertThat(highlight("simple", "tests very simple test", Collections.singletonMap("regex", "v[a-z]+")),
+                contains("tests <em>very</em> <em>simple</em> test"));
+    }
+
+    @Test
+    public void scoreOrder() throws IOException {
+        assertThat(highlight("simple", "tests very simple test", Collections.singletonMap("order", "score")),
+                contains("tests very <em>simple</em> test"));
+    }
+
+    @Test
+    public void run() throws IOException, InterruptedException {
+        Path path = tmp.newFile().toPath();
+        try (OutputStream out = Files.newOutputStream(path)) {
+            ReplayCorpus.write(out, new ReplayCorpus.Record("test", "tests very simple test", Collections.emptyMap()));
+            ReplayCorpus.write(out, new ReplayCorpus.Record("\"simple test\"", "test very simple and simple test",
+                    Collections.emptyMap()));
+        }
+        ReplayLoadTester.Result result = new ReplayLoadTester(ReplayCorpus.open(path), 2).run(3);
+        assertThat(result.throughput(), greaterThan(0.0));
+        assertThat(result.latency(100), greaterThan(0L));
+    }
+
+    private List<String> highlight(String query, String source) throws IOException {
+        return highlight(query, source, Collections.emptyMap());
+    }
+
+    private List<String> highlight(String query, String source, Map<String, String> options) throws IOException {
+        return ReplayLoadTester.highlight(new ReplayCorpus.Record(query, source, options));
+    }
+}
@@ -15,21 +15,41 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
 import org.opensearch.common.logging.Loggers;
+import org.opensearch.common.Strings;
+import org.opensearch.common.bytes.BytesArray;
+import org.opensearch.common.settings.Settings;
 import org.opensearch.common.text.Text;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.common.util.BigArrays;
 import org.opensearch.common.util.LocaleUtils;
+import org.opensearch.common.xcontent.XContentBuilder;
+import org.opensearch.common.xcontent.XContentFactory;
 import org.opensearch.index.mapper.MappedFieldType;
 import org.opensearch.search.fetch.FetchPhaseExecutionException;
 import org.opensearch.search.fetch.subphase.highlight.HighlightField;
 import org.opensearch.search.fetch.subphase.highlight.Highlighter;
 import org.opensearch.search.fetch.subphase.highlight.FieldHighlightContext;
 import org.opensearch.search.fetch.subphase.highlight.SearchHighlightContext.FieldOptions;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.CaseFolding;
+import org.wikimedia.highlighter.cirrus.lucene.automaton.VirtualSource;
 import org.wikimedia.highlighter.cirrus.lucene.hit.AutomatonHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.IndexPrefixHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.IntervalsHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.SpansHitEnum;
 import org.wikimedia.highlighter.cirrus.lucene.hit.weight.BasicQueryWeigher;
 import org.wikimedia.search.highlighter.cirrus.HitEnum;
 import org.wikimedia.search.highlighter.cirrus.Snippet;
@@ -39,15 +59,24 @@ import org.wikimedia.search.highlighter.cirrus.SnippetFormatter;
 import org.wikimedia.search.highlighter.cirrus.SnippetWeigher;
 import org.wikimedia.search.highlighter.cirrus.hit.AbstractHitEnumWrapper;
 import org.wikimedia.search.highlighter.cirrus.hit.ConcatHitEnum;
+import org.wikimedia.search.highlighter.cirrus.hit.CountingHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.Deadline;
+import org.wikimedia.search.highlighter.cirrus.hit.DeadlineHitEnumWrapper;
 import org.wikimedia.search.highlighter.cirrus.hit.EmptyHitEnum;
 import org.wikimedia.search.highlighter.cirrus.hit.MergingHitEnum;
 import org.wikimedia.search.highlighter.cirrus.hit.OverlapMergingHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.ProfilingHitEnumWrapper;
 import org.wikimedia.search.highlighter.cirrus.hit.RegexHitEnum;
 import org.wikimedia.search.highlighter.cirrus.hit.ReplayingHitEnum.HitEnumAndLength;
+import org.wikimedia.search.highlighter.cirrus.hit.SamplingHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.TruncatingHitEnumWrapper;
+import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantHitWeigher;
+import org.wikimedia.search.highlighter.cirrus.snippet.AbstractBasicSnippetChooser;
 import org.wikimedia.search.highlighter.cirrus.snippet.BasicScoreBasedSnippetChooser;
 import org.wikimedia.search.highlighter.cirrus.snippet.BasicSourceOrderSnippetChooser;
 import org.wikimedia.search.highlighter.cirrus.snippet.ExponentialSnippetWeigher;
 import org.wikimedia.search.highlighter.cirrus.snippet.SumSnippetWeigher;
+import org.wikimedia.search.highlighter.cirrus.snippet.Utf8SnippetFormatter;
 import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHit;
 import org.wikimedia.search.highlighter.cirrus.tools.GraphvizHitEnum;
 import org.wikimedia.search.highlighter.cirrus.tools.GraphvizSnippetFormatter;
@@ -60,6 +89,57 @@ public class CirrusHighlighter implements Highlighter {
     private static final String CACHE_KEY = "highlight-cirrus";
     private static final Text EMPTY_STRING = new Text("");
 
+    /**
+     * Smallest regex_chunk_size. Handing a chunk to another thread costs more
+     * than scanning a few thousand chars so smaller chunks would only make
+     * the scan slower.
+     */
+    public static final int MIN_REGEX_CHUNK_SIZE = 10_000;
+    /**
+     * Response header the plugin adds with the name of each field that ran
+     * out of highlight_timeout.
+     */
+    public static final String TIMED_OUT_HEADER = "Cirrus-Highlighter-Timed-Out";
+
+    private final HighlighterMetrics metrics;
+    private final HighlighterCaches caches;
+    private final Executor regexExecutor;
+    private final Consumer<String> timedOut;
+
+    public CirrusHighlighter() {
+        this(new HighlighterMetrics());
+    }
+
+    public CirrusHighlighter(HighlighterMetrics metrics) {
+        this(metrics, new HighlighterCaches(Settings.EMPTY));
+    }
+
+    public CirrusHighlighter(HighlighterMetrics metrics, HighlighterCaches caches) {
+        this(metrics, caches, Runnable::run);
+    }
+
+    /**
+     * @param regexExecutor runs the chunks of long field values scanned for
+     *            regexes in parallel
+     */
+    public CirrusHighlighter(HighlighterMetrics metrics, HighlighterCaches caches, Executor regexExecutor) {
+        this(metrics, caches, regexExecutor, fieldName -> { });
+    }
+
+    /**
+     * @param regexExecutor runs the chunks of long field values scanned for
+     *            regexes in parallel
+     * @param timedOut called with the name of each field that runs out of
+     *            highlight_timeout on the thread that highlighted it
+     */
+    public CirrusHighlighter(HighlighterMetrics metrics, HighlighterCaches caches, Executor regexExecutor,
+            Consumer<String> timedOut) {
+        this.metrics = metrics;
+        this.caches = caches;
+        this.regexExecutor = regexExecutor;
+        this.timedOut = timedOut;
+    }
+
     @Override
     public boolean canHighlight(MappedFieldType field) {
         return true;
@@ -74,11 +154,14 @@ public class CirrusHighlighter implements Highlighter {
                 entry = new CacheEntry();
                 context.cache.put(CACHE_KEY, entry);
             }
-            HighlightExecutionContext executionContext = new HighlightExecutionContext(context, entry);
+            long start = System.nanoTime();
+            HighlightExecutionContext executionContext = new HighlightExecutionContext(context, entry, metrics, caches,
+                    regexExecutor, timedOut);
             try {
                 return executionContext.highlight();
             } finally {
                 executionContext.cleanup();
+                metrics.phase(HighlighterMetrics.Phase.TOTAL, System.nanoTime() - start);
             }
         } catch (Exception e) {
             getLogger(context).error("Failed to highlight field [{}]", context.fieldName, e);
@@ -86,17 +169,47 @@ public class CirrusHighlighter implements Highlighter {
         }
     }
 
-    private Logger getLogger(FieldHighlightContext context) {
+    private static Logger getLogger(FieldHighlightContext context) {
         return Loggers.getLogger(CirrusHighlighter.class, context.context.getIndexName());
     }
 
     static class CacheEntry {
         private final Map<QueryCacheKey, BasicQueryWeigher> queryWeighers = new HashMap<>();
-        private Map<String, AutomatonHitEnum.Factory> automatonHitEnumFactories;
+        private final Map<Query, Weight> matchesWeights = new HashMap<>();
+        private final Map<FieldSourceKey, SpansHitEnum.Source> spansSources = new HashMap<>();
+        private final Map<FieldSourceKey, IntervalsHitEnum.Source> intervalsSources = new HashMap<>();
+        private final Map<FieldSourceKey, IndexPrefixHitEnum.Source> indexPrefixSources = new HashMap<>();
         private boolean lastMatched;
         private int lastDocId = -1;
     }
 
+    static class FieldSourceKey {
+        private final BasicQueryWeigher weigher;
+        private final String fieldName;
+
+        FieldSourceKey(BasicQueryWeigher weigher, String fieldName) {
+            this.weigher = weigher;
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FieldSourceKey other = (FieldSourceKey) o;
+            return weigher == other.weigher && fieldName.equals(other.fieldName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(weigher) + fieldName.hashCode();
+        }
+    }
+
     static class QueryCacheKey {
         private final Query query;
         private final int maxExpandedTerms;
@@ -134,9 +247,19 @@ public class CirrusHighlighter implements Highlighter {
     static class HighlightExecutionContext {
         private static final String OPTION_RETURN_DEBUG_GRAPH = "return_debug_graph";
         private static final String OPTION_RETURN_SNIPPETS_WITH_OFFSET = "return_snippets_and_offsets";
+        private static final String OPTION_PROFILE = "profile";
         private static final int DEFAULT_MAX_DETERMINIZED_STATES = 20000;
+        /**
+         * The char that anchored regexes expect before the source and the one
+         * they expect after it.
+         */
+        private static final String ANCHORS = RegexRewriter.anchorTransformation("");
         private final FieldHighlightContext context;
         private final CacheEntry cache;
+        private final HighlighterMetrics metrics;
+        private final HighlighterCaches caches;
+        private final Executor regexExecutor;
+        private final Consumer<String> timedOut;
         private BasicQueryWeigher weigher;
         private FieldWrapper defaultField;
         private List<FieldWrapper> extraFields;
@@ -145,10 +268,24 @@ public class CirrusHighlighter implements Highlighter {
         private boolean scoreMatters;
         private Locale locale;
         private int maxDeterminizedStates;
+        private Deadline deadline = Deadline.none();
+        private CountingHitEnumWrapper hitCounter;
+        private ProfilingHitEnumWrapper.Profile profile;
+        private long buildHitEnumNanos;
+        private long chooseNanos;
+        private long formatNanos;
+        private int snippetsChecked;
+        private int snippetsChosen;
+        private long bytesFormatted;
 
-        HighlightExecutionContext(FieldHighlightContext context, CacheEntry cache) {
+        HighlightExecutionContext(FieldHighlightContext context, CacheEntry cache, HighlighterMetrics metrics,
+                HighlighterCaches caches, Executor regexExecutor, Consumer<String> timedOut) {
             this.context = context;
             this.cache = cache;
+            this.metrics = metrics;
+            this.caches = caches;
+            this.regexExecutor = regexExecutor;
+            this.timedOut = timedOut;
         }
 
         HighlightField highlight() throws IOException {
@@ -164,16 +301,49 @@ public class CirrusHighlighter implements Highlighter {
                 Boolean topScoring = (Boolean) getOption("top_scoring");
                 scoreMatters = topScoring != null && topScoring;
             }
+            deadline = buildDeadline();
             defaultField = new FieldWrapper(this, context, weigher);
             int numberOfSnippets = context.field.fieldOptions().numberOfFragments();
             if (numberOfSnippets == 0) {
                 numberOfSnippets = 1;
             }
+            if (getOption(OPTION_PROFILE, FALSE)) {
+                profile = new ProfilingHitEnumWrapper.Profile();
+            }
             segmenter = new DelayedSegmenter(defaultField);
-            List<Snippet> snippets = buildChooser().choose(segmenter, buildHitEnum(), numberOfSnippets);
+            long start = System.nanoTime();
+            HitEnum e = buildHitEnum();
+            long built = System.nanoTime();
+            buildHitEnumNanos = built - start;
+            metrics.phase(HighlighterMetrics.Phase.BUILD_HIT_ENUM, buildHitEnumNanos);
+            SnippetChooser chooser = buildChooser();
+            List<Snippet> snippets = chooser.choose(segmenter, e, numberOfSnippets);
+            chooseNanos = System.nanoTime() - built;
+            metrics.phase(HighlighterMetrics.Phase.CHOOSE, chooseNanos);
+            metrics.hitsPerDoc(hitCounter.count());
+            if (chooser instanceof AbstractBasicSnippetChooser) {
+                snippetsChecked = ((AbstractBasicSnippetChooser<?>) chooser).snippetsChecked();
+            }
+            if (deadline.hasExpired()) {
+                metrics.timeout();
+                timedOut.accept(context.fieldName);
+                getLogger(context).debug("Highlighting field [{}] timed out, returning partial results", context.fieldName);
+            }
+            HighlightField field = buildHighlightField(snippets);
+            if (profile != null && !getOption(OPTION_RETURN_DEBUG_GRAPH, FALSE)) {
+                return buildProfileField();
+            }
+            return field;
+        }
+
+        private HighlightField buildHighlightField(List<Snippet> snippets) throws IOException {
             if (!snippets.isEmpty()) {
                 cache.lastMatched = true;
-                return new HighlightField(context.fieldName, formatSnippets(snippets));
+                long start = System.nanoTime();
+                Text[] formatted = formatSnippets(snippets);
+                formatNanos = System.nanoTime() - start;
+                metrics.phase(HighlighterMetrics.Phase.FORMAT, formatNanos);
+                return new HighlightField(context.fieldName, formatted);
             }
             cache.lastMatched = false;
             int noMatchSize = context.field.fieldOptions().noMatchSize();
@@ -188,6 +358,61 @@ public class CirrusHighlighter implements Highlighter {
             return new HighlightField(context.fieldName, new Text[] {fragment});
         }
 
+        /**
+         * Build the deadline from highlight_timeout which is either a number
+         * of milliseconds or a time value like "50ms".
+         */
+        private Deadline buildDeadline() {
+            Object timeout = getOption("highlight_timeout");
+            if (timeout == null) {
+                return Deadline.none();
+            }
+            long millis;
+            if (timeout instanceof Number) {
+                millis = ((Number) timeout).longValue();
+            } else {
+                millis = TimeValue.parseTimeValue(timeout.toString(), "highlight_timeout").millis();
+            }
+            if (millis < 0) {
+                throw new IllegalArgumentException("highlight_timeout must not be negative but was " + timeout);
+            }
+            return Deadline.after(millis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Build a field containing just the profile. Like the debug graph it
+         * replaces the snippets rather than being mixed in with them so it
+         * doesn't break the layout of fetch_fields.
+         */
+        private HighlightField buildProfileField() throws IOException {
+            XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+            builder.startArray("stages");
+            for (ProfilingHitEnumWrapper stage : profile.stages()) {
+                builder.startObject();
+                builder.field("stage", stage.name());
+                builder.field("nanos", stage.nanos());
+                builder.field("hits", stage.hits());
+                builder.endObject();
+            }
+            builder.endArray();
+            builder.field("build_hit_enum_nanos", buildHitEnumNanos);
+            builder.field("choose_nanos", chooseNanos);
+            builder.field("format_nanos", formatNanos);
+            builder.field("snippets_checked", snippetsChecked);
+            builder.field("snippets_chosen", snippetsChosen);
+            builder.field("bytes_formatted", bytesFormatted);
+            builder.field("timed_out", deadline.hasExpired());
+            builder.endObject();
+            return new HighlightField(context.fieldName, new Text[] {new Text(Strings.toString(builder))});
+        }
+
+        /**
+         * Wrap e in a profiling stage if profile is set.
+         */
+        HitEnum profile(String stage, HitEnum e) {
+            return profile == null ? e : profile.wrap(stage, e);
+        }
+
         private boolean shouldSkip() {
             // Maintain lastMatched - it should be false if we shift to a new
             // doc.
@@ -255,6 +480,77 @@ public class CirrusHighlighter implements Highlighter {
             return scoreMatters;
         }
 
+        HighlighterMetrics metrics() {
+            return metrics;
+        }
+
+        /**
+         * Span queries on a field ready to find the terms inside accepted
+         * spans. Built once per fetch phase and reused for every doc.
+         */
+        SpansHitEnum.Source spansSource(String fieldName) throws IOException {
+            ensureWeigher();
+            FieldSourceKey key = new FieldSourceKey(weigher, fieldName);
+            SpansHitEnum.Source source = cache.spansSources.get(key);
+            if (source == null) {
+                source = SpansHitEnum.Source.build(context.context.searcher(), context.query, fieldName,
+                        weigher::acceptableTermsWithout);
+                cache.spansSources.put(key, source);
+            }
+            return source;
+        }
+
+        /**
+         * Interval queries on a field ready to find the terms inside accepted
+         * intervals. Built once per fetch phase and reused for every doc.
+         */
+        IntervalsHitEnum.Source intervalsSource(String fieldName) throws IOException {
+            ensureWeigher();
+            FieldSourceKey key = new FieldSourceKey(weigher, fieldName);
+            IntervalsHitEnum.Source source = cache.intervalsSources.get(key);
+            if (source == null) {
+                source = IntervalsHitEnum.Source.build(context.context.searcher(), context.query, fieldName,
+                        weigher::acceptableTermsWithout);
+                cache.intervalsSources.put(key, source);
+            }
+            return source;
+        }
+
+        /**
+         * Prefixes to look up on an index_prefixes sub field instead of
+         * running their automata over the field. Built once per fetch phase
+         * and reused for every doc.
+         *
+         * @param indexed is the prefix short enough to be on the sub field?
+         */
+        IndexPrefixHitEnum.Source indexPrefixSource(String fieldName, String prefixFieldName,
+                Predicate<BytesRef> indexed) {
+            ensureWeigher();
+            FieldSourceKey key = new FieldSourceKey(weigher, fieldName);
+            IndexPrefixHitEnum.Source source = cache.indexPrefixSources.get(key);
+            if (source == null) {
+                List<BytesRef> prefixes = weigher.prefixes().stream().filter(indexed).collect(Collectors.toList());
+                source = IndexPrefixHitEnum.Source.build(prefixFieldName, prefixes,
+                        weigher.acceptableTermsWithoutPrefixes(prefixes));
+                cache.indexPrefixSources.put(key, source);
+            }
+            return source;
+        }
+
+        /**
+         * Weight of the rewritten query used to find matches with Lucene's
+         * Matches API. Built once per fetch phase and reused for every doc.
+         */
+        Weight matchesWeight() throws IOException {
+            Weight weight = cache.matchesWeights.get(context.query);
+            if (weight == null) {
+                IndexSearcher searcher = context.context.searcher();
+                weight = searcher.createWeight(searcher.rewrite(context.query), ScoreMode.COMPLETE_NO_SCORES, 1);
+                cache.matchesWeights.put(context.query, weight);
+            }
+            return weight;
+        }
+
         private void ensureWeigher() {
             if (weigher != null) {
                 return;
@@ -266,9 +562,11 @@ public class CirrusHighlighter implements Highlighter {
             QueryCacheKey key = new QueryCacheKey(context.query, maxExpandedTerms, phraseAsTerms,
                     removeHighFrequencyTermsFromCommonTerms);
             weigher = cache.queryWeighers.get(key);
+            metrics.cacheLookup(HighlighterMetrics.Cache.QUERY_WEIGHER, weigher != null);
             if (weigher != null) {
                 return;
             }
+            long start = System.nanoTime();
             // TODO recycle. But addReleasble doesn't seem to close it properly
             // later. I believe this is fixed in later Elasticsearch versions.
             BytesRefHashTermInfos infos = new BytesRefHashTermInfos(BigArrays.NON_RECYCLING_INSTANCE);
@@ -278,17 +576,30 @@ public class CirrusHighlighter implements Highlighter {
             // Build the QueryWeigher with the top level reader to get all
             // the frequency information
             cache.queryWeighers.put(key, weigher);
+            metrics.phase(HighlighterMetrics.Phase.WEIGHER, System.nanoTime() - start);
         }
 
         /**
          * Builds the hit enum including any required wrappers.
          */
         private HitEnum buildHitEnum() throws IOException {
-            HitEnum e = buildHitFindingHitEnum();
+            hitCounter = new CountingHitEnumWrapper(profile("hit_finding", buildHitFindingHitEnum()));
+            HitEnum e = hitCounter;
+            if (getOption("highlight_timeout") != null) {
+                // Stop finding hits once we're out of time so the chooser
+                // returns what it has so far. This goes under
+                // max_hits_per_doc because sampling reads every hit before
+                // returning any.
+                e = new DeadlineHitEnumWrapper(e, deadline);
+            }
+            HitEnum limited = limitHits(e);
+            if (limited != e) {
+                e = profile("max_hits_per_doc", limited);
+            }
 
             // Merge any overlapping hits to support matched fields and
             // analyzers that make overlaps.
-            e = new OverlapMergingHitEnumWrapper(e);
+            e = profile("overlap_merging", new OverlapMergingHitEnumWrapper(e));
 
             if (getOption(OPTION_RETURN_DEBUG_GRAPH, FALSE)) {
                 e = new GraphvizHitEnum(e);
@@ -296,6 +607,28 @@ public class CirrusHighlighter implements Highlighter {
             return e;
         }
 
+        /**
+         * Caps the number of hits the rest of the chain sees if
+         * max_hits_per_doc is set.
+         */
+        private HitEnum limitHits(HitEnum e) {
+            Integer maxHitsPerDoc = (Integer) getOption("max_hits_per_doc");
+            if (maxHitsPerDoc == null) {
+                return e;
+            }
+            if (maxHitsPerDoc <= 0) {
+                throw new IllegalArgumentException("max_hits_per_doc must be positive but was " + maxHitsPerDoc);
+            }
+            Object mode = getOption("max_hits_per_doc_mode", "truncate");
+            if ("truncate".equals(mode)) {
+                return new TruncatingHitEnumWrapper(e, maxHitsPerDoc);
+            }
+            if ("sample".equals(mode)) {
+                return new SamplingHitEnumWrapper(e, maxHitsPerDoc);
+            }
+            throw new IllegalArgumentException("Unknown max_hits_per_doc_mode:  '" + mode + "'.  Options are 'truncate' or 'sample'.");
+        }
+
         private HitEnum buildHitFindingHitEnum() throws IOException {
             List<HitEnum> hitEnums = buildHitFindingHitEnums();
             switch (hitEnums.size()) {
@@ -324,45 +657,71 @@ public class CirrusHighlighter implements Highlighter {
         // cleanup the re-assignment of `regex` if we revisit that code
         private List<HitEnum> buildRegexHitEnums() throws IOException {
             RegexFlavor flavor = RegexFlavor.from(getOption("regex_flavor"));
-            if (flavor.isLuceneFlavor) {
-                cache.automatonHitEnumFactories = new HashMap<>();
-            }
             Boolean caseInsensitiveOption = (Boolean) getOption("regex_case_insensitive");
             boolean caseInsensitive = caseInsensitiveOption == null ? false : caseInsensitiveOption;
+            Boolean singlePassOption = (Boolean) getOption("regex_single_pass");
+            boolean singlePass = singlePassOption == null ? false : singlePassOption;
 
             List<HitEnum> hitEnums = new ArrayList<>();
+            List<String> regexes = getRegexes();
+            if (regexes.isEmpty()) {
+                // Don't load the field values until something needs them.
+                return hitEnums;
+            }
             List<String> fieldValues = defaultField.getFieldValues();
             if (fieldValues.isEmpty()) {
                 return hitEnums;
             }
 
-            for (String regex : getRegexes()) {
-                if (flavor.isLuceneFlavor) {
-                    if (flavor.expandRegex) {
-                        regex = RegexRewriter.rewrite(regex, flavor.replaceAnchors).toString();
-                    }
-                    if (caseInsensitive) {
-                        regex = regex.toLowerCase(getLocale());
-                    }
-                    AutomatonHitEnum.Factory factory = cache.automatonHitEnumFactories.get(regex);
-                    if (factory == null) {
-                        factory = buildFactoryForRegex(regex);
-                        cache.automatonHitEnumFactories.put(regex, factory);
-                    }
-                    hitEnums.add(buildLuceneRegexHitEnumForRegex(factory, fieldValues, caseInsensitive, flavor));
-                } else {
+            if (!flavor.isLuceneFlavor) {
+                for (String regex : regexes) {
                     int options = 0;
                     if (caseInsensitive) {
                         options |= Pattern.CASE_INSENSITIVE;
                     }
-                    hitEnums.add(buildJavaRegexHitEnumForRegex(Pattern.compile(regex, options), fieldValues));
+                    hitEnums.add(profile("regex:" + regex, buildJavaRegexHitEnumForRegex(Pattern.compile(regex, options), fieldValues)));
+                }
+                return hitEnums;
+            }
+
+            List<String> luceneRegexes = new ArrayList<>(regexes.size());
+            for (String regex : regexes) {
+                if (flavor.expandRegex) {
+                    regex = RegexRewriter.rewrite(regex, flavor.replaceAnchors).toString();
                 }
+                if (caseInsensitive) {
+                    regex = regex.toLowerCase(getLocale());
+                }
+                luceneRegexes.add(regex);
+            }
+            if (singlePass && luceneRegexes.size() > 1) {
+                // Scan the field once for all the regexes
+                AutomatonHitEnum.Factory factory = regexFactory(luceneRegexes);
+                hitEnums.add(profile("regex_single_pass", buildLuceneRegexHitEnumForRegex(factory, fieldValues, caseInsensitive, flavor)));
+                return hitEnums;
+            }
+            for (String regex : luceneRegexes) {
+                AutomatonHitEnum.Factory factory = regexFactory(Collections.singletonList(regex));
+                hitEnums.add(profile("regex:" + regex, buildLuceneRegexHitEnumForRegex(factory, fieldValues, caseInsensitive, flavor)));
             }
             return hitEnums;
         }
 
-        private AutomatonHitEnum.Factory buildFactoryForRegex(String regex) {
-            return AutomatonHitEnum.factory(regex, getMaxDeterminizedStates());
+        /**
+         * Compile regexes into a factory that finds all of their hits or load
+         * them from the cache.
+         */
+        private AutomatonHitEnum.Factory regexFactory(List<String> regexes) {
+            boolean[] built = new boolean[1];
+            AutomatonHitEnum.Factory factory = caches.regexAutomata().computeIfAbsent(
+                    new HighlighterCaches.RegexKey(regexes, getMaxDeterminizedStates()), key -> {
+                        built[0] = true;
+                        AutomatonHitEnum.Factory f = AutomatonHitEnum.factory(key.regexes(), getMaxDeterminizedStates());
+                        metrics.regexAutomatonStates(f.size());
+                        return f;
+                    }).copy();
+            metrics.cacheLookup(HighlighterMetrics.Cache.REGEX_AUTOMATON, !built[0]);
+            return factory;
         }
 
         private int getMaxDeterminizedStates() {
@@ -434,46 +793,69 @@ public class CirrusHighlighter implements Highlighter {
         private HitEnum buildLuceneRegexHitEnumForRegex(final AutomatonHitEnum.Factory factory, List<String> fieldValues,
                 final boolean caseInsensitive, final RegexFlavor flavor) {
             final int positionGap = defaultField.getPositionGap();
+            final CaseFolding folding = caseInsensitive ? CaseFolding.lowerCase(getLocale()) : null;
+            final int chunkSize = getRegexChunkSize();
             if (fieldValues.size() == 1) {
-                String fieldValue = fieldValues.get(0);
-                final int sourceLength = fieldValue.length();
-                if (flavor.replaceAnchors) {
-                    fieldValue = RegexRewriter.anchorTransformation(fieldValue);
-                }
-                if (caseInsensitive) {
-                    fieldValue = fieldValue.toLowerCase(getLocale());
-                }
-                HitEnum e = factory.build(fieldValue);
-                if (flavor.replaceAnchors) {
-                    e = new AnchoredLuceneRegexHitEnum(e, sourceLength);
-                }
-                return e;
+                return buildLuceneRegexHitEnumForValue(factory, fieldValues.get(0), folding, flavor, chunkSize);
             } else {
-                Iterator<HitEnumAndLength> hitEnumsFromStreams = fieldValues.stream().map(fieldValue -> {
-                    final int sourceLength = fieldValue.length();
-                    if (flavor.replaceAnchors) {
-                        fieldValue = RegexRewriter.anchorTransformation(fieldValue);
-                    }
-                    if (caseInsensitive) {
-                        fieldValue = fieldValue.toLowerCase(getLocale());
-                    }
-                    HitEnum e = factory.build(fieldValue);
-                    if (flavor.replaceAnchors) {
-                        e = new AnchoredLuceneRegexHitEnum(e, sourceLength);
-                    }
-                    return new HitEnumAndLength(e, sourceLength);
-                }).iterator();
+                Iterator<HitEnumAndLength> hitEnumsFromStreams = fieldValues.stream()
+                        .map(fieldValue -> new HitEnumAndLength(
+                                buildLuceneRegexHitEnumForValue(factory, fieldValue, folding, flavor, chunkSize),
+                                fieldValue.length()))
+                        .iterator();
                 return new ConcatHitEnum(hitEnumsFromStreams, positionGap, 1);
             }
         }
 
+        /**
+         * Scan a field value for a regex. Lowercasing and anchors are applied
+         * through a view of the value so it is never copied.
+         */
+        private HitEnum buildLuceneRegexHitEnumForValue(AutomatonHitEnum.Factory factory, String fieldValue,
+                CaseFolding folding, RegexFlavor flavor, int chunkSize) {
+            CharSequence source = fieldValue;
+            if (flavor.replaceAnchors) {
+                source = new VirtualSource(fieldValue, folding, ANCHORS.charAt(0), ANCHORS.charAt(1));
+            } else if (folding != null) {
+                source = new VirtualSource(fieldValue, folding);
+            }
+            HitEnum e;
+            if (chunkSize > 0) {
+                e = factory.build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, deadline,
+                        regexExecutor, chunkSize);
+            } else {
+                e = factory.build(source, ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, deadline);
+            }
+            if (flavor.replaceAnchors) {
+                e = new AnchoredLuceneRegexHitEnum(e, fieldValue.length());
+            }
+            return e;
+        }
+
+        /**
+         * Chars in each chunk when scanning long field values for regexes in
+         * parallel or 0 if they should be scanned on this thread.
+         */
+        private int getRegexChunkSize() {
+            Integer chunkSize = (Integer) getOption("regex_chunk_size");
+            if (chunkSize == null) {
+                return 0;
+            }
+            if (chunkSize < MIN_REGEX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("regex_chunk_size must be at least " + MIN_REGEX_CHUNK_SIZE
+                        + " but was " + chunkSize);
+            }
+            return chunkSize;
+        }
+
         private HitEnum buildJavaRegexHitEnumForRegex(final Pattern pattern, List<String> fieldValues) {
             final int positionGap = defaultField.getPositionGap();
             if (fieldValues.size() == 1) {
-                return new RegexHitEnum(pattern.matcher(fieldValues.get(0)));
+                return new RegexHitEnum(pattern.matcher(fieldValues.get(0)), ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, deadline);
             } else {
                 Iterator<HitEnumAndLength> hitEnumsFromStreams = fieldValues.stream()
-                        .map(fieldValue -> new HitEnumAndLength(new RegexHitEnum(pattern.matcher(fieldValue)), fieldValue.length()))
+                        .map(fieldValue -> new HitEnumAndLength(new RegexHitEnum(pattern.matcher(fieldValue),
+                                ConstantHitWeigher.ONE, ConstantHitWeigher.ONE, deadline), fieldValue.length()))
                         .iterator();
                 return new ConcatHitEnum(hitEnumsFromStreams, positionGap, 1);
             }
@@ -602,7 +984,7 @@ public class CirrusHighlighter implements Highlighter {
         private Text[] formatSnippets(List<Snippet> snippets) throws IOException {
             final SnippetFormatter formatter;
             if (getOption("return_offsets", FALSE)) {
-                formatter = new OffsetSnippetFormatter();
+                formatter = buildOffsetSnippetFormatter();
             } else if (getOption(OPTION_RETURN_DEBUG_GRAPH, FALSE)) {
                 formatter = new GraphvizSnippetFormatter(defaultField.buildSourceExtracter());
             } else if (getOption(OPTION_RETURN_SNIPPETS_WITH_OFFSET, FALSE)) {
@@ -612,7 +994,8 @@ public class CirrusHighlighter implements Highlighter {
                                 context.field.fieldOptions().preTags()[0],
                                 context.field.fieldOptions().postTags()[0]));
             } else {
-                formatter = new SnippetFormatter.Default(defaultField.buildSourceExtracter(), context.field.fieldOptions().preTags()[0],
+                formatter = new Utf8SnippetFormatter(defaultField.buildCharSequenceSourceExtracter(),
+                        context.field.fieldOptions().preTags()[0],
                         context.field.fieldOptions().postTags()[0]);
             }
 
@@ -621,7 +1004,7 @@ public class CirrusHighlighter implements Highlighter {
                 Text[] result = new Text[snippets.size()];
                 int i = 0;
                 for (Snippet snippet : snippets) {
-                    result[i++] = new Text(formatter.format(snippet));
+                    result[i++] = formatSnippet(formatter, snippet);
                 }
                 return result;
             }
@@ -631,7 +1014,7 @@ public class CirrusHighlighter implements Highlighter {
             FetchedFieldIndexPicker picker = segmenter.buildFetchedFieldIndexPicker();
             int i = 0;
             for (Snippet snippet : snippets) {
-                result[i++] = new Text(formatter.format(snippet));
+                result[i++] = formatSnippet(formatter, snippet);
                 int index = picker.index(snippet);
                 for (FieldWrapper fetchField : fetchFields) {
                     List<String> values = fetchField.getFieldValues();
@@ -645,6 +1028,38 @@ public class CirrusHighlighter implements Highlighter {
             return result;
         }
 
+        /**
+         * Format a snippet, counting it if profiling. Fetched field values
+         * aren't snippets so they aren't counted.
+         */
+        private Text formatSnippet(SnippetFormatter formatter, Snippet snippet) {
+            Text formatted = format(formatter, snippet);
+            if (profile != null) {
+                snippetsChosen++;
+                bytesFormatted += formatted.bytes().length();
+            }
+            return formatted;
+        }
+
+        private Text format(SnippetFormatter formatter, Snippet snippet) {
+            if (formatter instanceof Utf8SnippetFormatter) {
+                // Text backed by the UTF-8 bytes is what gets written to the response anyway
+                return new Text(new BytesArray(((Utf8SnippetFormatter) formatter).formatBytes(snippet)));
+            }
+            return new Text(formatter.format(snippet));
+        }
+
+        private SnippetFormatter buildOffsetSnippetFormatter() {
+            Object format = getOption("offsets_format", "text");
+            if ("text".equals(format)) {
+                return new OffsetSnippetFormatter();
+            }
+            if ("packed".equals(format)) {
+                return new PackedOffsetSnippetFormatter();
+            }
+            throw new IllegalArgumentException("Unknown offsets_format:  '" + format + "'.  Options are 'text' or 'packed'.");
+        }
+
         /**
          * Return FieldWrappers for all fetch_fields or null if there aren't
          * any.
@@ -0,0 +1,178 @@
+package org.wikimedia.highlighter.cirrus.opensearch;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.opensearch.common.xcontent.ToXContentObject;
+import org.opensearch.common.xcontent.XContentBuilder;
+
+/**
+ * Node wide cache with weight based CLOCK eviction. Reads are lock free: a
+ * lookup in a {@link ConcurrentHashMap} plus setting the entry's reference
+ * bit. Writes append to a lock free queue that serves as the clock. When the
+ * total weight goes over the limit one writer sweeps the clock, giving each
+ * referenced entry a second chance and evicting the rest. Other writers don't
+ * wait for it.
+ * <p>
+ * Values are loaded outside of any lock so two threads missing on the same
+ * key at the same time may both load it. Only the first value is cached.
+ * Values must be safe to share between threads.
+ */
+public final class ClockCache<K, V> implements ToXContentObject {
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Build the cache.
+     *
+     * @param maxWeight maximum total weight of the cached values. 0 disables the cache.
+     * @param weigher figures the weight of a value
+     */
+    public ClockCache(long maxWeight, ToLongFunction<? super V> weigher) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must not be negative but was " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get the cached value for key or null if there isn't one.
+     */
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        node.referenced = true;
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Get the cached value for key, loading it if there isn't one.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return value;
+        }
+        Node<K, V> node = new Node<>(key, value, valueWeight);
+        // Count the weight before the node is visible so evicting it can't
+        // make the weight go negative.
+        long newWeight = weight.addAndGet(valueWeight);
+        Node<K, V> existing = map.putIfAbsent(key, node);
+        if (existing != null) {
+            weight.addAndGet(-valueWeight);
+            existing.referenced = true;
+            return existing.value;
+        }
+        clock.add(node);
+        if (newWeight > maxWeight) {
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * Number of cached entries.
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Total weight of the cached entries.
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            // Someone else is already evicting.
+            return;
+        }
+        try {
+            // Each node gets at most one second chance per sweep so this
+            // terminates even if readers keep setting reference bits.
+            long budget = 2L * map.size() + 1;
+            while (weight.get() > maxWeight && budget-- > 0) {
+                Node<K, V> node = clock.poll();
+                if (node == null) {
+                    return;
+                }
+                if (node.referenced) {
+                    node.referenced = false;
+                    clock.add(node);
+                    continue;
+                }
+                if (map.remove(node.key, node)) {
+                    weight.addAndGet(-node.weight);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        long hits = hits();
+        long misses = misses();
+        builder.startObject();
+        builder.field("entries", size());
+        builder.field("weight", weight());
+        builder.field("max_weight", maxWeight);
+        builder.field("hits", hits);
+        builder.field("misses", misses);
+        builder.field("hit_rate", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        builder.field("evictions", evictions());
+        return builder.endObject();
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final long weight;
+        private volatile boolean referenced;
+
+        private Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
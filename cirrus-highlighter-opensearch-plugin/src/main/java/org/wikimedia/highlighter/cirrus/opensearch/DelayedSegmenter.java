@@ -29,6 +29,11 @@ public class DelayedSegmenter implements Segmenter {
         return getSegmenter().memo(maxStartOffset, minEndOffset);
     }
 
+    @Override
+    public int nextAcceptableStartOffset(int maxStartOffset, int minEndOffset) {
+        return getSegmenter().nextAcceptableStartOffset(maxStartOffset, minEndOffset);
+    }
+
     public FetchedFieldIndexPicker buildFetchedFieldIndexPicker() throws IOException {
         if (fieldWrapper.isMultValued()) {
             return new MultiValuedFetchedFieldIndexPicker((MultiSegmenter) getSegmenter());
@@ -2,10 +2,17 @@ package org.wikimedia.highlighter.cirrus.opensearch;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.opensearch.common.lucene.search.function.FunctionScoreQuery;
 import org.wikimedia.highlighter.cirrus.lucene.QueryFlattener;
 
 public class ElasticsearchQueryFlattener extends QueryFlattener {
+    /**
+     * Suffix of the sub field that text fields with index_prefixes query for
+     * short prefixes.
+     */
+    public static final String INDEX_PREFIX_SUFFIX = "._index_prefix";
+
     /**
      * Default configuration.
      */
@@ -28,6 +35,21 @@ public class ElasticsearchQueryFlattener extends QueryFlattener {
         return false;
     }
 
+    /**
+     * Prefix queries on text fields with index_prefixes become term queries on
+     * a sub field. Those terms are really prefixes of the words in the field
+     * so they are flattened back into prefixes.
+     */
+    @Override
+    protected void flattenQuery(TermQuery query, float pathBoost, Object sourceOverride,
+            IndexReader reader, Callback callback) {
+        if (query.getTerm().field().endsWith(INDEX_PREFIX_SUFFIX)) {
+            flattenPrefixQuery(query.getTerm().bytes(), pathBoost, sourceOverride, callback);
+            return;
+        }
+        super.flattenQuery(query, pathBoost, sourceOverride, reader, callback);
+    }
+
     protected void flattenQuery(FunctionScoreQuery query, float pathBoost,
             Object sourceOverride, IndexReader reader, Callback callback) {
         if (query.getSubQuery() != null) {
@@ -11,15 +11,26 @@ import java.util.TreeMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.BytesRef;
 import org.opensearch.common.util.BigArrays;
 import org.opensearch.index.mapper.MappedFieldType;
+import org.opensearch.index.mapper.TextFieldMapper;
 import org.opensearch.index.mapper.TextSearchInfo;
 import org.opensearch.search.fetch.subphase.highlight.FieldHighlightContext;
 import org.opensearch.search.fetch.subphase.highlight.HighlightUtils;
 import org.opensearch.search.fetch.subphase.highlight.SearchHighlightContext;
 import org.wikimedia.highlighter.cirrus.opensearch.CirrusHighlighter.HighlightExecutionContext;
+import org.wikimedia.highlighter.cirrus.lucene.hit.IndexPhraseHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.IndexPrefixHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.IntervalsHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.MatchesHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.OffsetsTableHitEnum;
 import org.wikimedia.highlighter.cirrus.lucene.hit.PostingsHitEnum;
+import org.wikimedia.highlighter.cirrus.lucene.hit.PostingsPhraseMatcher;
+import org.wikimedia.highlighter.cirrus.lucene.hit.SpansHitEnum;
 import org.wikimedia.highlighter.cirrus.lucene.hit.TokenStreamHitEnum;
 import org.wikimedia.highlighter.cirrus.lucene.hit.weight.BasicQueryWeigher;
 import org.wikimedia.highlighter.cirrus.lucene.hit.weight.DefaultSimilarityTermWeigher;
@@ -35,6 +46,7 @@ import org.wikimedia.search.highlighter.cirrus.hit.WeightFilteredHitEnumWrapper;
 import org.wikimedia.search.highlighter.cirrus.hit.weight.CachingTermWeigher;
 import org.wikimedia.search.highlighter.cirrus.hit.weight.ConstantTermWeigher;
 import org.wikimedia.search.highlighter.cirrus.snippet.MultiSegmenter;
+import org.wikimedia.search.highlighter.cirrus.source.CharSequenceSourceExtracter;
 import org.wikimedia.search.highlighter.cirrus.source.NonMergingMultiSourceExtracter;
 import org.wikimedia.search.highlighter.cirrus.source.StringSourceExtracter;
 
@@ -54,6 +66,14 @@ public class FieldWrapper {
      */
     private static final int POSITION_GAP_INIT = -1;
     private int positionGap = POSITION_GAP_INIT;
+    /**
+     * Did the hit source already match phrases?
+     */
+    private boolean phrasesFromHitSource;
+    /**
+     * Did the hit source already match exact phrases?
+     */
+    private boolean exactPhrasesFromHitSource;
 
     /**
      * Build a wrapper around the default field in the context.
@@ -133,6 +153,27 @@ public class FieldWrapper {
         }
     }
 
+    /**
+     * Like {@link #buildSourceExtracter()} but extracts views of the field
+     * values rather than copies.
+     */
+    public SourceExtracter<CharSequence> buildCharSequenceSourceExtracter() throws IOException {
+        List<String> fieldValues = getFieldValues();
+        switch (fieldValues.size()) {
+            case 0:
+                return new CharSequenceSourceExtracter("");
+            case 1:
+                return new CharSequenceSourceExtracter(fieldValues.get(0));
+            default:
+                NonMergingMultiSourceExtracter.Builder<CharSequence> builder = NonMergingMultiSourceExtracter
+                        .builder();
+                for (String s : fieldValues) {
+                    builder.add(new CharSequenceSourceExtracter(s), s.length());
+                }
+                return builder.build();
+        }
+    }
+
     /**
      * Does this field have more then one value?
      */
@@ -165,18 +206,22 @@ public class FieldWrapper {
      * this field.
      */
     public boolean canProduceHits() {
-        return weigher.maxTermWeight() > 0 || weigher.areTherePhrasesOnField(context.fieldName);
+        return weigher.maxTermWeight() > 0 || weigher.areTherePhrasesOnField(context.fieldName)
+                || weigher.areTherePhrasesOnField(indexPhraseFieldName());
     }
 
     public HitEnum buildHitEnum() throws IOException {
-        HitEnum e = buildHitEnumForSource();
+        HitEnum e = executionContext.profile(context.fieldName + ":hit_source", buildHitEnumForSource());
 
         // Support phrase matches. Note that this must be done here rather than
         // after merging HitEnums because each hit could map offsets to
         // different positions. Since they are merged based on _offset_ the
         // phrase wrapper will see jumbled positions, causing it to break
         // horribly. Don't do it. I've tried.
-        e = weigher.wrap(context.fieldName, e);
+        if (!phrasesFromHitSource) {
+            e = executionContext.profile(context.fieldName + ":phrases",
+                    weigher.wrap(context.fieldName, e, !exactPhrasesFromHitSource));
+        }
 
         SearchHighlightContext.FieldOptions options = context.field.fieldOptions();
         if (!options.scoreOrdered()) {
@@ -187,7 +232,8 @@ public class FieldWrapper {
 
                 // Filter 0 weight hits which pop out from the TokenStreamHitEnum,
                 // phrase match misses.
-                return new WeightFilteredHitEnumWrapper(e, 0f);
+                return executionContext.profile(context.fieldName + ":weight_filter",
+                        new WeightFilteredHitEnumWrapper(e, 0f));
             }
         }
         // TODO move this up so we don't have to redo it per matched_field
@@ -210,7 +256,7 @@ public class FieldWrapper {
 
         // Filter 0 weight hits which pop out from the TokenStreamHitEnum,
         // phrase match misses, and boost_before being used as a filter.
-        return new WeightFilteredHitEnumWrapper(e, 0f);
+        return executionContext.profile(context.fieldName + ":weight_filter", new WeightFilteredHitEnumWrapper(e, 0f));
     }
 
     private HitEnum buildHitEnumForSource() throws IOException {
@@ -230,8 +276,33 @@ public class FieldWrapper {
                                     "Can't use vectors as a hit source without setting term_vector to with_positions_offsets");
                         }
                         return buildTermVectorsHitEnum();
+                    case "offsets_index":
+                        if (!canUseOffsetsIndexHitEnum()) {
+                            throw new IllegalArgumentException(
+                                    "Can't use offsets_index as a hit source without a " + OffsetsIndexFieldMapper.CONTENT_TYPE
+                                    + " sub field named " + OffsetsIndexFieldMapper.DEFAULT_SUBFIELD_NAME);
+                        }
+                        return buildOffsetsIndexHitEnum();
                     case "analyze":
                         return buildTokenStreamHitEnum();
+                    case "matches":
+                        if (!canUsePostingsHitEnum()) {
+                            throw new IllegalArgumentException(
+                                    "Can't use matches as a hit source without setting index_options to offsets");
+                        }
+                        return buildMatchesHitEnum();
+                    case "spans":
+                        if (!canUsePostingsHitEnum()) {
+                            throw new IllegalArgumentException(
+                                    "Can't use spans as a hit source without setting index_options to offsets");
+                        }
+                        return buildSpansHitEnum();
+                    case "intervals":
+                        if (!canUsePostingsHitEnum()) {
+                            throw new IllegalArgumentException(
+                                    "Can't use intervals as a hit source without setting index_options to offsets");
+                        }
+                        return buildIntervalsHitEnum();
                     default:
                         throw new IllegalArgumentException("Unknown hit source:  " + hitSource);
                 }
@@ -243,6 +314,9 @@ public class FieldWrapper {
         if (canUseVectorsHitEnum()) {
             return buildTermVectorsHitEnum();
         }
+        if (canUseOffsetsIndexHitEnum()) {
+            return buildOffsetsIndexHitEnum();
+        }
         return buildTokenStreamHitEnum();
     }
 
@@ -255,19 +329,148 @@ public class FieldWrapper {
         return context.fieldType.getTextSearchInfo().termVectors() == TextSearchInfo.TermVector.OFFSETS;
     }
 
+    private String offsetsIndexFieldName() {
+        return context.fieldName + '.' + OffsetsIndexFieldMapper.DEFAULT_SUBFIELD_NAME;
+    }
+
+    private boolean canUseOffsetsIndexHitEnum() {
+        return context.context.mapperService().fieldType(offsetsIndexFieldName())
+                instanceof OffsetsIndexFieldMapper.OffsetsIndexFieldType;
+    }
+
     private HitEnum buildPostingsHitEnum() throws IOException {
-        return PostingsHitEnum.fromPostings(context.hitContext.reader(),
-                context.hitContext.docId(), context.fieldType.name(),
-                weigher.acceptableTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher);
+        executionContext.metrics().hitSource("postings");
+        HitEnum e;
+        if (canUseIndexPrefixHitEnum()) {
+            // Short prefixes on fields with index_prefixes are single terms
+            // on a sub field so look them up there rather than expanding
+            // them against every term in the field.
+            String prefixField = indexPrefixFieldName();
+            IndexPrefixHitEnum.Source source = executionContext.indexPrefixSource(context.fieldType.name(),
+                    prefixField, this::isIndexedPrefix);
+            e = PostingsHitEnum.fromPostings(context.hitContext.reader(),
+                    context.hitContext.docId(), context.fieldType.name(),
+                    source.otherTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher,
+                    PostingsHitEnum.DEFAULT_MAX_MERGED_TERMS, getExactPhraseMatcher());
+            e = source.build(context.hitContext.readerContext(), context.hitContext.docId(), e,
+                    getQueryWeigher(), getCorpusWeigher(prefixField, false), weigher);
+        } else {
+            e = PostingsHitEnum.fromPostings(context.hitContext.reader(),
+                    context.hitContext.docId(), context.fieldType.name(),
+                    weigher.acceptableTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher,
+                    PostingsHitEnum.DEFAULT_MAX_MERGED_TERMS, getExactPhraseMatcher());
+        }
+        if (!canUseIndexPhraseHitEnum()) {
+            return e;
+        }
+        // Phrases on fields with index_phrases are queried as shingles on a
+        // sub field so they have to be found there.
+        String phraseField = indexPhraseFieldName();
+        return IndexPhraseHitEnum.fromPostings(context.hitContext.reader(), context.hitContext.docId(),
+                context.fieldType.name(), phraseField, weigher.acceptableMultiWordTerms(), getQueryWeigher(),
+                getCorpusWeigher(false), weigher, shingles -> weigher.wrap(phraseField, shingles), e);
+    }
+
+    private String indexPrefixFieldName() {
+        return context.fieldName + ElasticsearchQueryFlattener.INDEX_PREFIX_SUFFIX;
+    }
+
+    /**
+     * Can we look prefixes up on an index_prefixes sub field?
+     */
+    private boolean canUseIndexPrefixHitEnum() {
+        if (weigher.prefixes().isEmpty()) {
+            return false;
+        }
+        MappedFieldType prefixFieldType = context.context.mapperService().fieldType(indexPrefixFieldName());
+        return prefixFieldType != null && prefixFieldType.getTextSearchInfo().hasOffsets();
+    }
+
+    /**
+     * Is this prefix indexed as a single term on the index_prefixes sub
+     * field? Asks the field to build a prefix query so the field's own
+     * min_chars and max_chars decide.
+     */
+    private boolean isIndexedPrefix(BytesRef prefix) {
+        Query query = context.fieldType.prefixQuery(prefix.utf8ToString(), null, false,
+                context.context.getQueryShardContext());
+        if (query instanceof ConstantScoreQuery) {
+            query = ((ConstantScoreQuery) query).getQuery();
+        }
+        return query instanceof TermQuery && indexPrefixFieldName().equals(((TermQuery) query).getTerm().field());
+    }
+
+    private String indexPhraseFieldName() {
+        return context.fieldName + TextFieldMapper.FAST_PHRASE_SUFFIX;
+    }
+
+    /**
+     * Can we find phrases queried against an index_phrases shingle field?
+     */
+    private boolean canUseIndexPhraseHitEnum() {
+        if (!weigher.hasMultiWordTerms() && !weigher.areTherePhrasesOnField(indexPhraseFieldName())) {
+            return false;
+        }
+        MappedFieldType phraseFieldType = context.context.mapperService().fieldType(indexPhraseFieldName());
+        return phraseFieldType != null && phraseFieldType.getTextSearchInfo().hasOffsets();
     }
 
     private HitEnum buildTermVectorsHitEnum() throws IOException {
+        executionContext.metrics().hitSource("vectors");
         return PostingsHitEnum.fromTermVectors(context.hitContext.reader(),
                 context.hitContext.docId(), context.fieldType.name(),
-                weigher.acceptableTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher);
+                weigher.acceptableTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher,
+                PostingsHitEnum.DEFAULT_MAX_MERGED_TERMS, getExactPhraseMatcher());
+    }
+
+    /**
+     * Matcher that finds the exact phrases on the postings while the hits are
+     * built so they don't have to be found in the merged hits afterwards.
+     */
+    private PostingsPhraseMatcher getExactPhraseMatcher() {
+        PostingsPhraseMatcher matcher = weigher.exactPhraseMatcher(context.fieldName);
+        exactPhrasesFromHitSource = matcher != null;
+        return matcher;
+    }
+
+    private HitEnum buildMatchesHitEnum() throws IOException {
+        executionContext.metrics().hitSource("matches");
+        phrasesFromHitSource = true;
+        return MatchesHitEnum.fromWeight(executionContext.matchesWeight(), context.hitContext.readerContext(),
+                context.hitContext.docId(), context.fieldType.name(), getQueryWeigher(), getCorpusWeigher(false),
+                weigher, sources -> weigher.phraseWeight(context.fieldName, sources));
+    }
+
+    private HitEnum buildSpansHitEnum() throws IOException {
+        executionContext.metrics().hitSource("spans");
+        SpansHitEnum.Source source = executionContext.spansSource(context.fieldType.name());
+        HitEnum otherHits = PostingsHitEnum.fromPostings(context.hitContext.reader(),
+                context.hitContext.docId(), context.fieldType.name(),
+                source.otherTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher);
+        return source.build(context.hitContext.readerContext(), context.hitContext.docId(), otherHits,
+                getQueryWeigher(), getCorpusWeigher(false), weigher);
+    }
+
+    private HitEnum buildIntervalsHitEnum() throws IOException {
+        executionContext.metrics().hitSource("intervals");
+        IntervalsHitEnum.Source source = executionContext.intervalsSource(context.fieldType.name());
+        HitEnum otherHits = PostingsHitEnum.fromPostings(context.hitContext.reader(),
+                context.hitContext.docId(), context.fieldType.name(),
+                source.otherTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher);
+        return source.build(context.hitContext.readerContext(), context.hitContext.docId(), otherHits,
+                getQueryWeigher(), getCorpusWeigher(false), weigher);
+    }
+
+    private HitEnum buildOffsetsIndexHitEnum() throws IOException {
+        executionContext.metrics().hitSource("offsets_index");
+        return OffsetsTableHitEnum.fromStoredFields(context.hitContext.reader(),
+                context.hitContext.docId(), offsetsIndexFieldName(),
+                weigher.acceptableTerms(), getQueryWeigher(), getCorpusWeigher(false), weigher,
+                getPositionGap());
     }
 
     private HitEnum buildTokenStreamHitEnum() throws IOException {
+        executionContext.metrics().hitSource("analyze");
         Analyzer analyzer = context.fieldType.indexAnalyzer();
 
         if (analyzer == null) {
@@ -330,6 +533,10 @@ public class FieldWrapper {
     }
 
     private TermWeigher<BytesRef> getCorpusWeigher(boolean mightWeighTermsMultipleTimes) {
+        return getCorpusWeigher(context.fieldName, mightWeighTermsMultipleTimes);
+    }
+
+    private TermWeigher<BytesRef> getCorpusWeigher(String fieldName, boolean mightWeighTermsMultipleTimes) {
         // No need to add fancy term weights if there is only one term or we
         // aren't using score order.
         if (weigher.singleTerm() || !executionContext.scoreMatters()) {
@@ -339,7 +546,7 @@ public class FieldWrapper {
         if (useDefaultSimilarity == null || useDefaultSimilarity) {
             // Use a top level reader to fetch the frequency information
             TermWeigher<BytesRef> corpusWeigher = new DefaultSimilarityTermWeigher(context.hitContext.topLevelReader(),
-                    context.fieldName);
+                    fieldName);
             // TODO maybe switch to a recycling instance on the off chance that
             // we find a ton of terms in the document. That'd require more work
             // to make sure everything is properly Releasable.
@@ -0,0 +1,94 @@
+package org.wikimedia.highlighter.cirrus.opensearch;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.xcontent.ToXContentObject;
+import org.opensearch.common.xcontent.XContentBuilder;
+import org.wikimedia.highlighter.cirrus.lucene.hit.AutomatonHitEnum;
+
+/**
+ * Caches shared by all highlighting on a node. Each is a {@link ClockCache}
+ * limited by a node setting. Only compiled regexes are cached here: they
+ * don't depend on the index so they never have to be invalidated.
+ */
+public class HighlighterCaches implements ToXContentObject {
+    /**
+     * Maximum total number of automaton states in cached regexes.
+     */
+    public static final Setting<Long> REGEX_AUTOMATON_MAX_STATES = Setting.longSetting(
+            "cirrus_highlighter.cache.regex_automaton.max_states", 100_000, 0, Property.NodeScope);
+
+    /**
+     * All the settings for the caches.
+     */
+    public static List<Setting<?>> settings() {
+        return Arrays.asList(REGEX_AUTOMATON_MAX_STATES);
+    }
+
+    private final ClockCache<RegexKey, AutomatonHitEnum.Factory> regexAutomata;
+
+    public HighlighterCaches(Settings settings) {
+        regexAutomata = new ClockCache<>(REGEX_AUTOMATON_MAX_STATES.get(settings), AutomatonHitEnum.Factory::size);
+    }
+
+    /**
+     * Compiled regexes. Values must be {@link AutomatonHitEnum.Factory#copy() copied}
+     * before use because they aren't thread safe.
+     */
+    public ClockCache<RegexKey, AutomatonHitEnum.Factory> regexAutomata() {
+        return regexAutomata;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("regex_automaton", regexAutomata);
+        return builder.endObject();
+    }
+
+    /**
+     * Key for compiled regexes. More than one regex means they were compiled
+     * together to be found in a single scan.
+     */
+    public static final class RegexKey {
+        private final List<String> regexes;
+        private final int maxDeterminizedStates;
+
+        public RegexKey(String regex, int maxDeterminizedStates) {
+            this(Collections.singletonList(regex), maxDeterminizedStates);
+        }
+
+        public RegexKey(List<String> regexes, int maxDeterminizedStates) {
+            this.regexes = regexes;
+            this.maxDeterminizedStates = maxDeterminizedStates;
+        }
+
+        public List<String> regexes() {
+            return regexes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(regexes, maxDeterminizedStates);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            RegexKey other = (RegexKey) obj;
+            return maxDeterminizedStates == other.maxDeterminizedStates && regexes.equals(other.regexes);
+        }
+    }
+}
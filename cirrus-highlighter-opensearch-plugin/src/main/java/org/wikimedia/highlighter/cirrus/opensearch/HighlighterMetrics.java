@@ -0,0 +1,257 @@
+package org.wikimedia.highlighter.cirrus.opensearch;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opensearch.common.xcontent.ToXContentObject;
+import org.opensearch.common.xcontent.XContentBuilder;
+
+/**
+ * Node wide counters and histograms describing where highlighting time goes.
+ * Everything is built on {@link LongAdder} so recording is cheap and doesn't
+ * contend across search threads. Readers see a consistent enough snapshot for
+ * monitoring but not an atomic one.
+ */
+public class HighlighterMetrics implements ToXContentObject {
+    /**
+     * Phases of highlighting a single field that are timed.
+     */
+    public enum Phase {
+        /**
+         * Flattening the query and weighing its terms. Only counted when the
+         * weigher isn't already cached for the fetch phase.
+         */
+        WEIGHER,
+        /**
+         * Picking the hit source and building the HitEnum chain. Includes
+         * reading postings or term vectors up to the first hit.
+         */
+        BUILD_HIT_ENUM,
+        /**
+         * Choosing snippets. Because hits are enumerated lazily this includes
+         * enumerating hits and matching phrases.
+         */
+        CHOOSE,
+        /**
+         * Formatting the chosen snippets.
+         */
+        FORMAT,
+        /**
+         * The whole of highlighting the field.
+         */
+        TOTAL;
+
+        private final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Caches whose hit rate is tracked.
+     */
+    public enum Cache {
+        QUERY_WEIGHER,
+        REGEX_AUTOMATON;
+
+        private final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final Histogram[] phases = new Histogram[Phase.values().length];
+    private final LongAdder[] cacheHits = new LongAdder[Cache.values().length];
+    private final LongAdder[] cacheMisses = new LongAdder[Cache.values().length];
+    private final ConcurrentMap<String, LongAdder> hitSources = new ConcurrentHashMap<>();
+    private final Histogram hitsPerDoc = new Histogram();
+    private final Histogram regexAutomatonStates = new Histogram();
+    private final LongAdder timeouts = new LongAdder();
+
+    public HighlighterMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new Histogram();
+        }
+        for (int i = 0; i < cacheHits.length; i++) {
+            cacheHits[i] = new LongAdder();
+            cacheMisses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record that a phase took nanos.
+     */
+    public void phase(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record a lookup in a cache.
+     */
+    public void cacheLookup(Cache cache, boolean hit) {
+        (hit ? cacheHits : cacheMisses)[cache.ordinal()].increment();
+    }
+
+    /**
+     * Record which hit source was used for a field.
+     */
+    public void hitSource(String hitSource) {
+        hitSources.computeIfAbsent(hitSource, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Record the number of hits the chooser saw for a field.
+     */
+    public void hitsPerDoc(long hits) {
+        hitsPerDoc.record(hits);
+    }
+
+    /**
+     * Record the size of a newly built regex automaton.
+     */
+    public void regexAutomatonStates(long states) {
+        regexAutomatonStates.record(states);
+    }
+
+    /**
+     * Record that highlighting a field ran out of time.
+     */
+    public void timeout() {
+        timeouts.increment();
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        innerToXContent(builder, params);
+        return builder.endObject();
+    }
+
+    /**
+     * Write the metrics as fields of an object that the caller has started.
+     */
+    public XContentBuilder innerToXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("phases");
+        for (Phase phase : Phase.values()) {
+            builder.field(phase.key);
+            phases[phase.ordinal()].toXContent(builder, "nanos");
+        }
+        builder.endObject();
+        builder.startObject("hit_sources");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(hitSources).entrySet()) {
+            builder.field(e.getKey(), e.getValue().sum());
+        }
+        builder.endObject();
+        builder.field("hits_per_doc");
+        hitsPerDoc.toXContent(builder, "hits");
+        builder.startObject("caches");
+        for (Cache cache : Cache.values()) {
+            long hits = cacheHits[cache.ordinal()].sum();
+            long misses = cacheMisses[cache.ordinal()].sum();
+            builder.startObject(cache.key);
+            builder.field("hits", hits);
+            builder.field("misses", misses);
+            builder.field("hit_rate", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.field("regex_automaton_states");
+        regexAutomatonStates.toXContent(builder, "states");
+        return builder.field("timeouts", timeouts.sum());
+    }
+
+    /**
+     * Lock free histogram of non-negative longs in the style of HDR
+     * histograms: buckets are powers of two each split into
+     * {@link #SUB_BUCKETS} linear sub buckets so values are recorded with
+     * about 25% precision over the whole range of long.
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts[bucket(value)].increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+        }
+
+        /**
+         * Estimate the percentiles of the recorded values. Each estimate is
+         * the lower bound of the bucket holding that percentile.
+         */
+        long[] percentiles(double... percentiles) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts[i].sum();
+                total += snapshot[i];
+            }
+            long[] result = new long[percentiles.length];
+            for (int p = 0; p < percentiles.length; p++) {
+                long target = (long) Math.ceil(percentiles[p] / 100 * total);
+                long seen = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    seen += snapshot[i];
+                    if (seen >= target && seen > 0) {
+                        result[p] = lowerBound(i);
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+
+        long count() {
+            long count = 0;
+            for (LongAdder c : counts) {
+                count += c.sum();
+            }
+            return count;
+        }
+
+        void toXContent(XContentBuilder builder, String unit) throws IOException {
+            long[] percentiles = percentiles(50, 90, 99);
+            builder.startObject();
+            builder.field("count", count());
+            builder.field("total_" + unit, sum.sum());
+            builder.field("p50_" + unit, percentiles[0]);
+            builder.field("p90_" + unit, percentiles[1]);
+            builder.field("p99_" + unit, percentiles[2]);
+            builder.field("max_" + unit, max.get());
+            builder.endObject();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.wikimedia.highlighter.cirrus.opensearch;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.opensearch.index.analysis.IndexAnalyzers;
+import org.opensearch.index.analysis.NamedAnalyzer;
+import org.opensearch.index.mapper.FieldMapper;
+import org.opensearch.index.mapper.MappedFieldType;
+import org.opensearch.index.mapper.MapperParsingException;
+import org.opensearch.index.mapper.MapperService;
+import org.opensearch.index.mapper.ParametrizedFieldMapper;
+import org.opensearch.index.mapper.ParseContext;
+import org.opensearch.index.mapper.TextSearchInfo;
+import org.opensearch.index.mapper.ValueFetcher;
+import org.opensearch.index.query.QueryShardContext;
+import org.opensearch.search.lookup.SearchLookup;
+import org.wikimedia.highlighter.cirrus.lucene.hit.OffsetsTableEncoder;
+
+/**
+ * Index time companion for the {@code offsets_index} hit source. Analyzes the
+ * value and stores the token table built by {@link OffsetsTableEncoder} so
+ * the highlighter can find hits without running the analyzer at fetch time.
+ * Meant to be added as a sub field named {@value #DEFAULT_SUBFIELD_NAME} of
+ * the text field it highlights. The analyzer is required rather than
+ * defaulted because the table is only useful if it was built with the same
+ * analyzer as the field's own postings and the query terms.
+ */
+public final class OffsetsIndexFieldMapper extends ParametrizedFieldMapper {
+    public static final String CONTENT_TYPE = "cirrus_offsets";
+    /**
+     * Name of the sub field the highlighter looks for.
+     */
+    public static final String DEFAULT_SUBFIELD_NAME = "offsets_index";
+
+    public static final TypeParser PARSER = new TypeParser((n, c) -> new Builder(n, c.getIndexAnalyzers()));
+
+    private static OffsetsIndexFieldMapper toType(FieldMapper in) {
+        return (OffsetsIndexFieldMapper) in;
+    }
+
+    public static final class Builder extends ParametrizedFieldMapper.Builder {
+        private final IndexAnalyzers indexAnalyzers;
+        private final Parameter<NamedAnalyzer> analyzer;
+        private final Parameter<Map<String, String>> meta = Parameter.metaParam();
+
+        public Builder(String name, IndexAnalyzers indexAnalyzers) {
+            super(name);
+            this.indexAnalyzers = indexAnalyzers;
+            this.analyzer = Parameter.analyzerParam("analyzer", false, m -> toType(m).analyzer, () -> null);
+        }
+
+        @Override
+        protected List<Parameter<?>> getParameters() {
+            return Arrays.asList(analyzer, meta);
+        }
+
+        @Override
+        public OffsetsIndexFieldMapper build(BuilderContext context) {
+            if (analyzer.getValue() == null) {
+                throw new MapperParsingException("[" + CONTENT_TYPE + "] field [" + name
+                        + "] requires an analyzer and it should match the analyzer of the field it highlights");
+            }
+            return new OffsetsIndexFieldMapper(name, new OffsetsIndexFieldType(buildFullName(context), meta.getValue()),
+                    multiFieldsBuilder.build(this, context), copyTo.build(), this);
+        }
+    }
+
+    /**
+     * Field type for the token tables. They are only stored, never searched.
+     */
+    public static final class OffsetsIndexFieldType extends MappedFieldType {
+        public OffsetsIndexFieldType(String name, Map<String, String> meta) {
+            super(name, false, true, false, TextSearchInfo.NONE, meta);
+        }
+
+        @Override
+        public String typeName() {
+            return CONTENT_TYPE;
+        }
+
+        @Override
+        public Query termQuery(Object value, QueryShardContext context) {
+            throw new IllegalArgumentException("[" + CONTENT_TYPE + "] field [" + name() + "] is not searchable");
+        }
+    }
+
+    private final IndexAnalyzers indexAnalyzers;
+    private final NamedAnalyzer analyzer;
+
+    private OffsetsIndexFieldMapper(String simpleName, MappedFieldType mappedFieldType, MultiFields multiFields,
+            CopyTo copyTo, Builder builder) {
+        super(simpleName, mappedFieldType, multiFields, copyTo);
+        this.indexAnalyzers = builder.indexAnalyzers;
+        this.analyzer = builder.analyzer.getValue();
+    }
+
+    @Override
+    protected void parseCreateField(ParseContext context) throws IOException {
+        String value = context.externalValueSet() ? context.externalValue().toString() : context.parser().textOrNull();
+        if (value == null) {
+            return;
+        }
+        BytesRef table;
+        try (TokenStream tokenStream = analyzer.tokenStream(fieldType().name(), value)) {
+            table = OffsetsTableEncoder.encode(tokenStream, value.length());
+        }
+        context.doc().add(new StoredField(fieldType().name(), table));
+    }
+
+    @Override
+    public ValueFetcher valueFetcher(MapperService mapperService, SearchLookup searchLookup, String format) {
+        // The tables are an implementation detail of highlighting, not something to return.
+        return lookup -> Collections.emptyList();
+    }
+
+    @Override
+    public ParametrizedFieldMapper.Builder getMergeBuilder() {
+        return new Builder(simpleName(), indexAnalyzers).init(this);
+    }
+
+    @Override
+    protected String contentType() {
+        return CONTENT_TYPE;
+    }
+}
@@ -0,0 +1,96 @@
+package org.wikimedia.highlighter.cirrus.opensearch;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.wikimedia.search.highlighter.cirrus.Snippet;
+import org.wikimedia.search.highlighter.cirrus.Snippet.Hit;
+import org.wikimedia.search.highlighter.cirrus.SnippetFormatter;
+
+/**
+ * Compact alternative to {@link OffsetSnippetFormatter}. Each snippet is
+ * written as a sequence of unsigned LEB128 varints and returned base64
+ * encoded:
+ * <ol>
+ * <li>the start offset of the snippet
+ * <li>the length of the snippet
+ * <li>the number of hits
+ * <li>for each hit the zigzag encoded distance from the start of the previous
+ * hit, or the snippet for the first hit, followed by the length of the hit
+ * </ol>
+ * Most of those numbers are small so they fit in a byte or two.
+ */
+public class PackedOffsetSnippetFormatter implements SnippetFormatter {
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+
+    private byte[] buffer = new byte[32];
+    private int length;
+
+    @Override
+    public String format(Snippet snippet) {
+        length = 0;
+        List<Hit> hits = snippet.hits();
+        writeVInt(snippet.startOffset());
+        writeVInt(snippet.endOffset() - snippet.startOffset());
+        writeVInt(hits.size());
+        int last = snippet.startOffset();
+        for (Hit hit : hits) {
+            writeVInt(zigZag(hit.startOffset() - last));
+            writeVInt(hit.endOffset() - hit.startOffset());
+            last = hit.startOffset();
+        }
+        return ENCODER.encodeToString(Arrays.copyOf(buffer, length));
+    }
+
+    private void writeVInt(int i) {
+        // Five bytes is enough for any int
+        buffer = ArrayUtil.grow(buffer, length + 5);
+        while ((i & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        buffer[length++] = (byte) i;
+    }
+
+    private static int zigZag(int i) {
+        return (i << 1) ^ (i >> 31);
+    }
+
+    /**
+     * Decode a snippet formatted by this formatter. The result is the start
+     * and end offset of the snippet followed by the start and end offset of
+     * each hit. Mostly useful for testing and as a reference for clients.
+     */
+    public static int[] decode(String packed) {
+        byte[] bytes = Base64.getDecoder().decode(packed);
+        int[] pos = new int[1];
+        int start = readVInt(bytes, pos);
+        int end = start + readVInt(bytes, pos);
+        int hits = readVInt(bytes, pos);
+        int[] result = new int[2 + hits * 2];
+        result[0] = start;
+        result[1] = end;
+        int last = start;
+        for (int h = 0; h < hits; h++) {
+            int zigZagged = readVInt(bytes, pos);
+            int hitStart = last + ((zigZagged >>> 1) ^ -(zigZagged & 1));
+            result[2 + h * 2] = hitStart;
+            result[3 + h * 2] = hitStart + readVInt(bytes, pos);
+            last = hitStart;
+        }
+        return result;
+    }
+
+    private static int readVInt(byte[] bytes, int[] pos) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = bytes[pos[0]++];
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+}
@@ -1,20 +1,153 @@
 package org.wikimedia.highlighter.cirrus.opensearch.plugin;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionResponse;
+import org.opensearch.client.Client;
+import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.node.DiscoveryNodes;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.io.stream.NamedWriteableRegistry;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.IndexScopedSettings;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.settings.SettingsFilter;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
+import org.opensearch.common.xcontent.NamedXContentRegistry;
+import org.opensearch.env.Environment;
+import org.opensearch.env.NodeEnvironment;
+import org.opensearch.index.mapper.Mapper;
+import org.opensearch.plugins.ActionPlugin;
+import org.opensearch.plugins.MapperPlugin;
 import org.opensearch.plugins.Plugin;
 import org.opensearch.plugins.SearchPlugin;
+import org.opensearch.repositories.RepositoriesService;
+import org.opensearch.rest.RestController;
+import org.opensearch.rest.RestHandler;
+import org.opensearch.script.ScriptService;
 import org.opensearch.search.fetch.subphase.highlight.Highlighter;
+import org.opensearch.threadpool.ExecutorBuilder;
+import org.opensearch.threadpool.FixedExecutorBuilder;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.watcher.ResourceWatcherService;
 import org.wikimedia.highlighter.cirrus.opensearch.CirrusHighlighter;
+import org.wikimedia.highlighter.cirrus.opensearch.HighlighterCaches;
+import org.wikimedia.highlighter.cirrus.opensearch.HighlighterMetrics;
+import org.wikimedia.highlighter.cirrus.opensearch.OffsetsIndexFieldMapper;
+
+public class CirrusHighlighterPlugin extends Plugin implements SearchPlugin, MapperPlugin, ActionPlugin {
+    /**
+     * Thread pool that scans chunks of long field values for regexes.
+     */
+    public static final String REGEX_THREAD_POOL = "cirrus_highlighter_regex";
+
+    private final HighlighterMetrics metrics = new HighlighterMetrics();
+    private final HighlighterCaches caches;
+    /**
+     * Set in createComponents which runs after the highlighters are built.
+     */
+    private volatile ThreadPool threadPool;
+
+    public CirrusHighlighterPlugin(Settings settings) {
+        caches = new HighlighterCaches(settings);
+    }
+
+    /**
+     * Metrics shared by all highlighting on this node.
+     */
+    public HighlighterMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Caches shared by all highlighting on this node.
+     */
+    public HighlighterCaches caches() {
+        return caches;
+    }
+
+    @Override
+    public Collection<Object> createComponents(Client client, ClusterService clusterService, ThreadPool threadPool,
+            ResourceWatcherService resourceWatcherService, ScriptService scriptService,
+            NamedXContentRegistry xContentRegistry, Environment environment, NodeEnvironment nodeEnvironment,
+            NamedWriteableRegistry namedWriteableRegistry, IndexNameExpressionResolver indexNameExpressionResolver,
+            Supplier<RepositoriesService> repositoriesServiceSupplier) {
+        this.threadPool = threadPool;
+        // Bound so the stats transport action can read them
+        return Arrays.asList(metrics, caches);
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        // A bounded queue is fine because rejected chunks are scanned on the
+        // highlighting thread.
+        return Collections.singletonList(new FixedExecutorBuilder(settings, REGEX_THREAD_POOL,
+                OpenSearchExecutors.allocatedProcessors(settings), 1000));
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return HighlighterCaches.settings();
+    }
 
-public class CirrusHighlighterPlugin extends Plugin implements SearchPlugin {
     @Override
     public Map<String, Highlighter> getHighlighters() {
-        CirrusHighlighter highlighter = new CirrusHighlighter();
+        CirrusHighlighter highlighter = new CirrusHighlighter(metrics, caches, this::executeRegexScan,
+                this::reportTimeout);
         Map<String, Highlighter> highlighters = new HashMap<>();
         highlighters.put(CirrusHighlighter.NAME, highlighter);
         highlighters.put(CirrusHighlighter.BC_NAME, highlighter);
         return highlighters;
     }
+
+    /**
+     * Run a regex scan on the regex thread pool or on this thread if the
+     * pool isn't ready.
+     */
+    private void executeRegexScan(Runnable scan) {
+        ThreadPool pool = threadPool;
+        if (pool == null) {
+            scan.run();
+            return;
+        }
+        pool.executor(REGEX_THREAD_POOL).execute(scan);
+    }
+
+    /**
+     * Tell the client which field ran out of highlight_timeout. Response
+     * headers added while highlighting on a shard are sent back with the
+     * search response.
+     */
+    private void reportTimeout(String fieldName) {
+        ThreadPool pool = threadPool;
+        if (pool != null) {
+            pool.getThreadContext().addResponseHeader(CirrusHighlighter.TIMED_OUT_HEADER, fieldName);
+        }
+    }
+
+    @Override
+    public Map<String, Mapper.TypeParser> getMappers() {
+        return Collections.singletonMap(OffsetsIndexFieldMapper.CONTENT_TYPE, OffsetsIndexFieldMapper.PARSER);
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController,
+            ClusterSettings clusterSettings, IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter,
+            IndexNameExpressionResolver indexNameExpressionResolver, Supplier<DiscoveryNodes> nodesInCluster) {
+        return Collections.singletonList(new RestHighlighterStatsAction());
+    }
+
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return Collections.singletonList(
+                new ActionHandler<>(HighlighterStatsAction.INSTANCE, TransportHighlighterStatsAction.class));
+    }
 }
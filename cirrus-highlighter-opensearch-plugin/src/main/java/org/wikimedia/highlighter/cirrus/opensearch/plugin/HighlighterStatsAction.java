@@ -0,0 +1,15 @@
+package org.wikimedia.highlighter.cirrus.opensearch.plugin;
+
+import org.opensearch.action.ActionType;
+
+/**
+ * Collects the highlighter metrics and cache stats of some or all nodes.
+ */
+public final class HighlighterStatsAction extends ActionType<HighlighterStatsResponse> {
+    public static final String NAME = "cluster:monitor/cirrus_highlighter/stats";
+    public static final HighlighterStatsAction INSTANCE = new HighlighterStatsAction();
+
+    private HighlighterStatsAction() {
+        super(NAME, HighlighterStatsResponse::new);
+    }
+}
@@ -0,0 +1,19 @@
+package org.wikimedia.highlighter.cirrus.opensearch.plugin;
+
+import java.io.IOException;
+
+import org.opensearch.action.support.nodes.BaseNodesRequest;
+import org.opensearch.common.io.stream.StreamInput;
+
+/**
+ * Request for {@link HighlighterStatsAction}. No node ids means all nodes.
+ */
+public class HighlighterStatsRequest extends BaseNodesRequest<HighlighterStatsRequest> {
+    public HighlighterStatsRequest(String... nodeIds) {
+        super(nodeIds);
+    }
+
+    public HighlighterStatsRequest(StreamInput in) throws IOException {
+        super(in);
+    }
+}
@@ -0,0 +1,87 @@
+package org.wikimedia.highlighter.cirrus.opensearch.plugin;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.nodes.BaseNodeResponse;
+import org.opensearch.action.support.nodes.BaseNodesResponse;
+import org.opensearch.cluster.ClusterName;
+import org.opensearch.cluster.node.DiscoveryNode;
+import org.opensearch.common.bytes.BytesReference;
+import org.opensearch.common.io.stream.StreamInput;
+import org.opensearch.common.io.stream.StreamOutput;
+import org.opensearch.common.xcontent.ToXContentFragment;
+import org.opensearch.common.xcontent.XContentBuilder;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.XContentType;
+
+/**
+ * Response of {@link HighlighterStatsAction}: each node's stats keyed by node
+ * id.
+ */
+public class HighlighterStatsResponse extends BaseNodesResponse<HighlighterStatsResponse.NodeStats>
+        implements ToXContentFragment {
+    public HighlighterStatsResponse(ClusterName clusterName, List<NodeStats> nodes, List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    public HighlighterStatsResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected List<NodeStats> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(NodeStats::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<NodeStats> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("nodes");
+        for (NodeStats node : getNodes()) {
+            builder.startObject(node.getNode().getId());
+            node.toXContent(builder, params);
+            builder.endObject();
+        }
+        return builder.endObject();
+    }
+
+    /**
+     * The stats of a single node. They are rendered to json on the node so
+     * the metrics don't need their own wire format.
+     */
+    public static class NodeStats extends BaseNodeResponse implements ToXContentFragment {
+        private final BytesReference stats;
+
+        NodeStats(DiscoveryNode node, BytesReference stats) {
+            super(node);
+            this.stats = stats;
+        }
+
+        NodeStats(StreamInput in) throws IOException {
+            super(in);
+            stats = in.readBytesReference();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBytesReference(stats);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("name", getNode().getName());
+            for (Map.Entry<String, Object> e : XContentHelper.convertToMap(stats, true, XContentType.JSON).v2().entrySet()) {
+                builder.field(e.getKey(), e.getValue());
+            }
+            return builder;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.wikimedia.highlighter.cirrus.opensearch.plugin;
+
+import static java.util.Arrays.asList;
+import static org.opensearch.rest.RestRequest.Method.GET;
+
+import java.util.List;
+
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.common.Strings;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestActions.NodesResponseRestListener;
+
+/**
+ * Returns the highlighter metrics and cache stats of every node or of the
+ * nodes in the path, laid out like the _nodes apis.
+ */
+public class RestHighlighterStatsAction extends BaseRestHandler {
+    @Override
+    public String getName() {
+        return "cirrus_highlighter_stats";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return asList(
+                new Route(GET, "/_cirrus_highlighter/stats"),
+                new Route(GET, "/_cirrus_highlighter/stats/{node_id}"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
+        HighlighterStatsRequest statsRequest = new HighlighterStatsRequest(
+                Strings.splitStringByCommaToArray(request.param("node_id")));
+        statsRequest.timeout(request.param("timeout"));
+        return channel -> client.execute(HighlighterStatsAction.INSTANCE, statsRequest,
+                new NodesResponseRestListener<>(channel));
+    }
+}
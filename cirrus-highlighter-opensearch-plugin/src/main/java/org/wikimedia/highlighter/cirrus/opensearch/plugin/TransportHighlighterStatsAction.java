@@ -0,0 +1,86 @@
+package org.wikimedia.highlighter.cirrus.opensearch.plugin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.nodes.TransportNodesAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.bytes.BytesReference;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.common.io.stream.StreamInput;
+import org.opensearch.common.xcontent.ToXContent;
+import org.opensearch.common.xcontent.XContentBuilder;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportRequest;
+import org.opensearch.transport.TransportService;
+import org.wikimedia.highlighter.cirrus.opensearch.HighlighterCaches;
+import org.wikimedia.highlighter.cirrus.opensearch.HighlighterMetrics;
+
+/**
+ * Fans {@link HighlighterStatsAction} out to the requested nodes because
+ * highlighting happens on the data nodes, not the node that receives the
+ * request.
+ */
+public class TransportHighlighterStatsAction extends TransportNodesAction<HighlighterStatsRequest,
+        HighlighterStatsResponse, TransportHighlighterStatsAction.NodeRequest, HighlighterStatsResponse.NodeStats> {
+    private final HighlighterMetrics metrics;
+    private final HighlighterCaches caches;
+
+    @Inject
+    public TransportHighlighterStatsAction(ThreadPool threadPool, ClusterService clusterService,
+            TransportService transportService, ActionFilters actionFilters, HighlighterMetrics metrics,
+            HighlighterCaches caches) {
+        super(HighlighterStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                HighlighterStatsRequest::new, NodeRequest::new, ThreadPool.Names.MANAGEMENT,
+                HighlighterStatsResponse.NodeStats.class);
+        this.metrics = metrics;
+        this.caches = caches;
+    }
+
+    @Override
+    protected HighlighterStatsResponse newResponse(HighlighterStatsRequest request,
+            List<HighlighterStatsResponse.NodeStats> responses, List<FailedNodeException> failures) {
+        return new HighlighterStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(HighlighterStatsRequest request) {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected HighlighterStatsResponse.NodeStats newNodeResponse(StreamInput in) throws IOException {
+        return new HighlighterStatsResponse.NodeStats(in);
+    }
+
+    @Override
+    protected HighlighterStatsResponse.NodeStats nodeOperation(NodeRequest request) {
+        try {
+            XContentBuilder builder = XContentFactory.jsonBuilder();
+            builder.startObject();
+            metrics.innerToXContent(builder, ToXContent.EMPTY_PARAMS);
+            builder.field("node_caches", caches);
+            builder.endObject();
+            return new HighlighterStatsResponse.NodeStats(clusterService.localNode(), BytesReference.bytes(builder));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Request sent to each node. There isn't anything to send because each
+     * node returns all of its stats.
+     */
+    public static class NodeRequest extends TransportRequest {
+        NodeRequest() {
+        }
+
+        NodeRequest(StreamInput in) throws IOException {
+            super(in);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.wikimedia.highlighter.cirrus.opensearch;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+public class ClockCacheTest {
+    @Test
+    public void cachesAndCounts() {
+        ClockCache<String, String> cache = new ClockCache<>(10, String::length);
+        assertThat(cache.get("a"), nullValue());
+        assertThat(cache.computeIfAbsent("a", k -> "aa"), equalTo("aa"));
+        assertThat(cache.computeIfAbsent("a", k -> "bb"), equalTo("aa"));
+        assertThat(cache.get("a"), equalTo("aa"));
+        assertThat(cache.hits(), equalTo(2L));
+        assertThat(cache.misses(), equalTo(2L));
+        assertThat(cache.size(), equalTo(1));
+        assertThat(cache.weight(), equalTo(2L));
+    }
+
+    @Test
+    public void evictsUnreferencedFirst() {
+        ClockCache<String, String> cache = new ClockCache<>(3, String::length);
+        cache.computeIfAbsent("a", k -> k);
+        cache.computeIfAbsent("b", k -> k);
+        cache.computeIfAbsent("c", k -> k);
+        cache.get("a");
+        cache.computeIfAbsent("d", k -> k);
+        assertThat(cache.size(), equalTo(3));
+        assertThat(cache.weight(), equalTo(3L));
+        assertThat(cache.evictions(), equalTo(1L));
+        assertThat(cache.get("b"), nullValue());
+        assertThat(cache.get("a"), equalTo("a"));
+        assertThat(cache.get("c"), equalTo("c"));
+        assertThat(cache.get("d"), equalTo("d"));
+    }
+
+    @Test
+    public void tooHeavyIsntCached() {
+        ClockCache<String, String> cache = new ClockCache<>(3, String::length);
+        assertThat(cache.computeIfAbsent("a", k -> "heavy"), equalTo("heavy"));
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.weight(), equalTo(0L));
+    }
+
+    @Test
+    public void disabled() {
+        ClockCache<String, String> cache = new ClockCache<>(0, String::length);
+        assertThat(cache.computeIfAbsent("a", k -> "a"), equalTo("a"));
+        assertThat(cache.size(), equalTo(0));
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        ClockCache<Integer, String> cache = new ClockCache<>(100, s -> 1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    int key = ThreadLocalRandom.current().nextInt(500);
+                    assertThat(cache.computeIfAbsent(key, Object::toString), equalTo(Integer.toString(key)));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(cache.weight(), equalTo((long) cache.size()));
+    }
+}
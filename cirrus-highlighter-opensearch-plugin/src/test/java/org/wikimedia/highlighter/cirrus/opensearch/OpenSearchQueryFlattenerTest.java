@@ -1,5 +1,6 @@
 package org.wikimedia.highlighter.cirrus.opensearch;
 
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyFloat;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
@@ -24,6 +25,8 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.Automaton;
 import org.opensearch.common.lucene.search.MultiPhrasePrefixQuery;
 import org.opensearch.common.lucene.search.function.CombineFunction;
 import org.opensearch.common.lucene.search.function.FieldValueFactorFunction;
@@ -63,6 +66,16 @@ public class OpenSearchQueryFlattenerTest {
         verify(callback).flattened(bar.bytes(), 1f, null);
     }
 
+    @Test
+    public void indexPrefixTermQuery() {
+        Callback callback = mock(Callback.class);
+        BytesRef prefix = new BytesRef("ba");
+        new ElasticsearchQueryFlattener().flatten(new TermQuery(new Term("foo._index_prefix", prefix)), null, callback);
+        verify(callback).flattened(any(Automaton.class), eq(1f), eq(prefix.hashCode()));
+        verify(callback).flattenedPrefix(prefix, prefix.hashCode());
+        verify(callback, never()).flattened(any(BytesRef.class), anyFloat(), any());
+    }
+
     private void phrasePrefixQueryTestCase(boolean phraseAsTerms) {
         final IndexReader ir;
         try {
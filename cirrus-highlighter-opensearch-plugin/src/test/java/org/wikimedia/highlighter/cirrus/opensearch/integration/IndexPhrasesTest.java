@@ -0,0 +1,75 @@
+package org.wikimedia.highlighter.cirrus.opensearch.integration;
+
+import static org.opensearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.opensearch.index.query.QueryBuilders.boolQuery;
+import static org.opensearch.index.query.QueryBuilders.matchPhraseQuery;
+import static org.opensearch.index.query.QueryBuilders.prefixQuery;
+import static org.opensearch.index.query.QueryBuilders.termQuery;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertAcked;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.common.xcontent.XContentBuilder;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+
+/**
+ * Tests for highlighting phrases on fields with index_phrases.
+ */
+public class IndexPhrasesTest extends AbstractCirrusHighlighterIntegrationTestBase {
+    @Test
+    public void twoWordPhrase() throws IOException {
+        buildIndexPhrasesIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(matchPhraseQuery("test", "simple test")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test very simple and <em>simple</em> <em>test</em>"));
+    }
+
+    @Test
+    public void threeWordPhrase() throws IOException {
+        buildIndexPhrasesIndex();
+        indexTestData("simple test and simple and simple test");
+
+        SearchResponse response = testSearch(matchPhraseQuery("test", "and simple test")).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("simple test and simple <em>and</em> <em>simple</em> <em>test</em>"));
+    }
+
+    @Test
+    public void phraseAndTerm() throws IOException {
+        buildIndexPhrasesIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(boolQuery().should(matchPhraseQuery("test", "simple test"))
+                .should(termQuery("test", "very"))).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("test <em>very</em> simple and <em>simple</em> <em>test</em>"));
+    }
+
+    @Test
+    public void phraseAndPrefix() throws IOException {
+        buildIndexPhrasesIndex();
+        indexTestData("quiet day and quick brown fox");
+
+        // The prefix matches the shingles "quiet day" and "quick brown" but
+        // only the phrase should be found on the shingle field.
+        SearchResponse response = testSearch(boolQuery().should(matchPhraseQuery("test", "quick brown"))
+                .should(prefixQuery("test", "qu"))).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("<em>quiet</em> day and <em>quick</em> <em>brown</em> fox"));
+    }
+
+    private void buildIndexPhrasesIndex() throws IOException {
+        XContentBuilder mapping = jsonBuilder().startObject().startObject("properties");
+        mapping.startObject("test").field("type", "text").field("analyzer", "standard")
+                .field("index_options", "offsets").field("index_phrases", true);
+        mapping.endObject();
+        mapping.endObject().endObject();
+        assertAcked(prepareCreate("test").addMapping("_doc", mapping));
+        ensureYellow();
+    }
+}
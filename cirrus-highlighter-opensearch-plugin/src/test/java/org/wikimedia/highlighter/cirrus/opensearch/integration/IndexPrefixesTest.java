@@ -0,0 +1,92 @@
+package org.wikimedia.highlighter.cirrus.opensearch.integration;
+
+import static org.opensearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.opensearch.index.query.QueryBuilders.boolQuery;
+import static org.opensearch.index.query.QueryBuilders.prefixQuery;
+import static org.opensearch.index.query.QueryBuilders.termQuery;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertAcked;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.common.xcontent.XContentBuilder;
+import org.opensearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+
+/**
+ * Tests for highlighting prefixes on fields with index_prefixes.
+ */
+public class IndexPrefixesTest extends AbstractCirrusHighlighterIntegrationTestBase {
+    @Test
+    public void shortPrefix() throws IOException {
+        buildIndexPrefixesIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(prefixQuery("test", "sim")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test very <em>simple</em> and <em>simple</em> test"));
+    }
+
+    @Test
+    public void shortPrefixWithoutPostings() throws IOException {
+        buildIndexPrefixesIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(prefixQuery("test", "sim"), hitSource("analyze")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test very <em>simple</em> and <em>simple</em> test"));
+    }
+
+    @Test
+    public void prefixLongerThanMaxChars() throws IOException {
+        buildIndexPrefixesIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(prefixQuery("test", "simpl")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test very <em>simple</em> and <em>simple</em> test"));
+    }
+
+    @Test
+    public void overlappingPrefixes() throws IOException {
+        buildIndexPrefixesIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(boolQuery().should(prefixQuery("test", "si"))
+                .should(prefixQuery("test", "sim"))).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test very <em>simple</em> and <em>simple</em> test"));
+    }
+
+    @Test
+    public void overlappingPrefixesWeighByTheBestPrefix() throws IOException {
+        buildIndexPrefixesIndex();
+        indexTestData("A silly test.  A simple test.");
+
+        SearchResponse response = testSearch(boolQuery().should(prefixQuery("test", "si"))
+                .should(prefixQuery("test", "sim").boost(5)),
+                field(new HighlightBuilder.Field("test").fragmenter("sentence").numOfFragments(1))
+                .andThen(order("score"))).get();
+        assertHighlight(response, 0, "test", 0, equalTo("A <em>simple</em> test."));
+    }
+
+    @Test
+    public void prefixAndTerm() throws IOException {
+        buildIndexPrefixesIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(boolQuery().should(prefixQuery("test", "ve"))
+                .should(termQuery("test", "and"))).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test <em>very</em> simple <em>and</em> simple test"));
+    }
+
+    private void buildIndexPrefixesIndex() throws IOException {
+        XContentBuilder mapping = jsonBuilder().startObject().startObject("properties");
+        mapping.startObject("test").field("type", "text").field("analyzer", "standard")
+                .field("index_options", "offsets");
+        mapping.startObject("index_prefixes").field("min_chars", 2).field("max_chars", 4).endObject();
+        mapping.endObject();
+        mapping.endObject().endObject();
+        assertAcked(prepareCreate("test").addMapping("_doc", mapping));
+        ensureYellow();
+    }
+}
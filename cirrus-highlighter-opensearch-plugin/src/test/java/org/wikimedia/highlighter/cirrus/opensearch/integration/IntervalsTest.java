@@ -0,0 +1,78 @@
+package org.wikimedia.highlighter.cirrus.opensearch.integration;
+
+import static org.opensearch.index.query.QueryBuilders.boolQuery;
+import static org.opensearch.index.query.QueryBuilders.intervalsQuery;
+import static org.opensearch.index.query.QueryBuilders.termQuery;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertFailures;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.index.query.IntervalQueryBuilder;
+import org.opensearch.index.query.IntervalsSourceProvider;
+import org.opensearch.rest.RestStatus;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+
+/**
+ * Tests for highlighting intervals queries.
+ */
+public class IntervalsTest extends AbstractCirrusHighlighterIntegrationTestBase {
+    @Test
+    public void termsAreHighlightedEverywhereByDefault() throws IOException {
+        buildIndex();
+        indexTestData("and test very simple and simple test very");
+
+        SearchResponse response = testSearch(veryAnd()).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("<em>and</em> test <em>very</em> simple <em>and</em> simple test <em>very</em>"));
+    }
+
+    @Test
+    public void onlyTermsInsideIntervals() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("and test very simple and simple test very");
+
+        SearchResponse response = testSearch(veryAnd(), hitSource("intervals")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("and test <em>very</em> simple <em>and</em> simple test very"));
+    }
+
+    @Test
+    public void intervalsAndTerm() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("and test very simple and simple test very");
+
+        SearchResponse response = testSearch(boolQuery().should(veryAnd()).should(termQuery("test", "test")),
+                hitSource("intervals")).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("and <em>test</em> <em>very</em> simple <em>and</em> simple <em>test</em> very"));
+    }
+
+    @Test
+    public void nonAsciiIntervalsAndTerm() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("und été très simple und simple été très");
+
+        SearchResponse response = testSearch(boolQuery()
+                .should(intervalsQuery("test", new IntervalsSourceProvider.Match("très und", 1, true, null, null, null)))
+                .should(termQuery("test", "été")), hitSource("intervals")).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("und <em>été</em> <em>très</em> simple <em>und</em> simple <em>été</em> très"));
+    }
+
+    @Test
+    public void noOffsetsIsAnError() throws IOException {
+        buildIndex(false, false, between(1, 5));
+        indexTestData();
+
+        assertFailures(testSearch(veryAnd(), hitSource("intervals")),
+                RestStatus.BAD_REQUEST, containsString("Can't use intervals as a hit source"));
+    }
+
+    private IntervalQueryBuilder veryAnd() {
+        return intervalsQuery("test", new IntervalsSourceProvider.Match("very and", 1, true, null, null, null));
+    }
+}
@@ -0,0 +1,82 @@
+package org.wikimedia.highlighter.cirrus.opensearch.integration;
+
+import static org.opensearch.index.query.QueryBuilders.boolQuery;
+import static org.opensearch.index.query.QueryBuilders.matchPhraseQuery;
+import static org.opensearch.index.query.QueryBuilders.spanNearQuery;
+import static org.opensearch.index.query.QueryBuilders.spanTermQuery;
+import static org.opensearch.index.query.QueryBuilders.termQuery;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertFailures;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.rest.RestStatus;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+
+/**
+ * Tests for the matches hit source.
+ */
+public class MatchesTest extends AbstractCirrusHighlighterIntegrationTestBase {
+    @Test
+    public void singleValue() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData();
+
+        SearchResponse response = testSearch(termQuery("test", "test"), hitSource("matches")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("tests very simple <em>test</em>"));
+    }
+
+    @Test
+    public void multiValued() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData(Arrays.asList("tests very simple test", "with two test values"));
+
+        SearchResponse response = testSearch(termQuery("test", "test"), hitSource("matches")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("tests very simple <em>test</em>"));
+        assertHighlight(response, 0, "test", 1, equalTo("with two <em>test</em> values"));
+    }
+
+    @Test
+    public void phrase() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("test very simple and simple test");
+
+        // Lucene matches the phrase so it comes out as a single hit
+        SearchResponse response = testSearch(matchPhraseQuery("test", "simple test"), hitSource("matches")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test very simple and <em>simple test</em>"));
+    }
+
+    @Test
+    public void phraseAndTerm() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(boolQuery().should(matchPhraseQuery("test", "simple test"))
+                .should(termQuery("test", "very")), hitSource("matches")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test <em>very</em> simple and <em>simple test</em>"));
+    }
+
+    @Test
+    public void span() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(spanNearQuery(spanTermQuery("test", "very"), 1)
+                .addClause(spanTermQuery("test", "and")).inOrder(true), hitSource("matches")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test <em>very simple and</em> simple test"));
+    }
+
+    @Test
+    public void noOffsetsIsAnError() throws IOException {
+        buildIndex(false, false, between(1, 5));
+        indexTestData();
+
+        assertFailures(testSearch(termQuery("test", "test"), hitSource("matches")),
+                RestStatus.BAD_REQUEST, containsString("Can't use matches as a hit source"));
+    }
+}
@@ -0,0 +1,68 @@
+package org.wikimedia.highlighter.cirrus.opensearch.integration;
+
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.common.Strings;
+import org.opensearch.plugins.PluginsService;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+import org.wikimedia.highlighter.cirrus.opensearch.plugin.CirrusHighlighterPlugin;
+import org.wikimedia.highlighter.cirrus.opensearch.plugin.HighlighterStatsAction;
+import org.wikimedia.highlighter.cirrus.opensearch.plugin.HighlighterStatsRequest;
+import org.wikimedia.highlighter.cirrus.opensearch.plugin.HighlighterStatsResponse;
+
+/**
+ * Tests that highlighting is recorded in the node metrics.
+ */
+public class MetricsTest extends AbstractCirrusHighlighterIntegrationTestBase {
+    @Test
+    public void recordsHighlighting() throws IOException {
+        buildIndex();
+        indexTestData();
+
+        for (String hitSource : HIT_SOURCES) {
+            SearchResponse response = testSearch(hitSource(hitSource)).get();
+            assertHighlight(response, 0, "test", 0, equalTo("<em>tests</em> very simple <em>test</em>"));
+        }
+
+        StringBuilder metrics = new StringBuilder();
+        for (PluginsService plugins : internalCluster().getInstances(PluginsService.class)) {
+            for (CirrusHighlighterPlugin plugin : plugins.filterPlugins(CirrusHighlighterPlugin.class)) {
+                metrics.append(Strings.toString(plugin.metrics()));
+            }
+        }
+        for (String hitSource : HIT_SOURCES) {
+            assertThat(metrics.toString(), containsString("\"" + hitSource + "\":1"));
+        }
+        assertThat(metrics.toString(), containsString("\"choose\":{\"count\":"));
+    }
+
+    @Test
+    public void statsActionReportsEveryNode() throws IOException, InterruptedException, ExecutionException {
+        buildIndex();
+        indexTestData();
+
+        for (String hitSource : HIT_SOURCES) {
+            testSearch(hitSource(hitSource)).get();
+        }
+
+        HighlighterStatsResponse response = client().execute(HighlighterStatsAction.INSTANCE,
+                new HighlighterStatsRequest()).get();
+        assertThat(response.failures(), empty());
+        assertThat(response.getNodes(), hasSize(internalCluster().size()));
+        // The cluster is shared with the other tests so the counts could be higher
+        String stats = Strings.toString(response);
+        for (String hitSource : HIT_SOURCES) {
+            assertThat(stats, containsString("\"" + hitSource + "\":"));
+        }
+        assertThat(stats, containsString("\"node_caches\":{\"regex_automaton\":"));
+    }
+}
@@ -12,6 +12,7 @@ import static org.opensearch.index.query.QueryBuilders.regexpQuery;
 import static org.opensearch.index.query.QueryBuilders.termQuery;
 import static org.opensearch.index.query.QueryBuilders.wildcardQuery;
 import static org.opensearch.index.query.QueryBuilders.wrapperQuery;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertFailures;
 import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
 import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHitCount;
 import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertNoFailures;
@@ -41,9 +42,11 @@ import org.opensearch.common.xcontent.json.JsonXContent;
 import org.opensearch.index.query.BoolQueryBuilder;
 import org.opensearch.index.query.QueryBuilder;
 import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.rest.RestStatus;
 import org.opensearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.junit.Test;
 import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+import org.wikimedia.highlighter.cirrus.opensearch.PackedOffsetSnippetFormatter;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
@@ -487,6 +490,29 @@ public class MiscellaneousTest extends AbstractCirrusHighlighterIntegrationTestB
         assertHighlight(response, 0, "test.english", 0, equalTo("0:0-5,18-22:22"));
     }
 
+    @Test
+    public void returnOffsetsPacked() throws IOException {
+        buildIndex();
+        indexTestData(ImmutableList.of("tests very simple test", "with more test"));
+        Map<String, Object> options = new HashMap<>();
+        options.put("return_offsets", true);
+        options.put("offsets_format", "packed");
+        SearchResponse response = testSearch(matchQuery("test.english", "test"),
+            x -> x.options(options).field("test.english")).get();
+        assertHighlight(response, 0, "test.english", 0, equalTo("ABYCAAUkBA"));
+        assertThat(decodePacked(response, 0), equalTo(new int[] {0, 22, 0, 5, 18, 22}));
+        assertThat(decodePacked(response, 1), equalTo(new int[] {23, 37, 33, 37}));
+
+        options.put("offsets_format", "bogus");
+        assertFailures(testSearch(matchQuery("test.english", "test"), x -> x.options(options).field("test.english")),
+                RestStatus.BAD_REQUEST, containsString("Unknown offsets_format"));
+    }
+
+    private int[] decodePacked(SearchResponse response, int fragment) {
+        return PackedOffsetSnippetFormatter.decode(
+                response.getHits().getAt(0).getHighlightFields().get("test.english").fragments()[fragment].string());
+    }
+
     @Test
     public void offsetsAugmenter() throws IOException {
         buildIndex();
@@ -0,0 +1,91 @@
+package org.wikimedia.highlighter.cirrus.opensearch.integration;
+
+import static org.opensearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.opensearch.index.query.QueryBuilders.matchPhraseQuery;
+import static org.opensearch.index.query.QueryBuilders.termQuery;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertAcked;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertFailures;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.common.xcontent.XContentBuilder;
+import org.opensearch.index.mapper.MapperParsingException;
+import org.opensearch.rest.RestStatus;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+
+/**
+ * Tests for the offsets_index hit source.
+ */
+public class OffsetsIndexTest extends AbstractCirrusHighlighterIntegrationTestBase {
+    @Test
+    public void singleValue() throws IOException {
+        buildOffsetsIndex();
+        indexTestData();
+
+        SearchResponse response = testSearch(hitSource("offsets_index")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("tests very simple <em>test</em>"));
+
+        // It is picked automatically when there aren't offsets in the postings or vectors
+        response = testSearch().get();
+        assertHighlight(response, 0, "test", 0, equalTo("tests very simple <em>test</em>"));
+    }
+
+    @Test
+    public void multiValued() throws IOException {
+        buildOffsetsIndex();
+        indexTestData(Arrays.asList("tests very simple test", "with two test values"));
+
+        SearchResponse response = testSearch(hitSource("offsets_index")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("tests very simple <em>test</em>"));
+        assertHighlight(response, 0, "test", 1, equalTo("with two <em>test</em> values"));
+    }
+
+    @Test
+    public void phrase() throws IOException {
+        buildOffsetsIndex();
+        indexTestData("test very simple and simple test");
+
+        SearchResponse response = testSearch(matchPhraseQuery("test", "simple test"),
+                hitSource("offsets_index")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("test very simple and <em>simple</em> <em>test</em>"));
+    }
+
+    @Test
+    public void missingSubFieldIsAnError() throws IOException {
+        buildIndex(false, false, between(1, 5));
+        indexTestData();
+
+        assertFailures(testSearch(termQuery("test", "test"), hitSource("offsets_index")),
+                RestStatus.BAD_REQUEST, containsString("as a hit source without a cirrus_offsets sub field"));
+    }
+
+    @Test
+    public void missingAnalyzerIsAnError() throws IOException {
+        XContentBuilder mapping = jsonBuilder().startObject().startObject("properties");
+        mapping.startObject("test").field("type", "text").field("analyzer", "english");
+        mapping.startObject("fields").startObject("offsets_index").field("type", "cirrus_offsets").endObject().endObject();
+        mapping.endObject();
+        mapping.endObject().endObject();
+        MapperParsingException e = expectThrows(MapperParsingException.class,
+                () -> prepareCreate("test").addMapping("_doc", mapping).get());
+        assertThat(e.getMessage(), containsString("requires an analyzer"));
+    }
+
+    private void buildOffsetsIndex() throws IOException {
+        XContentBuilder mapping = jsonBuilder().startObject().startObject("properties");
+        mapping.startObject("test").field("type", "text").field("analyzer", "standard");
+        mapping.startObject("fields").startObject("offsets_index")
+                .field("type", "cirrus_offsets").field("analyzer", "standard")
+                .endObject().endObject();
+        mapping.endObject();
+        mapping.endObject().endObject();
+        assertAcked(prepareCreate("test").addMapping("_doc", mapping));
+        ensureYellow();
+    }
+}
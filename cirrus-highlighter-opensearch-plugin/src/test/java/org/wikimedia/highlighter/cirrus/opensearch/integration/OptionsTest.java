@@ -5,7 +5,10 @@ import static org.opensearch.index.query.QueryBuilders.boolQuery;
 import static org.opensearch.index.query.QueryBuilders.termQuery;
 import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertFailures;
 import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHitCount;
 import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertNoFailures;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertNotHighlighted;
+import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 
@@ -401,6 +404,94 @@ public class OptionsTest extends AbstractCirrusHighlighterIntegrationTestBase {
         }
     }
 
+    @Test
+    public void maxHitsPerDoc() throws IOException {
+        buildIndex();
+        indexTestData("The quick brown fox jumped over the lazy test.  And some other test.  " +
+                "Junk junk junk junk junk junk junk junk junk junk junk test test test.");
+
+        for (String hitSource : HIT_SOURCES) {
+            SearchResponse response = testSearch(termQuery("test", "test"),
+                    field(new HighlightBuilder.Field("test").fragmenter("sentence").numOfFragments(3))
+                        .andThen(option("max_hits_per_doc", 2))
+                        .andThen(hitSource(hitSource))
+                    ).get();
+            assertHighlight(response, 0, "test", 0, equalTo("The quick brown fox jumped over the lazy <em>test</em>.  "));
+            assertHighlight(response, 0, "test", 1, equalTo("And some other <em>test</em>.  "));
+            assertHitCount(response, 1);
+            assertThat(response.getHits().getAt(0).getHighlightFields().get("test").fragments().length, equalTo(2));
+
+            response = testSearch(termQuery("test", "test"),
+                    field(new HighlightBuilder.Field("test").fragmenter("sentence").numOfFragments(3))
+                        .andThen(option("max_hits_per_doc", 3))
+                        .andThen(option("max_hits_per_doc_mode", "sample"))
+                        .andThen(hitSource(hitSource))
+                    ).get();
+            assertHighlight(response, 0, "test", 0, equalTo("The quick brown fox jumped over the lazy <em>test</em>.  "));
+            assertHighlight(response, 0, "test", 1, equalTo("And some other <em>test</em>.  "));
+            assertHighlight(response, 0, "test", 2, equalTo("Junk junk junk junk junk junk junk " +
+                    "junk junk junk junk <em>test</em> test test."));
+        }
+
+        assertFailures(testSearch(termQuery("test", "test"), option("max_hits_per_doc_mode", "sample")
+                .andThen(option("max_hits_per_doc", 0))),
+                RestStatus.BAD_REQUEST, containsString("max_hits_per_doc must be positive"));
+    }
+
+    @Test
+    public void highlightTimeout() throws IOException {
+        buildIndex();
+        indexTestData();
+
+        for (String hitSource : HIT_SOURCES) {
+            SearchResponse response = testSearch(hitSource(hitSource)
+                    .andThen(option("highlight_timeout", "1m"))).get();
+            assertHighlight(response, 0, "test", 0, equalTo("<em>tests</em> very simple <em>test</em>"));
+
+            // An already expired timeout finds nothing
+            response = testSearch(hitSource(hitSource)
+                    .andThen(option("highlight_timeout", 0))).get();
+            assertNotHighlighted(response, 0, "test");
+        }
+
+        // Regexes stop scanning too
+        SearchResponse response = testSearch(option("regex", "v[a-z]+").andThen(option("skip_query", true))
+                .andThen(option("highlight_timeout", 60000))).get();
+        assertHighlight(response, 0, "test", 0, equalTo("tests <em>very</em> simple test"));
+        response = testSearch(option("regex", "v[a-z]+").andThen(option("skip_query", true))
+                .andThen(option("highlight_timeout", 0))).get();
+        assertNotHighlighted(response, 0, "test");
+    }
+
+    @Test
+    public void profile() throws IOException {
+        buildIndex();
+        indexTestData();
+
+        for (String hitSource : HIT_SOURCES) {
+            SearchResponse response = testSearch(hitSource(hitSource)
+                    .andThen(option("profile", true))).get();
+            assertHighlight(response, 0, "test", 0, 1, allOf(containsString("\"stages\""),
+                    containsString("\"stage\":\"hit_finding\""), containsString("\"snippets_chosen\":1")));
+        }
+    }
+
+    @Test
+    public void profileDoesNotCountFetchedFields() throws IOException {
+        buildIndex();
+        client().prepareIndex("test", "_doc", "1")
+                .setSource("test", new String[] {"no match here", "this one"}, "fetched", new Integer[] {0, 1}).get();
+        refresh();
+
+        for (String hitSource : HIT_SOURCES) {
+            SearchResponse response = testSearch(termQuery("test", "one"), hitSource(hitSource)
+                    .andThen(option("fetch_fields", Collections.singletonList("fetched")))
+                    .andThen(option("profile", true))).get();
+            assertHighlight(response, 0, "test", 0, 1, allOf(containsString("\"snippets_chosen\":1"),
+                    containsString("\"bytes_formatted\":17")));
+        }
+    }
+
     @Test
     @SuppressWarnings("checkstyle:NPathComplexity")
     // This test should be split if we revisit it at some time. At this point
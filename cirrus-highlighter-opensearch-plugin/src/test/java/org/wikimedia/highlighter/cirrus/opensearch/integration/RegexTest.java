@@ -8,6 +8,7 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,8 +16,10 @@ import org.opensearch.action.search.SearchRequestBuilder;
 import org.opensearch.action.search.SearchResponse;
 import org.opensearch.rest.RestStatus;
 import org.junit.Test;
+import org.opensearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.opensearch.search.fetch.subphase.highlight.HighlightField;
 import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+import org.wikimedia.highlighter.cirrus.opensearch.CirrusHighlighter;
 
 import com.google.common.collect.ImmutableList;
 
@@ -176,6 +179,67 @@ public class RegexTest extends AbstractCirrusHighlighterIntegrationTestBase {
         }
     }
 
+    @Test
+    public void singlePassRegexes() throws IOException {
+        buildIndex();
+        indexTestData(ImmutableList.of("tests very simple test", "simple"));
+
+        Map<String, Object> options = new HashMap<>();
+        options.put("regex", ImmutableList.of("v.ry", "si.*le"));
+        options.put("regex_single_pass", true);
+        options.put("skip_query", true);
+        SearchResponse response = testSearch(options(options)).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("tests <em>very</em> <em>simple</em> test"));
+        assertHighlight(response, 0, "test", 1, equalTo("<em>simple</em>"));
+    }
+
+    @Test
+    public void singlePassRegexesFindLongestMatch() throws IOException {
+        buildIndex();
+        indexTestData("tests very simple test");
+
+        Map<String, Object> options = new HashMap<>();
+        options.put("regex", ImmutableList.of("test", "tests? v.ry", ".*ple"));
+        options.put("regex_single_pass", true);
+        options.put("skip_query", true);
+        SearchResponse response = testSearch(options(options)).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("<em>tests very simple</em> <em>test</em>"));
+    }
+
+    @Test
+    public void chunkedRegex() throws IOException {
+        buildIndex();
+        // Long enough to be scanned in a few chunks with "very" running
+        // across the end of the first one
+        String filler = String.join("", Collections.nCopies(1428, "filler "));
+        String value = filler + "  very simple " + filler + "tests very simple test";
+        indexTestData(value);
+
+        Map<String, Object> options = new HashMap<>();
+        options.put("regex", ImmutableList.of("v.ry", "si[a-z]{1,4}"));
+        options.put("skip_query", true);
+        options.put("regex_chunk_size", CirrusHighlighter.MIN_REGEX_CHUNK_SIZE);
+        SearchResponse response = testSearch(field(new HighlightBuilder.Field("test").numOfFragments(0))
+                .andThen(options(options))).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo(value.replace("very", "<em>very</em>").replace("simple", "<em>simple</em>")));
+    }
+
+    @Test
+    public void tooSmallRegexChunkSizeIsAnError() throws IOException {
+        buildIndex();
+        indexTestData("tests very simple test");
+
+        Map<String, Object> options = new HashMap<>();
+        options.put("regex", ImmutableList.of("v.ry"));
+        options.put("skip_query", true);
+        options.put("regex_chunk_size", CirrusHighlighter.MIN_REGEX_CHUNK_SIZE - 1);
+        assertFailures(testSearch(options(options)), RestStatus.BAD_REQUEST,
+                containsString("regex_chunk_size must be at least " + CirrusHighlighter.MIN_REGEX_CHUNK_SIZE));
+    }
+
     @Test
     public void javaRegex() throws IOException {
         buildIndex();
@@ -0,0 +1,78 @@
+package org.wikimedia.highlighter.cirrus.opensearch.integration;
+
+import static org.opensearch.index.query.QueryBuilders.boolQuery;
+import static org.opensearch.index.query.QueryBuilders.spanNearQuery;
+import static org.opensearch.index.query.QueryBuilders.spanTermQuery;
+import static org.opensearch.index.query.QueryBuilders.termQuery;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertFailures;
+import static org.opensearch.test.hamcrest.OpenSearchAssertions.assertHighlight;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.rest.RestStatus;
+import org.junit.Test;
+import org.wikimedia.highlighter.cirrus.opensearch.AbstractCirrusHighlighterIntegrationTestBase;
+
+/**
+ * Tests for the spans hit source.
+ */
+public class SpansTest extends AbstractCirrusHighlighterIntegrationTestBase {
+    @Test
+    public void onlyTermsInsideSpans() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("and test very simple and simple test very");
+
+        SearchResponse response = testSearch(spanNearQuery(spanTermQuery("test", "very"), 1)
+                .addClause(spanTermQuery("test", "and")).inOrder(true), hitSource("spans")).get();
+        assertHighlight(response, 0, "test", 0, equalTo("and test <em>very</em> simple <em>and</em> simple test very"));
+    }
+
+    @Test
+    public void withoutSpansTheTermsAreEverywhere() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("and test very simple and simple test very");
+
+        SearchResponse response = testSearch(spanNearQuery(spanTermQuery("test", "very"), 1)
+                .addClause(spanTermQuery("test", "and")).inOrder(true), hitSource("postings")).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("<em>and</em> test <em>very</em> simple <em>and</em> simple test <em>very</em>"));
+    }
+
+    @Test
+    public void spanAndTerm() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("and test very simple and simple test very");
+
+        SearchResponse response = testSearch(boolQuery()
+                .should(spanNearQuery(spanTermQuery("test", "very"), 1)
+                        .addClause(spanTermQuery("test", "and")).inOrder(true))
+                .should(termQuery("test", "test")), hitSource("spans")).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("and <em>test</em> <em>very</em> simple <em>and</em> simple <em>test</em> very"));
+    }
+
+    @Test
+    public void nonAsciiSpanAndTerm() throws IOException {
+        buildIndex(true, false, between(1, 5));
+        indexTestData("und été très simple und simple été très");
+
+        SearchResponse response = testSearch(boolQuery()
+                .should(spanNearQuery(spanTermQuery("test", "très"), 1)
+                        .addClause(spanTermQuery("test", "und")).inOrder(true))
+                .should(termQuery("test", "été")), hitSource("spans")).get();
+        assertHighlight(response, 0, "test", 0,
+                equalTo("und <em>été</em> <em>très</em> simple <em>und</em> simple <em>été</em> très"));
+    }
+
+    @Test
+    public void noOffsetsIsAnError() throws IOException {
+        buildIndex(false, false, between(1, 5));
+        indexTestData();
+
+        assertFailures(testSearch(spanTermQuery("test", "test"), hitSource("spans")),
+                RestStatus.BAD_REQUEST, containsString("Can't use spans as a hit source"));
+    }
+}